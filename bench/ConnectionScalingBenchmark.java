@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Compares how the server modes cope with many connections: one platform
+ * thread per client, one virtual thread per client, and {@link NioServer}.
+ * For each connection count it opens that many clients and records the setup
+ * time, the extra threads, and how much resident memory the process grew by
+ * while they sit idle. It then makes every client send {@code searchitem} in
+ * rounds and reports requests per second and the mean round time.
+ *
+ * <p>The client side is a single selector thread, so it costs the same in every
+ * mode. Every connection needs two file descriptors in this process, so
+ * 50k connections need {@code ulimit -n} above 100k. Counts the machine cannot
+ * reach are reported as failed and skipped.</p>
+ *
+ * <p>Run with: {@code java ConnectionScalingBenchmark [secondsActive] [counts...]}</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class ConnectionScalingBenchmark {
+    private static final int[] DEFAULT_COUNTS = {1_000, 5_000, 10_000, 50_000};
+    /** Loopback addresses to spread clients over, so 50k connections do not run out of ephemeral ports. */
+    private static final int LOOPBACK_ADDRESSES = 4;
+    private static final byte[] REQUEST = "searchitem nothing\n".getBytes(StandardCharsets.US_ASCII);
+
+    private enum Mode { PLATFORM, VIRTUAL, NIO }
+
+    public static void main(String[] args) throws Exception {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 5;
+        int[] counts = DEFAULT_COUNTS;
+        if (args.length > 1) {
+            counts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                counts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        // The servers log every connection; keep the results readable
+        PrintStream results = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        results.printf("%-9s %7s %10s %9s %10s %12s %10s%n",
+                "mode", "conns", "setup ms", "threads", "+RSS MB", "req/sec", "round ms");
+        int port = 23600;
+        for (int count : counts) {
+            for (Mode mode : Mode.values()) {
+                results.println(run(mode, count, port++, seconds));
+            }
+        }
+    }
+
+    private static String run(Mode mode, int count, int port, double seconds) throws Exception {
+        ServerInterface server = switch (mode) {
+            case PLATFORM -> new Server(port, false);
+            case VIRTUAL -> new Server(port, true);
+            case NIO -> new NioServer(port);
+        };
+        Thread serverThread = new Thread((Runnable) server, "bench-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        Thread.sleep(200);
+
+        int baseThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+        long baseRss = residentMegabytes();
+        List<SocketChannel> clients = new ArrayList<>(count);
+        Selector selector = Selector.open();
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                try {
+                    clients.add(connect(port, i));
+                } catch (IOException e) {
+                    return String.format("%-9s %7d failed after %d connections: %s",
+                            mode, count, i, e.getMessage());
+                }
+            }
+            long setupMillis = (System.nanoTime() - start) / 1_000_000;
+
+            // Idle: let the server settle, then measure what the connections hold
+            System.gc();
+            Thread.sleep(500);
+            int threads = ManagementFactory.getThreadMXBean().getThreadCount() - baseThreads;
+            long rssMb = residentMegabytes() - baseRss;
+
+            // Active: every client sends one request per round
+            long[] pending = new long[count];
+            for (int i = 0; i < count; i++) {
+                clients.get(i).configureBlocking(false);
+                clients.get(i).register(selector, SelectionKey.OP_READ, i);
+            }
+            ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+            long requests = 0;
+            int rounds = 0;
+            long deadline = System.nanoTime() + (long) (seconds * 1_000_000_000L);
+            long activeStart = System.nanoTime();
+            while (System.nanoTime() < deadline) {
+                for (int i = 0; i < count; i++) {
+                    clients.get(i).write(ByteBuffer.wrap(REQUEST));
+                    pending[i]++;
+                }
+                long outstanding = count;
+                while (outstanding > 0) {
+                    selector.select(1000);
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        int i = (Integer) key.attachment();
+                        readBuffer.clear();
+                        if (((SocketChannel) key.channel()).read(readBuffer) < 0) {
+                            throw new IOException("server closed connection " + i);
+                        }
+                        for (int b = 0; b < readBuffer.position(); b++) {
+                            if (readBuffer.get(b) == '\n' && pending[i] > 0) {
+                                pending[i]--;
+                                outstanding--;
+                            }
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+                requests += count;
+                rounds++;
+            }
+            double activeSeconds = (System.nanoTime() - activeStart) / 1e9;
+
+            return String.format("%-9s %7d %10d %9d %10d %12.0f %10.2f", mode, count, setupMillis,
+                    threads, rssMb, requests / activeSeconds, activeSeconds * 1000 / rounds);
+        } finally {
+            for (SocketChannel client : clients) {
+                client.close();
+            }
+            selector.close();
+            server.stop();
+            // Give thread-per-client handlers time to see their sockets close
+            Thread.sleep(1000);
+        }
+    }
+
+    /** Opens one client and waits for the welcome line. */
+    private static SocketChannel connect(int port, int index) throws IOException {
+        String host = "127.0.0." + (1 + index % LOOPBACK_ADDRESSES);
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.connect(new InetSocketAddress(host, port));
+            channel.socket().setSoTimeout(10_000);
+            InputStream in = channel.socket().getInputStream();
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) {
+                    throw new IOException("closed before welcome");
+                }
+            }
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Resident set size of this process, or -1 where /proc is unavailable. */
+    private static long residentMegabytes() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D", "")) / 1024;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // not Linux
+        }
+        return -1;
+    }
+}
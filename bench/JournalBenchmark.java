@@ -0,0 +1,94 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Measures mutation throughput of a durable {@link Database1} under each
+ * {@link Journal.SyncPolicy}, next to a memory-only database. Client threads
+ * send messages and add items, so every operation writes a journal record.
+ * Under EVERY_WRITE the rate should grow with the thread count, because
+ * group commit shares each fsync across every client waiting on it.
+ *
+ * <p>Run with: {@code java JournalBenchmark [threads] [secondsPerRun] [syncIntervalMs]}</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class JournalBenchmark {
+    private static final int USERS = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 3;
+        long interval = args.length > 2 ? Long.parseLong(args[2]) : 10;
+
+        System.out.printf("%12s %8s %14s%n", "policy", "threads", "ops/sec");
+        System.out.printf("%12s %8d %14.0f%n", "MEMORY", threads, run(new Database1(), threads, seconds));
+        for (Journal.SyncPolicy policy : Journal.SyncPolicy.values()) {
+            Path dir = Files.createTempDirectory("journal-bench");
+            Database1 db = Database1.open(dir, policy, interval);
+            try {
+                System.out.printf("%12s %8d %14.0f%n", policy, threads, run(db, threads, seconds));
+            } finally {
+                db.close();
+                deleteRecursively(dir);
+            }
+        }
+    }
+
+    private static double run(Database1 db, int threads, double seconds) throws InterruptedException {
+        for (int i = 0; i < USERS; i++) {
+            db.addUser("user" + i, "pw", 100.0, new ArrayList<>());
+        }
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long runNanos = (long) (seconds * 1_000_000_000L);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long deadline = System.nanoTime() + runNanos;
+                long done = 0;
+                while (System.nanoTime() < deadline) {
+                    String a = "user" + random.nextInt(USERS);
+                    if (random.nextBoolean()) {
+                        db.sendMessage(a, "user" + random.nextInt(USERS), "hello there");
+                    } else {
+                        db.addItem("widget", 1.0, a);
+                    }
+                    done++;
+                }
+                ops.add(done);
+            }, "bench-" + t);
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return ops.sum() / seconds;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Compares {@link Database1.LockMode#GLOBAL} and {@link Database1.LockMode#STRIPED}
+ * throughput with 1, 4, 16 and 64 client threads. Each thread picks random user
+ * pairs and runs a mix of logins, listing lookups, messages, conversation reads
+ * and purchases against a shared database.
+ *
+ * <p>Run with: {@code java LockingThroughputBenchmark [users] [secondsPerRun]}</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class LockingThroughputBenchmark {
+    /** Client thread counts to measure. */
+    private static final int[] THREADS = {1, 4, 16, 64};
+
+    public static void main(String[] args) throws InterruptedException {
+        int userCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 3;
+
+        System.out.printf("%8s %8s %16s%n", "mode", "threads", "ops/sec");
+        for (Database1.LockMode mode : Database1.LockMode.values()) {
+            for (int threads : THREADS) {
+                double opsPerSecond = run(mode, threads, userCount, seconds);
+                System.out.printf("%8s %8d %16.0f%n", mode, threads, opsPerSecond);
+            }
+        }
+    }
+
+    private static double run(Database1.LockMode mode, int threads, int userCount, double seconds)
+            throws InterruptedException {
+        Database1 db = new Database1(mode);
+        for (int i = 0; i < userCount; i++) {
+            db.addUser("user" + i, "pw", 1_000_000.0, new ArrayList<>());
+        }
+
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long runNanos = (long) (seconds * 1_000_000_000L);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long deadline = System.nanoTime() + runNanos;
+                long done = 0;
+                while (System.nanoTime() < deadline) {
+                    String a = "user" + random.nextInt(userCount);
+                    String b = "user" + random.nextInt(userCount);
+                    runOp(db, random.nextInt(100), a, b);
+                    done++;
+                }
+                ops.add(done);
+            }, "bench-" + t);
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return ops.sum() / seconds;
+    }
+
+    private static void runOp(Database1 db, int roll, String a, String b) {
+        if (roll < 30) {
+            db.login(a, "pw");
+        } else if (roll < 40) {
+            db.getSenderToReceiverMessage(a, b);
+        } else if (roll < 50) {
+            db.sendMessage(a, b, "hello");
+        } else if (roll < 60) {
+            db.getMessageUserList(a);
+        } else {
+            // Seller lists a fresh item and the buyer purchases it
+            String itemName = "item-" + a;
+            db.addItem(itemName, 1.0, a);
+            db.sellItem(a, itemName);
+            Item listed = db.searchSoldItem(itemName);
+            if (listed != null) {
+                User seller = db.getUser(listed.getSeller());
+                if (seller != null) {
+                    db.processTransaction(db.getUser(b), seller, listed);
+                }
+            }
+        }
+    }
+}
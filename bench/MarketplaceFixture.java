@@ -0,0 +1,169 @@
+import benchmarks.Marketplace;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Implements {@link Marketplace} over a {@link Database1}, for the JMH
+ * benchmarks in the {@code benchmarks} package. It lives in the default
+ * package so it can call the marketplace directly, and does no more than
+ * forward each call.
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class MarketplaceFixture implements Marketplace {
+    /** Messages each user has sent to the next one before measuring starts. */
+    private static final int HISTORY = 10;
+
+    /** The client commands, for the parser benchmark; their bodies do nothing. */
+    private static final CommandRegistry COMMANDS = new CommandRegistry();
+    static {
+        String[] names = {"register", "login", "logout", "additem", "sellitem", "unsellitem", "listitems",
+            "myitems", "searchitem", "buy", "getbalance", "deleteitem", "changeitemprice", "sendmessage",
+            "viewuserlist", "viewconversation", "exit"};
+        for (String name : names) {
+            COMMANDS.register(name, 0, "", false, (handler, args) -> { });
+        }
+    }
+
+    private final Database1 db = new Database1();
+    private final AtomicInteger traders = new AtomicInteger();
+
+    /**
+     * Creates the populated database.
+     * @param size number of users and of listings
+     */
+    public MarketplaceFixture(int size) {
+        for (int i = 0; i < size; i++) {
+            String user = Marketplace.userName(i);
+            db.addUser(user, "pw", 1_000_000, new ArrayList<>());
+            db.addItem(Marketplace.listingName(i), 1 + i % 500, user);
+            db.sellItem(user, Marketplace.listingName(i));
+        }
+        for (int i = 0; i < size; i++) {
+            for (int m = 0; m < HISTORY; m++) {
+                db.sendMessage(Marketplace.userName(i), Marketplace.userName((i + 1) % size), "message " + m);
+            }
+        }
+    }
+
+    @Override
+    public Object getUser(String username) {
+        return db.getUser(username);
+    }
+
+    @Override
+    public Object searchSoldItem(String name) {
+        return db.searchSoldItem(name);
+    }
+
+    @Override
+    public Object getItems() {
+        return db.getItems();
+    }
+
+    @Override
+    public void sendMessage(String sender, String receiver, String message) {
+        db.sendMessage(sender, receiver, message);
+    }
+
+    @Override
+    public Object getSenderToReceiverMessage(String sender, String receiver) {
+        return db.getSenderToReceiverMessage(sender, receiver);
+    }
+
+    @Override
+    public Trader newTrader() {
+        int n = traders.incrementAndGet();
+        String first = "trader" + n + "a";
+        String second = "trader" + n + "b";
+        String name = "traded" + n;
+        db.addUser(first, "pw", 1_000, new ArrayList<>());
+        db.addUser(second, "pw", 1_000, new ArrayList<>());
+        db.addItem(name, 5, first);
+        db.sellItem(first, name);
+        Item item = db.searchSoldItem(name);
+        User a = db.getUser(first);
+        User b = db.getUser(second);
+        return () -> {
+            // The money and the item go back and forth, so balances never run out
+            User seller = item.getSeller().equals(first) ? a : b;
+            User buyer = seller == a ? b : a;
+            db.sellItem(seller.getUsername(), name);
+            db.processTransaction(buyer, seller, item);
+        };
+    }
+
+    @Override
+    public Parser newParser() {
+        CommandLine line = new CommandLine();
+        return new Parser() {
+            @Override
+            public long dispatch(String input) {
+                CommandRegistry.Command command = COMMANDS.lookup(line.reset(input));
+                long acc = command.minArgs() + line.argCount();
+                if (command.name().equals("additem") || command.name().equals("changeitemprice")) {
+                    acc += (long) line.doubleArg(1);
+                }
+                return acc;
+            }
+
+            @Override
+            public long withArgs(String input) {
+                long acc = dispatch(input);
+                if (line.nameEquals("sendmessage")) {
+                    acc += line.arg(0).length() + line.rest(1).length();
+                } else {
+                    for (int i = 0; i < line.argCount(); i++) {
+                        acc += line.arg(i).length();
+                    }
+                }
+                return acc;
+            }
+        };
+    }
+
+    @Override
+    public Session newSession() {
+        ClientHandler.setDatabase(db);
+        long[] written = new long[1];
+        Writer discard = new Writer() {
+            @Override
+            public void write(char[] buf, int off, int len) {
+                written[0] += len;
+            }
+
+            @Override
+            public void write(String str, int off, int len) {
+                written[0] += len;
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        ClientHandler handler = new ClientHandler(discard, () -> { });
+        Session session = command -> {
+            long before = written[0];
+            handler.process(command);
+            return written[0] - before;
+        };
+        try {
+            session.run("login " + Marketplace.userName(0) + " pw");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return session;
+    }
+}
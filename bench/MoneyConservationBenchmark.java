@@ -0,0 +1,156 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Moves money between users from many threads at once and checks that none is
+ * created or lost. Two workloads run with 1, 4, 16 and 64 threads:
+ * <ul>
+ *     <li>"transfer" calls {@link User#transfer} between random pairs of users,</li>
+ *     <li>"purchase" buys random listings through
+ *         {@link Database1#processTransaction}; the buyer lists the item again
+ *         straight away so it keeps changing hands.</li>
+ * </ul>
+ * Balances start low enough that some purchases fail for lack of money. After
+ * each run the sum of all balances must equal the starting total and no
+ * balance may be negative.
+ *
+ * <p>Run with: {@code java MoneyConservationBenchmark [users] [secondsPerRun]}</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class MoneyConservationBenchmark {
+    /** Worker thread counts to measure. */
+    private static final int[] THREADS = {1, 4, 16, 64};
+    /** Starting balance of every user, in dollars. */
+    private static final double START_BALANCE = 250.0;
+
+    private interface Workload {
+        /**
+         * @return true if money moved
+         */
+        boolean step(Database1 db, ThreadLocalRandom random, int userCount);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int userCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 2;
+
+        // processTransaction logs every refused purchase; keep the results readable
+        PrintStream results = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        boolean allPassed = true;
+        results.printf("%-10s %8s %14s %14s %8s%n", "workload", "threads", "ops/sec", "moved/sec", "check");
+        for (int threads : THREADS) {
+            allPassed &= run(results, "transfer", threads, userCount, seconds,
+                    MoneyConservationBenchmark::transfer);
+            allPassed &= run(results, "purchase", threads, userCount, seconds,
+                    MoneyConservationBenchmark::purchase);
+        }
+        System.setOut(results);
+        if (!allPassed) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean run(PrintStream results, String name, int threads, int userCount, double seconds,
+                               Workload workload) throws InterruptedException {
+        Database1 db = new Database1();
+        for (int i = 0; i < userCount; i++) {
+            db.addUser("user" + i, "pw", START_BALANCE, new ArrayList<>());
+            db.addItem("item" + i, 1 + i % 100, "user" + i);
+            db.sellItem("user" + i, "item" + i);
+        }
+        long expected = totalCents(db, userCount);
+
+        LongAdder ops = new LongAdder();
+        LongAdder moved = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long runNanos = (long) (seconds * 1_000_000_000L);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long deadline = System.nanoTime() + runNanos;
+                long done = 0;
+                long succeeded = 0;
+                while (System.nanoTime() < deadline) {
+                    if (workload.step(db, random, userCount)) {
+                        succeeded++;
+                    }
+                    done++;
+                }
+                ops.add(done);
+                moved.add(succeeded);
+            }, "bench-" + t);
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        long actual = totalCents(db, userCount);
+        boolean negative = false;
+        for (int i = 0; i < userCount; i++) {
+            negative |= db.getUser("user" + i).getBalanceCents() < 0;
+        }
+        boolean passed = actual == expected && !negative;
+        results.printf("%-10s %8d %14.0f %14.0f %8s%n", name, threads, ops.sum() / seconds,
+                moved.sum() / seconds, passed ? "PASS" : "FAIL");
+        if (!passed) {
+            results.printf("  expected %s, found %s%s%n", Money.format(expected), Money.format(actual),
+                    negative ? ", with a negative balance" : "");
+        }
+        return passed;
+    }
+
+    private static long totalCents(Database1 db, int userCount) {
+        long total = 0;
+        for (int i = 0; i < userCount; i++) {
+            total += db.getUser("user" + i).getBalanceCents();
+        }
+        return total;
+    }
+
+    private static boolean transfer(Database1 db, ThreadLocalRandom random, int userCount) {
+        User from = db.getUser("user" + random.nextInt(userCount));
+        User to = db.getUser("user" + random.nextInt(userCount));
+        return User.transfer(from, to, 1 + random.nextInt(10_000));
+    }
+
+    private static boolean purchase(Database1 db, ThreadLocalRandom random, int userCount) {
+        String itemName = "item" + random.nextInt(userCount);
+        Item item = db.searchSoldItem(itemName);
+        if (item == null) {
+            // Between a sale and its relisting
+            return false;
+        }
+        User buyer = db.getUser("user" + random.nextInt(userCount));
+        User seller = db.getUser(item.getSeller());
+        if (seller == null || seller == buyer) {
+            return false;
+        }
+        db.processTransaction(buyer, seller, item);
+        if (!buyer.getUsername().equals(item.getSeller())) {
+            // Refused: sold to someone else first, or the buyer was short
+            return false;
+        }
+        db.sellItem(buyer.getUsername(), itemName);
+        return true;
+    }
+}
@@ -0,0 +1,100 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Compares a lock-step client, which waits for every response before sending
+ * the next request, with pipelined clients that keep 4, 16 or 64 tagged
+ * requests in flight on one connection. The requests are a mix of
+ * {@code searchitem} and {@code getbalance}, which the server runs
+ * concurrently. For each window it reports requests per second and the
+ * median and 99th percentile latency from send to response.
+ *
+ * <p>Run with: {@code java PipeliningBenchmark [requests] [threads|virtual|nio]}</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class PipeliningBenchmark {
+    private static final int[] WINDOWS = {1, 4, 16, 64};
+    private static final int PORT = 23700;
+    private static final int ITEMS = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        String io = args.length > 1 ? args[1] : "virtual";
+
+        Database1 db = new Database1();
+        db.addUser("seller", "pw", 0, new ArrayList<>());
+        db.addUser("buyer", "pw", 1_000, new ArrayList<>());
+        for (int i = 0; i < ITEMS; i++) {
+            db.addItem("item" + i, 1 + i % 100, "seller");
+            db.sellItem("seller", "item" + i);
+        }
+        ClientHandler.setDatabase(db);
+
+        ServerInterface server = switch (io) {
+            case "nio" -> new NioServer(PORT);
+            case "threads" -> new Server(PORT, false);
+            default -> new Server(PORT, true);
+        };
+        Thread serverThread = new Thread((Runnable) server, "bench-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        Thread.sleep(300);
+
+        ClientConnection conn = new ClientConnection("localhost", PORT, line -> { });
+        conn.request("login buyer pw").join();
+
+        System.out.printf("%-8s %12s %10s %10s%n", "window", "req/sec", "p50 us", "p99 us");
+        for (int round = 0; round < 2; round++) {
+            // The first round only warms up both sides
+            for (int window : WINDOWS) {
+                Result result = run(conn, window, requests);
+                if (round == 1) {
+                    report(window, result);
+                }
+            }
+        }
+        conn.close();
+        server.stop();
+    }
+
+    /** Latency of every request plus the time the whole run took, in nanoseconds. */
+    private record Result(long[] latencies, long elapsed) {
+    }
+
+    private static Result run(ClientConnection conn, int window, int requests) throws InterruptedException {
+        long[] latencies = new long[requests];
+        Semaphore slots = new Semaphore(window);
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            slots.acquire();
+            String cmd = i % 2 == 0 ? "searchitem item" + (i % ITEMS) : "getbalance";
+            int index = i;
+            long sent = System.nanoTime();
+            CompletableFuture<?> response = conn.request(cmd);
+            response.whenComplete((lines, error) -> {
+                latencies[index] = System.nanoTime() - sent;
+                slots.release();
+            });
+        }
+        // Every slot is back once the last response has arrived
+        slots.acquire(window);
+        return new Result(latencies, System.nanoTime() - start);
+    }
+
+    private static void report(int window, Result result) {
+        long[] latencies = result.latencies().clone();
+        int requests = latencies.length;
+        double seconds = result.elapsed() / 1e9;
+        Arrays.sort(latencies);
+        System.out.printf("%-8d %12.0f %10.1f %10.1f%n", window, requests / seconds,
+                latencies[requests / 2] / 1e3, latencies[(int) (requests * 0.99)] / 1e3);
+    }
+}
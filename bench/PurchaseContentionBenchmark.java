@@ -0,0 +1,137 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Makes many buyers race for one hot item, round after round, using the
+ * default striped locks (there is no global lock). Two purchase paths run:
+ * <ul>
+ *     <li>"search+process" is what the {@code buy} command used to do: find the
+ *         listing, then call {@link Database1#processTransaction}. Everyone who
+ *         found the listing was told "Transaction processed."</li>
+ *     <li>"buy" is {@link Database1#buy}, which claims the listing with a
+ *         compare-and-set and returns a {@link PurchaseResult}.</li>
+ * </ul>
+ * For each round it counts the buyers that paid and the buyers that were told
+ * they bought the item. A correct run has exactly one of each per round, and
+ * the seller's balance grows by exactly the sum of the prices.
+ *
+ * <p>Run with: {@code java PurchaseContentionBenchmark [rounds]}</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class PurchaseContentionBenchmark {
+    /** Buyer thread counts to measure. */
+    private static final int[] THREADS = {2, 8, 32, 64};
+    /** Price of every hot item, in dollars. */
+    private static final double PRICE = 5.0;
+
+    private interface Path {
+        /**
+         * @return true if the buyer was told the purchase went through
+         */
+        boolean buy(Database1 db, String buyer, String itemName);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+
+        // processTransaction logs every refused purchase; keep the results readable
+        PrintStream results = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        boolean allPassed = true;
+        results.printf("%-16s %8s %12s %10s %10s %8s%n", "path", "threads", "rounds/sec",
+                "paid/rnd", "told/rnd", "check");
+        for (int threads : THREADS) {
+            run(results, "search+process", threads, rounds, PurchaseContentionBenchmark::searchAndProcess);
+            allPassed &= run(results, "buy", threads, rounds, PurchaseContentionBenchmark::atomicBuy);
+        }
+        System.setOut(results);
+        if (!allPassed) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean run(PrintStream results, String name, int threads, int rounds, Path path)
+            throws InterruptedException {
+        Database1 db = new Database1();
+        db.addUser("seller", "pw", 0, new ArrayList<>());
+        for (int t = 0; t < threads; t++) {
+            db.addUser("buyer" + t, "pw", 1_000_000.0, new ArrayList<>());
+        }
+        User seller = db.getUser("seller");
+
+        AtomicIntegerArray told = new AtomicIntegerArray(rounds);
+        AtomicLong round = new AtomicLong(-1);
+        // The last thread to arrive lists the next hot item, then all of them race for it
+        CyclicBarrier barrier = new CyclicBarrier(threads, () -> {
+            long r = round.incrementAndGet();
+            if (r < rounds) {
+                db.addItem("hot" + r, PRICE, "seller");
+                db.sellItem("seller", "hot" + r);
+            }
+        });
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            String buyer = "buyer" + t;
+            workers[t] = new Thread(() -> {
+                try {
+                    for (int r = 0; r < rounds; r++) {
+                        barrier.await();
+                        if (path.buy(db, buyer, "hot" + r)) {
+                            told.incrementAndGet(r);
+                        }
+                    }
+                    barrier.await();
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "buyer-" + t);
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int minTold = Integer.MAX_VALUE;
+        int maxTold = 0;
+        for (int r = 0; r < rounds; r++) {
+            minTold = Math.min(minTold, told.get(r));
+            maxTold = Math.max(maxTold, told.get(r));
+        }
+        // Every sale pays the seller once, so this counts the buyers that paid
+        double paidPerRound = (double) seller.getBalanceCents() / Money.toCents(PRICE) / rounds;
+        boolean passed = minTold == 1 && maxTold == 1 && seller.getBalanceCents() == rounds * Money.toCents(PRICE);
+        results.printf("%-16s %8d %12.0f %10.2f %10s %8s%n", name, threads, rounds / seconds, paidPerRound,
+                minTold == maxTold ? Integer.toString(minTold) : minTold + "-" + maxTold, passed ? "PASS" : "FAIL");
+        return passed;
+    }
+
+    private static boolean searchAndProcess(Database1 db, String buyer, String itemName) {
+        Item toBuy = db.searchSoldItem(itemName);
+        if (toBuy == null) {
+            return false;
+        }
+        db.processTransaction(db.getUser(buyer), db.getUser(toBuy.getSeller()), toBuy);
+        return true;
+    }
+
+    private static boolean atomicBuy(Database1 db, String buyer, String itemName) {
+        return db.buy(buyer, itemName) == PurchaseResult.BOUGHT;
+    }
+}
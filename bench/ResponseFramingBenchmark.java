@@ -0,0 +1,146 @@
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Sends {@code listitems} over a loopback socket again and again and reports
+ * bytes per second and socket writes per response. It compares three setups:
+ * <ul>
+ *     <li>the old autoflushing writer, which flushes after every line,</li>
+ *     <li>the buffered {@link ClientHandler}, which flushes once per command,</li>
+ *     <li>the same with {@code frame on}, which adds a line-count header.</li>
+ * </ul>
+ * Each write on a socket stream is one {@code write} system call, so counting
+ * writes counts syscalls.
+ *
+ * <p>Run with: {@code java ResponseFramingBenchmark [listings] [repetitions]}</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class ResponseFramingBenchmark {
+    private static final Database1 DB = new Database1();
+
+    public static void main(String[] args) throws Exception {
+        int listings = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        DB.addUser("seller", "pw", 0, new ArrayList<>());
+        for (int i = 0; i < listings; i++) {
+            DB.addItem("item" + i, 1 + i % 100, "seller");
+            DB.sellItem("seller", "item" + i);
+        }
+        ClientHandler.setDatabase(DB);
+
+        System.out.printf("%-12s %14s %14s %14s%n", "writer", "bytes/resp", "writes/resp", "MB/sec");
+        for (int round = 0; round < 2; round++) {
+            // The first round only warms up the JIT
+            boolean report = round == 1;
+            run("autoflush", repetitions, report, null);
+            run("buffered", repetitions, report, "frame off");
+            run("framed", repetitions, report, "frame on");
+        }
+    }
+
+    /**
+     * @param setup command sent before measuring, or null for the old autoflush writer
+     */
+    private static void run(String name, int repetitions, boolean report, String setup) throws Exception {
+        try (ServerSocket listener = new ServerSocket(0);
+             Socket client = new Socket("localhost", listener.getLocalPort());
+             Socket server = listener.accept()) {
+            AtomicLong received = new AtomicLong();
+            Thread drain = new Thread(() -> {
+                byte[] buffer = new byte[64 * 1024];
+                try {
+                    InputStream in = client.getInputStream();
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        received.addAndGet(n);
+                    }
+                } catch (IOException ignored) {
+                    // socket closed at the end of the run
+                }
+            }, "drain");
+            drain.start();
+
+            CountingStream counted = new CountingStream(server.getOutputStream());
+            long start;
+            if (setup == null) {
+                // What listitems did before: autoflush sends every line on its own
+                PrintWriter out = new PrintWriter(counted, true);
+                start = System.nanoTime();
+                for (int r = 0; r < repetitions; r++) {
+                    for (Item i : DB.getItems()) {
+                        out.println(i.getName() + " - $" + String.format("%.2f", i.getCost())
+                                + " - Seller: " + i.getSeller());
+                    }
+                }
+            } else {
+                ClientHandler handler = new ClientHandler(
+                        new OutputStreamWriter(new BufferedOutputStream(counted, 64 * 1024)), null);
+                handler.process(setup);
+                counted.reset();
+                start = System.nanoTime();
+                for (int r = 0; r < repetitions; r++) {
+                    handler.process("listitems");
+                }
+            }
+            // Done once the client has read everything sent
+            while (received.get() < counted.total) {
+                Thread.onSpinWait();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (report) {
+                System.out.printf("%-12s %14d %14.1f %14.1f%n", name, counted.bytes / repetitions,
+                        (double) counted.writes / repetitions, counted.bytes / seconds / (1 << 20));
+            }
+            server.shutdownOutput();
+            drain.join();
+        }
+    }
+
+    /** Counts the bytes and write calls that reach the socket. */
+    private static class CountingStream extends FilterOutputStream {
+        long bytes;
+        long writes;
+        long total;
+
+        CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytes += len;
+            total += len;
+            writes++;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytes++;
+            total++;
+            writes++;
+        }
+
+        void reset() {
+            bytes = 0;
+            writes = 0;
+        }
+    }
+}
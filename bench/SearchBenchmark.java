@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Measures {@link ItemSearchIndex} query latency over a large catalog, by
+ * default one million listings. Names join an adjective, a noun and often a
+ * number, such as "vintagelamp417", so many listings share words the way real
+ * ones do. Five kinds of query are timed: an exact name, a three-letter prefix,
+ * a four-letter piece from the middle of a name, and a name with one or two
+ * typos. For comparison it also times what clients did before: scanning every
+ * name for the text.
+ *
+ * <p>Run with: {@code java -Xmx3g SearchBenchmark [listings] [queries]}</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class SearchBenchmark {
+    private static final String[] ADJECTIVES = {"vintage", "red", "blue", "wooden", "antique", "modern", "small",
+        "large", "green", "leather", "golden", "silver", "rustic", "classic", "cozy", "bright", "dark", "tiny",
+        "heavy", "soft", "smart", "retro", "black", "white", "plastic", "glass", "steel", "bamboo", "marble",
+        "velvet"};
+    private static final String[] NOUNS = {"lamp", "chair", "table", "desk", "mirror", "sofa", "clock", "vase",
+        "shelf", "rug", "bench", "stool", "jacket", "boots", "watch", "bicycle", "guitar", "camera", "kettle",
+        "teapot", "blender", "monitor", "keyboard", "speaker", "backpack", "wallet", "sweater", "scarf", "helmet",
+        "tent", "lantern", "drill", "hammer", "ladder", "pillow", "blanket", "curtain", "painting", "frame",
+        "planter"};
+
+    // Keeps the JIT from discarding the scan
+    private static long sink;
+
+    public static void main(String[] args) {
+        int listings = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        Random random = new Random(42);
+
+        String[] names = new String[listings];
+        for (int i = 0; i < listings; i++) {
+            names[i] = ADJECTIVES[random.nextInt(ADJECTIVES.length)] + NOUNS[random.nextInt(NOUNS.length)]
+                    + (random.nextBoolean() ? Integer.toString(random.nextInt(1000)) : "");
+        }
+
+        ItemSearchIndex index = new ItemSearchIndex();
+        long start = System.nanoTime();
+        for (int i = 0; i < listings; i++) {
+            index.add(new Item(i + 1, names[i], 1 + i % 500, "seller" + i % 10_000));
+            index.flush();
+        }
+        double buildSeconds = (System.nanoTime() - start) / 1e9;
+        System.gc();
+        Runtime rt = Runtime.getRuntime();
+        System.out.printf("%d listings indexed in %.1f s, heap in use %d MB%n%n", listings, buildSeconds,
+                (rt.totalMemory() - rt.freeMemory()) >> 20);
+
+        System.out.printf("%-12s %10s %10s %10s %8s%n", "query", "p50 us", "p99 us", "max us", "hits");
+        for (int round = 0; round < 2; round++) {
+            // The first round only warms up the JIT
+            boolean report = round == 1;
+            measure("exact", queries, report, index, names, random, n -> n);
+            measure("prefix", queries, report, index, names, random, n -> n.substring(0, 3));
+            measure("substring", queries, report, index, names, random,
+                    n -> n.substring(n.length() / 2 - 2, n.length() / 2 + 2));
+            measure("typo x1", queries, report, index, names, random, n -> typo(n, random));
+            measure("typo x2", queries, report, index, names, random, n -> typo(typo(n, random), random));
+        }
+
+        // The old way: the client had every name and filtered them itself
+        long[] scan = new long[Math.max(1, queries / 100)];
+        for (int q = 0; q < scan.length; q++) {
+            String n = names[random.nextInt(listings)];
+            String needle = n.substring(n.length() / 2 - 2, n.length() / 2 + 2);
+            long t = System.nanoTime();
+            int found = 0;
+            for (String name : names) {
+                if (name.toLowerCase(Locale.ROOT).contains(needle)) {
+                    found++;
+                }
+            }
+            scan[q] = System.nanoTime() - t;
+            sink += found;
+        }
+        Arrays.sort(scan);
+        System.out.printf("%-12s %10.0f %10s %10.0f%n", "full scan", scan[scan.length / 2] / 1e3, "",
+                scan[scan.length - 1] / 1e3);
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private interface QueryMaker {
+        String make(String name);
+    }
+
+    private static void measure(String kind, int queries, boolean report, ItemSearchIndex index, String[] names,
+                                Random random, QueryMaker maker) {
+        long[] nanos = new long[queries];
+        long hits = 0;
+        for (int q = 0; q < queries; q++) {
+            String query = maker.make(names[random.nextInt(names.length)]);
+            long t = System.nanoTime();
+            ArrayList<ItemSearchIndex.Hit> found = index.search(query, 20);
+            nanos[q] = System.nanoTime() - t;
+            hits += found.size();
+        }
+        Arrays.sort(nanos);
+        if (report) {
+            System.out.printf("%-12s %10.1f %10.1f %10.1f %8.1f%n", kind, nanos[queries / 2] / 1e3,
+                    nanos[queries * 99 / 100] / 1e3, nanos[queries - 1] / 1e3, (double) hits / queries);
+        }
+    }
+
+    /** Applies one random edit: a changed, dropped or doubled letter. */
+    private static String typo(String s, Random random) {
+        int at = random.nextInt(s.length());
+        char c = (char) ('a' + random.nextInt(26));
+        return switch (random.nextInt(3)) {
+            case 1 -> s.substring(0, at) + s.substring(at + 1);
+            case 2 -> s.substring(0, at) + s.charAt(at) + s.substring(at);
+            default -> s.substring(0, at) + c + s.substring(at + 1);
+        };
+    }
+}
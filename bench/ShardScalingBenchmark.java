@@ -0,0 +1,119 @@
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Measures how {@link ShardedDatabase} throughput grows with the number of
+ * client threads, for each shard count. Every thread runs the same mix of
+ * logins, conversation reads, messages and purchases between random users,
+ * so most messages and purchases cross shards once there are several. A
+ * single {@link Database1} is measured too, as the baseline the shards
+ * should beat.
+ *
+ * <p>The speedup column compares each run with the first thread count on
+ * the same database. Speedups above 1 need as many cores as threads; the
+ * machine's core count is printed first. One unprinted run warms up the JIT
+ * before any is measured.</p>
+ *
+ * <p>Run with: {@code java ShardScalingBenchmark [users] [secondsPerRun]
+ * [shards, e.g. 1,2,4,8] [threads, e.g. 1,2,4,8,16]}</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class ShardScalingBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int userCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 3;
+        int[] shardCounts = parseList(args.length > 2 ? args[2] : "1,2,4,8");
+        int[] threadCounts = parseList(args.length > 3 ? args[3] : "1,2,4,8,16");
+
+        System.out.printf("%d cores, %d users, %.1f s per run%n%n", Runtime.getRuntime().availableProcessors(),
+                userCount, seconds);
+        run(shardCounts[shardCounts.length - 1], threadCounts[threadCounts.length - 1], userCount, seconds);
+        System.out.printf("%10s %8s %14s %8s%n", "database", "threads", "ops/sec", "speedup");
+        // Shard count 0 stands for a plain Database1
+        int[] databases = new int[shardCounts.length + 1];
+        System.arraycopy(shardCounts, 0, databases, 1, shardCounts.length);
+        for (int shards : databases) {
+            double first = 0;
+            for (int threads : threadCounts) {
+                double opsPerSecond = run(shards, threads, userCount, seconds);
+                if (first == 0) {
+                    first = opsPerSecond;
+                }
+                System.out.printf("%10s %8d %14.0f %8.2f%n", shards == 0 ? "Database1" : shards + " shards",
+                        threads, opsPerSecond, opsPerSecond / first);
+            }
+        }
+    }
+
+    private static int[] parseList(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+    private static double run(int shards, int threads, int userCount, double seconds) throws InterruptedException {
+        DatabaseInterface db = shards == 0 ? new Database1() : new ShardedDatabase(shards);
+        for (int i = 0; i < userCount; i++) {
+            db.addUser("user" + i, "pw", 1_000_000.0, new ArrayList<>());
+        }
+
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long runNanos = (long) (seconds * 1_000_000_000L);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long deadline = System.nanoTime() + runNanos;
+                long done = 0;
+                while (System.nanoTime() < deadline) {
+                    String a = "user" + random.nextInt(userCount);
+                    String b = "user" + random.nextInt(userCount);
+                    runOp(db, random.nextInt(100), a, b);
+                    done++;
+                }
+                ops.add(done);
+            }, "bench-" + t);
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return ops.sum() / seconds;
+    }
+
+    private static void runOp(DatabaseInterface db, int roll, String a, String b) {
+        if (roll < 30) {
+            db.login(a, "pw");
+        } else if (roll < 40) {
+            db.getSenderToReceiverMessage(a, b);
+        } else if (roll < 50) {
+            db.sendMessage(a, b, "hello");
+        } else if (roll < 60) {
+            db.getMessageUserList(a);
+        } else {
+            // Seller lists a fresh item and the buyer purchases it by name
+            String itemName = "item-" + a;
+            db.addItem(itemName, 1.0, a);
+            db.sellItem(a, itemName);
+            db.buy(b, itemName);
+        }
+    }
+}
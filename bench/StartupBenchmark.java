@@ -0,0 +1,94 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Measures how long a durable {@link Database1} takes to start. It builds a data
+ * directory holding one snapshot plus a journal tail, then times the snapshot
+ * load and the tail replay separately, and finally times the whole
+ * {@link Database1#open}.
+ *
+ * <p>The defaults match the target of 1M users, 5M items and 20M messages,
+ * which needs a large heap:
+ * {@code java -Xmx12g StartupBenchmark [users] [items] [messages] [tailRecords]}</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class StartupBenchmark {
+    public static void main(String[] args) throws IOException {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int items = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+        int messages = args.length > 2 ? Integer.parseInt(args[2]) : 20_000_000;
+        int tail = args.length > 3 ? Integer.parseInt(args[3]) : 100_000;
+
+        Path dir = Files.createTempDirectory("startup-bench");
+        try {
+            long snapshotLsn = 1_000_000;
+            System.out.printf("Building %,d users, %,d items, %,d messages...%n", users, items, messages);
+            Database1 source = build(users, items, messages);
+            long start = System.nanoTime();
+            Path file = Snapshot.write(dir, source, snapshotLsn);
+            System.out.printf("snapshot write: %,d ms, %,d MB%n", millisSince(start), Files.size(file) >> 20);
+            source = null;
+
+            // Journal tail written after the snapshot
+            Journal journal = new Journal(dir, Journal.SyncPolicy.OS, 10, snapshotLsn);
+            for (int i = 0; i < tail; i++) {
+                journal.append(JournalRecord.sendMessage("user" + (i % users), "user" + ((i + 1) % users), "tail " + i));
+            }
+            journal.close();
+            System.gc();
+
+            Database1 db = new Database1();
+            start = System.nanoTime();
+            long lsn = Snapshot.loadLatest(dir, db);
+            System.out.printf("snapshot load:  %,d ms%n", millisSince(start));
+            start = System.nanoTime();
+            long last = Journal.replay(dir, lsn, db::apply);
+            System.out.printf("tail replay:    %,d ms (%,d records)%n", millisSince(start), last - lsn);
+            db = null;
+            System.gc();
+
+            start = System.nanoTime();
+            Database1 opened = Database1.open(dir, Journal.SyncPolicy.OS, 10);
+            System.out.printf("full open:      %,d ms%n", millisSince(start));
+            opened.close();
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(p);
+                }
+            }
+        }
+    }
+
+    /** Fills a database through the restore hooks, which is far faster than the public API. */
+    private static Database1 build(int users, int items, int messages) {
+        Database1 db = new Database1();
+        String[] names = new String[users];
+        for (int i = 0; i < users; i++) {
+            names[i] = "user" + i;
+            db.restoreUser(new User(names[i], "pw" + i, 100.0, new ArrayList<>()));
+        }
+        for (int i = 0; i < items; i++) {
+            db.restoreItem(new Item(i + 1, "item" + i, 1 + i % 500, names[i % users]), i % 2 == 0);
+        }
+        for (int i = 0; i < messages; i++) {
+            db.restoreMessage(new Message(i + 1, names[i % users], names[(i * 7 + 1) % users], "message " + i));
+        }
+        db.restoreCounters(items + 1, messages + 1);
+        return db;
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Measures what {@link ServerStats} costs. Clients keep pipelined requests in
+ * flight against a real server, a mix of {@code getbalance},
+ * {@code searchitem}, {@code listitems page} and {@code changeitemprice}, and
+ * rounds alternate between stats on and off so drift in the machine affects
+ * both alike. It reports the median throughput of each and the difference,
+ * and the median difference between each on round and the off round after it.
+ * {@code inprocess} calls the handlers directly instead, with no sockets,
+ * which is the worst case: nothing but the commands dilutes the cost.
+ *
+ * <p>Run with: {@code java StatsOverheadBenchmark [rounds] [requests] [threads|virtual|nio|inprocess]}</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class StatsOverheadBenchmark {
+    private static final int PORT = 23710;
+    private static final int CLIENTS = 4;
+    private static final int WINDOW = 16;
+    private static final int ITEMS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        String io = args.length > 2 ? args[2] : "nio";
+
+        Database1 db = new Database1();
+        for (int c = 0; c < CLIENTS; c++) {
+            db.addUser("user" + c, "pw", 1_000, new ArrayList<>());
+            for (int i = 0; i < ITEMS; i++) {
+                db.addItem("item" + c + "_" + i, 1 + i % 100, "user" + c);
+                db.sellItem("user" + c, "item" + c + "_" + i);
+            }
+        }
+        ClientHandler.setDatabase(db);
+        if (io.equals("inprocess")) {
+            // One handler per client, called directly: no sockets, so only the commands themselves dilute the cost
+            ClientHandler[] handlers = new ClientHandler[CLIENTS];
+            for (int c = 0; c < CLIENTS; c++) {
+                handlers[c] = new ClientHandler(Writer.nullWriter(), null);
+                handlers[c].process("login user" + c + " pw");
+            }
+            compare(rounds, () -> runInProcess(handlers, requests));
+            System.out.print(ClientHandler.STATS.report(db));
+            return;
+        }
+        ServerInterface server = switch (io) {
+            case "threads" -> new Server(PORT, false);
+            case "virtual" -> new Server(PORT, true);
+            default -> new NioServer(PORT);
+        };
+        Thread serverThread = new Thread((Runnable) server, "bench-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        Thread.sleep(300);
+
+        ClientConnection[] conns = new ClientConnection[CLIENTS];
+        for (int c = 0; c < CLIENTS; c++) {
+            conns[c] = new ClientConnection("localhost", PORT, line -> { });
+            conns[c].request("login user" + c + " pw").join();
+        }
+
+        compare(rounds, () -> run(conns, requests));
+        System.out.print(ClientHandler.STATS.report(db));
+        for (ClientConnection conn : conns) {
+            conn.close();
+        }
+        server.stop();
+    }
+
+    /** One measured round. */
+    private interface Round {
+        /** @return requests per second */
+        double run() throws Exception;
+    }
+
+    /** Alternates rounds with stats on and off and prints the medians. */
+    private static void compare(int rounds, Round round) throws Exception {
+        double[] on = new double[rounds];
+        double[] off = new double[rounds];
+        // Two extra rounds warm up both sides
+        for (int r = -2; r < rounds * 2; r++) {
+            boolean enabled = (r & 1) == 0;
+            ClientHandler.STATS.setEnabled(enabled);
+            double perSecond = round.run();
+            if (r >= 0) {
+                (enabled ? on : off)[r / 2] = perSecond;
+            }
+        }
+        ClientHandler.STATS.setEnabled(true);
+        // Each on round against the off round right after it, so slow drift cancels out
+        double[] paired = new double[rounds];
+        for (int r = 0; r < rounds; r++) {
+            paired[r] = (off[r] - on[r]) / off[r] * 100;
+        }
+        Arrays.sort(on);
+        Arrays.sort(off);
+        Arrays.sort(paired);
+        double medianOn = on[rounds / 2];
+        double medianOff = off[rounds / 2];
+        System.out.printf("stats off %10.0f req/s%nstats on  %10.0f req/s%noverhead  %10.2f %% (paired rounds %.2f %%)%n",
+                medianOff, medianOn, (medianOff - medianOn) / medianOff * 100, paired[rounds / 2]);
+    }
+
+    /** @return requests per second with each handler running {@code requests} commands in turn */
+    private static double runInProcess(ClientHandler[] handlers, int requests) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            for (int c = 0; c < handlers.length; c++) {
+                handlers[c].process(command(c, i));
+            }
+        }
+        return (double) requests * handlers.length / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /** @return the i-th request of client c */
+    private static String command(int c, int i) {
+        return switch (i % 4) {
+            case 0 -> "getbalance";
+            case 1 -> "searchitem item" + c + "_" + i % ITEMS;
+            case 2 -> "listitems page 10";
+            default -> "changeitemprice item" + c + "_" + i % ITEMS + " " + (1 + i % 50);
+        };
+    }
+
+    /** @return requests per second with every client sending {@code requests} */
+    private static double run(ClientConnection[] conns, int requests) throws InterruptedException {
+        Thread[] senders = new Thread[conns.length];
+        long start = System.nanoTime();
+        for (int c = 0; c < conns.length; c++) {
+            ClientConnection conn = conns[c];
+            int me = c;
+            senders[c] = new Thread(() -> {
+                Semaphore slots = new Semaphore(WINDOW);
+                for (int i = 0; i < requests; i++) {
+                    slots.acquireUninterruptibly();
+                    conn.request(command(me, i)).whenComplete((lines, error) -> slots.release());
+                }
+                // Every slot is back once the last response has arrived
+                slots.acquireUninterruptibly(WINDOW);
+            });
+            senders[c].start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        return (double) requests * conns.length / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Measures login latency as the number of registered users grows. With the
+ * username-keyed user store the average time per login should stay flat from
+ * a thousand accounts up to a few hundred thousand.
+ *
+ * <p>Run with: {@code java UserLookupBenchmark [logins]}</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class UserLookupBenchmark {
+    /** User counts to measure, smallest first. */
+    private static final int[] USER_COUNTS = {1_000, 10_000, 50_000, 100_000, 200_000};
+
+    public static void main(String[] args) {
+        int logins = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+
+        System.out.printf("%10s %14s %14s%n", "users", "register ns", "login ns");
+        for (int count : USER_COUNTS) {
+            Database1 db = new Database1();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                db.addUser("user" + i, "pw" + i, 100.0, new ArrayList<>());
+            }
+            double registerNs = (System.nanoTime() - start) / (double) count;
+
+            // Pre-build names so string concatenation is not part of the measurement
+            Random random = new Random(42);
+            String[] names = new String[1024];
+            String[] passwords = new String[names.length];
+            for (int i = 0; i < names.length; i++) {
+                int id = random.nextInt(count);
+                names[i] = "user" + id;
+                passwords[i] = "pw" + id;
+            }
+
+            // Warm up, then measure
+            int ok = runLogins(db, names, passwords, logins);
+            start = System.nanoTime();
+            ok += runLogins(db, names, passwords, logins);
+            double loginNs = (System.nanoTime() - start) / (double) logins;
+
+            if (ok != 2 * logins) {
+                throw new IllegalStateException("Unexpected login failures: " + (2 * logins - ok));
+            }
+            System.out.printf("%10d %14.1f %14.1f%n", count, registerNs, loginNs);
+        }
+    }
+
+    private static int runLogins(Database1 db, String[] names, String[] passwords, int logins) {
+        int ok = 0;
+        for (int i = 0; i < logins; i++) {
+            int slot = i & (names.length - 1);
+            if (db.login(names[slot], passwords[slot])) {
+                ok++;
+            }
+        }
+        return ok;
+    }
+}
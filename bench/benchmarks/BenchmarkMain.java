@@ -0,0 +1,147 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Runs the JMH benchmarks once per thread count, with JMH's GC profiler,
+ * and compares the results with an earlier run, so a change that makes
+ * anything slower or allocate more is caught before it is merged.
+ *
+ * <p>Run with: {@code java benchmarks.BenchmarkMain [regex] [--threads 1,4]
+ * [--save file] [--baseline file]}. The regex selects benchmarks, as in JMH.
+ * {@code --save} writes every score to a file; {@code --baseline} reads one
+ * such file and lists each benchmark whose throughput dropped by more than
+ * {@link #THRESHOLD} and by more than both runs' error bars together, or
+ * whose allocation per operation grew by more than {@link #THRESHOLD} and by
+ * at least {@link #MIN_ALLOCATION_GROWTH} bytes. The exit status is 1 if
+ * anything regressed. For JMH's own options, run
+ * {@code org.openjdk.jmh.Main} instead.</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class BenchmarkMain {
+    /** Smallest drop in throughput reported as a regression. */
+    private static final double THRESHOLD = 0.05;
+    /** Smallest growth in bytes per operation reported, about one small object. */
+    private static final double MIN_ALLOCATION_GROWTH = 16;
+    /** The GC profiler's bytes allocated per operation. */
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    /**
+     * One benchmark's result with one set of parameters and threads.
+     * @param bytesPerOp allocation per operation, or NaN if not known
+     */
+    private record Score(double score, double error, String unit, double bytesPerOp) {
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        String include = "benchmarks\\..*Benchmark";
+        String threads = "1,4";
+        Path save = null;
+        Path baseline = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads" -> threads = args[++i];
+                case "--save" -> save = Path.of(args[++i]);
+                case "--baseline" -> baseline = Path.of(args[++i]);
+                default -> include = args[i];
+            }
+        }
+
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (String count : threads.split(",")) {
+            Collection<RunResult> results = new Runner(new OptionsBuilder()
+                    .include(include)
+                    .threads(Integer.parseInt(count.trim()))
+                    .addProfiler(GCProfiler.class)
+                    .build()).run();
+            for (RunResult result : results) {
+                Result<?> allocation = result.getSecondaryResults().get(ALLOCATION);
+                scores.put(key(result), new Score(result.getPrimaryResult().getScore(),
+                        result.getPrimaryResult().getScoreError(), result.getPrimaryResult().getScoreUnit(),
+                        allocation == null ? Double.NaN : allocation.getScore()));
+            }
+        }
+
+        if (save != null) {
+            List<String> lines = new ArrayList<>();
+            scores.forEach((key, s) -> lines.add(key + '\t' + s.score() + '\t' + s.error() + '\t' + s.unit()
+                    + '\t' + s.bytesPerOp()));
+            Files.write(save, lines);
+            System.out.println("Saved " + lines.size() + " scores to " + save);
+        }
+        if (baseline != null && regressed(read(baseline), scores)) {
+            System.exit(1);
+        }
+    }
+
+    /** @return the benchmark's short name, its parameters and its thread count */
+    private static String key(RunResult result) {
+        String name = result.getParams().getBenchmark();
+        StringBuilder key = new StringBuilder(name.substring(name.indexOf('.') + 1));
+        for (String param : result.getParams().getParamsKeys()) {
+            key.append(' ').append(param).append('=').append(result.getParams().getParam(param));
+        }
+        return key.append(" threads=").append(result.getParams().getThreads()).toString();
+    }
+
+    private static Map<String, Score> read(Path file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file)) {
+            String[] fields = line.split("\t");
+            // Files saved before allocation was recorded have four fields
+            if (fields.length == 4 || fields.length == 5) {
+                scores.put(fields[0], new Score(Double.parseDouble(fields[1]), Double.parseDouble(fields[2]),
+                        fields[3], fields.length == 5 ? Double.parseDouble(fields[4]) : Double.NaN));
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Prints how every benchmark in both runs changed, marking regressions.
+     * @return true if any benchmark regressed
+     */
+    private static boolean regressed(Map<String, Score> before, Map<String, Score> after) {
+        boolean any = false;
+        System.out.printf("%n%-80s %12s %12s %8s %10s %10s%n", "benchmark", "baseline", "now", "change",
+                "B/op was", "B/op now");
+        for (Map.Entry<String, Score> e : after.entrySet()) {
+            Score old = before.get(e.getKey());
+            if (old == null) {
+                continue;
+            }
+            Score now = e.getValue();
+            double change = (now.score() - old.score()) / old.score();
+            // Throughput: lower is worse, but only beyond the noise of both runs
+            boolean worse = -change > THRESHOLD && old.score() - now.score() > old.error() + now.error();
+            // Allocation: NaN on either side never counts as growth
+            double grown = now.bytesPerOp() - old.bytesPerOp();
+            boolean allocates = grown >= MIN_ALLOCATION_GROWTH && grown > old.bytesPerOp() * THRESHOLD;
+            any |= worse || allocates;
+            System.out.printf("%-80s %12.3f %12.3f %+7.1f%% %10.1f %10.1f%s%s%n", e.getKey(), old.score(),
+                    now.score(), change * 100, old.bytesPerOp(), now.bytesPerOp(), worse ? "  REGRESSION" : "",
+                    allocates ? "  ALLOCATES MORE" : "");
+        }
+        return any;
+    }
+}
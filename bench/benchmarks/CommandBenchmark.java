@@ -0,0 +1,72 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * JMH benchmark of the whole command path on the server side: a line is
+ * tokenized, looked up in the command table, run against a database of
+ * 10,000 users and listings, and its response formatted and sent to a writer
+ * that discards it. Only the socket is left out. An unknown command measures
+ * parsing and lookup alone.
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+    /** Users and listings in the database. */
+    private static final int SIZE = 10_000;
+
+    /** The database shared by every thread. */
+    @State(Scope.Benchmark)
+    public static class Data {
+        Marketplace market;
+
+        @Setup(Level.Trial)
+        public void populate() {
+            market = Marketplace.create(SIZE);
+        }
+    }
+
+    /** Each thread's own connection. */
+    @State(Scope.Thread)
+    public static class Connection {
+        @Param({"getbalance", "searchitem item4242", "listitems page 20 sort price", "search item42",
+            "viewconversation user1", "nosuchcommand with some arguments"})
+        public String command;
+
+        Marketplace.Session session;
+
+        @Setup(Level.Trial)
+        public void connect(Data data) {
+            session = data.market.newSession();
+        }
+    }
+
+    @Benchmark
+    public long handleCommand(Connection connection) throws IOException {
+        return connection.session.run(connection.command);
+    }
+}
@@ -0,0 +1,112 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * JMH benchmark of request parsing alone. It compares the old
+ * {@code split}/{@code toLowerCase} parsing with CommandLine plus
+ * CommandRegistry, each measured two ways:
+ * <ul>
+ *     <li>"dispatch" finds the command, checks the argument count and parses
+ *         numeric arguments. With the tokenizer this allocates nothing.</li>
+ *     <li>"with args" also produces every argument as a {@code String}, which
+ *         is what commands that look up users or items need.</li>
+ * </ul>
+ * {@link BenchmarkMain} runs it with JMH's GC profiler, so
+ * {@code gc.alloc.rate.norm} shows the bytes allocated per line and a
+ * baseline comparison catches any that creep into the tokenizer.
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandParserBenchmark {
+    /** Each thread's own tokenizer and the line it parses. */
+    @State(Scope.Thread)
+    public static class Line {
+        @Param({"getbalance", "searchitem Lamp", "changeitemprice Chair 45.99",
+            "sendmessage bob is the lamp still available for pickup today"})
+        public String line;
+
+        Marketplace.Parser parser;
+
+        @Setup(Level.Trial)
+        public void create() {
+            parser = Marketplace.create(0).newParser();
+        }
+    }
+
+    @Benchmark
+    public long splitDispatch(Line line) {
+        return splitDispatch(line.line);
+    }
+
+    @Benchmark
+    public long splitWithArgs(Line line) {
+        return splitWithArgs(line.line);
+    }
+
+    @Benchmark
+    public long tokenizerDispatch(Line line) {
+        return line.parser.dispatch(line.line);
+    }
+
+    @Benchmark
+    public long tokenizerWithArgs(Line line) {
+        return line.parser.withArgs(line.line);
+    }
+
+    /** What handleCommand used to do before reaching the switch. */
+    private static long splitDispatch(String input) {
+        String[] parts = input.split(" ", 2);
+        String cmd = parts[0].toLowerCase();
+        String[] args = parts.length > 1 ? parts[1].split(" ") : new String[0];
+        long acc = cmd.hashCode() + args.length;
+        if (cmd.equals("additem") || cmd.equals("changeitemprice")) {
+            acc += (long) Double.parseDouble(args[1]);
+        }
+        return acc;
+    }
+
+    private static long splitWithArgs(String input) {
+        String[] parts = input.split(" ", 2);
+        String cmd = parts[0].toLowerCase();
+        String[] args = parts.length > 1 ? parts[1].split(" ") : new String[0];
+        long acc = cmd.hashCode() + args.length;
+        if (cmd.equals("additem") || cmd.equals("changeitemprice")) {
+            acc += (long) Double.parseDouble(args[1]);
+        }
+        if (cmd.equals("sendmessage")) {
+            // The old loop that rebuilt the message body
+            String msg = args[1];
+            for (int i = 2; i < args.length; i++) msg += " " + args[i];
+            acc += msg.length();
+        } else {
+            for (String a : args) {
+                acc += a.length();
+            }
+        }
+        return acc;
+    }
+}
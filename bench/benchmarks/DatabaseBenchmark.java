@@ -0,0 +1,119 @@
+package benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * JMH benchmarks of the Database1 operations clients use most, against
+ * databases of 1,000 and 100,000 users and listings. Lookups pick a random
+ * user or listing on every call, so they measure the indexes rather than one
+ * hot cache line. Thread counts are chosen when running, see
+ * {@link BenchmarkMain}.
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DatabaseBenchmark {
+    /** A populated marketplace shared by every thread. */
+    @State(Scope.Benchmark)
+    public static class Data {
+        @Param({"1000", "100000"})
+        public int size;
+
+        Marketplace market;
+
+        @Setup(Level.Trial)
+        public void populate() {
+            market = Marketplace.create(size);
+        }
+
+        int randomIndex() {
+            return ThreadLocalRandom.current().nextInt(size);
+        }
+    }
+
+    /**
+     * A marketplace rebuilt before every iteration, for sendMessage. Every
+     * message is kept, so reusing one database for the whole run would make
+     * later iterations measure a growing heap.
+     */
+    @State(Scope.Benchmark)
+    public static class Inbox {
+        @Param({"1000", "100000"})
+        public int size;
+
+        Marketplace market;
+
+        @Setup(Level.Iteration)
+        public void populate() {
+            market = Marketplace.create(size);
+        }
+    }
+
+    /** Each thread's own pair of traders. */
+    @State(Scope.Thread)
+    public static class Trade {
+        Marketplace.Trader trader;
+
+        @Setup(Level.Trial)
+        public void join(Data data) {
+            trader = data.market.newTrader();
+        }
+    }
+
+    @Benchmark
+    public Object getUser(Data data) {
+        return data.market.getUser(Marketplace.userName(data.randomIndex()));
+    }
+
+    @Benchmark
+    public Object searchSoldItem(Data data) {
+        return data.market.searchSoldItem(Marketplace.listingName(data.randomIndex()));
+    }
+
+    @Benchmark
+    public Object getItems(Data data) {
+        return data.market.getItems();
+    }
+
+    @Benchmark
+    public void sendMessage(Inbox inbox) {
+        int from = ThreadLocalRandom.current().nextInt(inbox.size);
+        inbox.market.sendMessage(Marketplace.userName(from), Marketplace.userName((from + 1) % inbox.size), "hello");
+    }
+
+    @Benchmark
+    public Object getSenderToReceiverMessage(Data data) {
+        int from = data.randomIndex();
+        return data.market.getSenderToReceiverMessage(Marketplace.userName(from),
+                Marketplace.userName((from + 1) % data.size));
+    }
+
+    /** Relisting plus processTransaction, since every purchase has to be preceded by a listing. */
+    @Benchmark
+    public void processTransaction(Trade trade) {
+        trade.trader.trade();
+    }
+}
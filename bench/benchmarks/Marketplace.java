@@ -0,0 +1,107 @@
+package benchmarks;
+
+import java.io.IOException;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * The marketplace as the benchmarks see it. JMH refuses benchmarks in the
+ * default package, and code in a named package cannot refer to classes in the
+ * default package, where the whole marketplace lives. So the benchmarks call
+ * this interface, and {@code MarketplaceFixture}, which sits in the default
+ * package beside the code it measures, implements it. The fixture is loaded by
+ * name once per trial; after that every call is an ordinary interface call
+ * that the JIT inlines.
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public interface Marketplace {
+    /**
+     * Builds a database with {@code size} users, each with one listing, and a
+     * short conversation between each user and the next.
+     * @param size number of users and of listings
+     * @return the populated marketplace
+     */
+    static Marketplace create(int size) {
+        try {
+            return (Marketplace) Class.forName("MarketplaceFixture").getConstructor(int.class).newInstance(size);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("MarketplaceFixture is not on the classpath", e);
+        }
+    }
+
+    /**
+     * @param i index below the size passed to {@link #create}
+     * @return the username of user {@code i}
+     */
+    static String userName(int i) {
+        return "user" + i;
+    }
+
+    /**
+     * @param i index below the size passed to {@link #create}
+     * @return the name of user {@code i}'s listing
+     */
+    static String listingName(int i) {
+        return "item" + i;
+    }
+
+    /** @return Database1.getUser */
+    Object getUser(String username);
+
+    /** @return Database1.searchSoldItem */
+    Object searchSoldItem(String name);
+
+    /** @return Database1.getItems */
+    Object getItems();
+
+    /** Database1.sendMessage. */
+    void sendMessage(String sender, String receiver, String message);
+
+    /** @return Database1.getSenderToReceiverMessage */
+    Object getSenderToReceiverMessage(String sender, String receiver);
+
+    /** @return two new users who trade one item back and forth */
+    Trader newTrader();
+
+    /** @return a new connection, logged in as user 0 */
+    Session newSession();
+
+    /** @return a new tokenizer over a table of the client commands */
+    Parser newParser();
+
+    /** Two users of their own and an item they pass between them. */
+    interface Trader {
+        /** Lists the item again and has the other user buy it with Database1.processTransaction. */
+        void trade();
+    }
+
+    /** A CommandLine of its own and a CommandRegistry whose commands do nothing. */
+    interface Parser {
+        /**
+         * Tokenizes a line, looks up its command and parses any price.
+         * @return a value computed from the result
+         */
+        long dispatch(String line);
+
+        /**
+         * As {@link #dispatch}, then also makes a String of every argument.
+         * @return a value computed from the result
+         */
+        long withArgs(String line);
+    }
+
+    /** A ClientHandler whose responses go nowhere. */
+    interface Session {
+        /**
+         * Runs one command line through ClientHandler.process.
+         * @param command the line a client would send
+         * @return characters of response
+         * @throws IOException never; responses are discarded
+         */
+        long run(String command) throws IOException;
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Client-side copy of the marketplace listings. {@link #sync} asks the server
+ * for {@code listitems since <version>} and applies the reply, so a refresh
+ * downloads only the listings that changed since the last one. The first sync,
+ * and any sync after the server has dropped the needed history, downloads the
+ * full catalog instead.
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class CatalogCache {
+    /** Listing lines as {@code listitems} prints them, by item id. */
+    private final TreeMap<Long, String> listings = new TreeMap<>();
+    /** Catalog version the cache reflects; 0 before the first sync. */
+    private long version;
+
+    /**
+     * Brings the cache up to date.
+     * @param conn connection to the server
+     * @return completes with true if any listing changed
+     */
+    public CompletableFuture<Boolean> sync(ClientConnection conn) {
+        return conn.request("listitems since " + version()).thenApply(this::apply);
+    }
+
+    /**
+     * Applies one {@code listitems since} reply. A reply older than what the
+     * cache already holds is ignored, so overlapping syncs cannot undo each other.
+     * @param reply the response lines, header first
+     * @return true if any listing changed
+     */
+    public synchronized boolean apply(List<String> reply) {
+        if (reply.isEmpty() || !reply.get(0).startsWith("Catalog ")) {
+            return false;
+        }
+        String[] header = reply.get(0).split(" ");
+        long replyVersion = Long.parseLong(header[1]);
+        boolean full = header.length > 2 && header[2].equals("full");
+        if (replyVersion <= version && !full) {
+            return false;
+        }
+        boolean changed = full && !listings.isEmpty();
+        if (full) {
+            listings.clear();
+        }
+        for (int i = 1; i < reply.size(); i++) {
+            String line = reply.get(i);
+            int space = line.indexOf(' ', 2);
+            if (line.startsWith("- ")) {
+                changed |= listings.remove(Long.parseLong(line.substring(2))) != null;
+            } else if (line.startsWith("+ ") && space > 0) {
+                String listing = line.substring(space + 1);
+                changed |= !listing.equals(listings.put(Long.parseLong(line.substring(2, space)), listing));
+            }
+        }
+        version = replyVersion;
+        return changed;
+    }
+
+    /** @return the catalog version the cache reflects */
+    public synchronized long version() {
+        return version;
+    }
+
+    /** @return every cached listing as a table row, oldest listing first */
+    public synchronized List<Listing> rows() {
+        List<Listing> rows = new ArrayList<>(listings.size());
+        for (Map.Entry<Long, String> e : listings.entrySet()) {
+            Listing row = Listing.parse(e.getKey(), e.getValue());
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /** @return every cached listing line, oldest listing first */
+    public synchronized List<String> listings() {
+        return new ArrayList<>(listings.values());
+    }
+}
@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Versioned record of changes to the marketplace listings. Every time a listing
+ * appears, changes price or disappears, the catalog version goes up by one and
+ * the change is kept in a ring of the most recent {@link #CAPACITY} changes.
+ * A client that knows the version it last saw asks for {@link #since(long)}
+ * and gets only what changed after it.
+ *
+ * <p>Versions start at a random multiple of 2^32 rather than zero, so a version
+ * remembered from before a server restart almost surely falls outside the
+ * current range and the client is sent the full catalog instead of a wrong
+ * delta.</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class CatalogLog {
+    /** Changes kept for delta requests; older versions get the full catalog. */
+    public static final int CAPACITY = 4096;
+
+    /**
+     * One change to a listing.
+     * @param version catalog version after the change
+     * @param itemId id of the item
+     * @param name item name, or null if the listing was removed
+     * @param priceCents price in cents
+     * @param seller seller's username, or null if the listing was removed
+     */
+    public record Change(long version, long itemId, String name, long priceCents, String seller) {
+        /** @return whether the listing was removed */
+        public boolean removed() {
+            return name == null;
+        }
+    }
+
+    /**
+     * Changes since a version, read together with the version they lead to.
+     * @param version catalog version after the last change
+     * @param changes latest change to each item, in version order
+     */
+    public record Delta(long version, ArrayList<Change> changes) {
+    }
+
+    private final Change[] ring = new Change[CAPACITY];
+    /** Version before any change was recorded. */
+    private final long base;
+    private long version;
+
+    /** Creates an empty log whose versions start at a random base. */
+    public CatalogLog() {
+        base = (long) new Random().nextInt(Integer.MAX_VALUE) << 32;
+        version = base;
+    }
+
+    /** @return the current catalog version */
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Records that an item is now listed, or listed at a new price. Call after
+     * the listing itself has changed, so a reader who saw the old version
+     * always gets this change.
+     * @param item the listed item
+     * @return the new version
+     */
+    public long listed(Item item) {
+        return append(item.getId(), item.getName(), item.getCostCents(), item.getSeller());
+    }
+
+    /**
+     * Records that an item is no longer listed. Call after it left the listings.
+     * @param item the item
+     * @return the new version
+     */
+    public long removed(Item item) {
+        return append(item.getId(), null, 0, null);
+    }
+
+    private synchronized long append(long itemId, String name, long priceCents, String seller) {
+        version++;
+        ring[(int) (version % CAPACITY)] = new Change(version, itemId, name, priceCents, seller);
+        return version;
+    }
+
+    /**
+     * Returns the latest change to each item changed after {@code since}, in
+     * version order. Earlier changes to the same item are left out because the
+     * latest one replaces them.
+     * @param since a version returned by this log
+     * @return the changes, or null if {@code since} is too old or not from this log
+     */
+    public Delta since(long since) {
+        Change[] slice;
+        long through;
+        // Only the copy holds the lock, so listing writers are not held up by the dedupe
+        synchronized (this) {
+            if (since > version || since < base || version - since > CAPACITY) {
+                return null;
+            }
+            through = version;
+            int count = (int) (version - since);
+            slice = new Change[count];
+            int first = (int) ((since + 1) % CAPACITY);
+            int head = Math.min(count, CAPACITY - first);
+            System.arraycopy(ring, first, slice, 0, head);
+            System.arraycopy(ring, 0, slice, head, count - head);
+        }
+        ArrayList<Change> changes = new ArrayList<>();
+        HashSet<Long> seen = new HashSet<>();
+        for (int i = slice.length - 1; i >= 0; i--) {
+            if (seen.add(slice[i].itemId())) {
+                changes.add(slice[i]);
+            }
+        }
+        Collections.reverse(changes);
+        return new Delta(through, changes);
+    }
+}
@@ -1,16 +1,50 @@
 import java.io.*;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * One per GUI window – maintains a socket, sends commands, and delivers each
- * server line to a callback.  No daemon threads are used; the listener thread
- * is stopped explicitly in close().
+ * server line to a callback.  No daemon threads are used; both threads below
+ * stop once close() shuts the socket.
+ *
+ * <p>{@link #request(String)} sends a tagged command instead and returns a
+ * future for its response lines, so many requests can be in flight on the one
+ * socket. Untagged lines still go to the callback.</p>
+ *
+ * <p>Two threads serve the socket. The "ServerListener" only reads: it
+ * decodes each line or tagged response into a bounded queue. The
+ * "ServerDispatcher" takes them off the queue, completes futures and calls
+ * the callback, so a slow callback never stops the socket being read until
+ * the queue fills. Callbacks run on the dispatcher, not the EDT; they should
+ * hand UI work to {@code SwingUtilities.invokeLater} and must not wait on the
+ * user, e.g. by opening a modal dialog.</p>
  */
 public class ClientConnection {
+    // Decoded frames the dispatcher has not handled yet
+    private static final int QUEUE_FRAMES = 4096;
+
+    /** A server line for the callback, or the lines of a tagged response. */
+    private record Frame(String line, CompletableFuture<List<String>> response, List<String> lines) { }
+
+    // Put by the listener after the last frame
+    private static final Frame END = new Frame(null, null, null);
+
     private final Socket socket;
     private final BufferedReader in;
     private final PrintWriter out;
+    private final BlockingQueue<Frame> frames = new ArrayBlockingQueue<>(QUEUE_FRAMES);
     private final Thread listener;
+    private final Thread dispatcher;
+    // Tag for the next request
+    private final AtomicLong nextTag = new AtomicLong();
+    // Requests still waiting for their response, by tag
+    private final ConcurrentHashMap<String, CompletableFuture<List<String>>> pending = new ConcurrentHashMap<>();
 
     /** Functional interface for async messages from the server. */
     public interface LineHandler { void onLine(String line); }
@@ -20,23 +54,107 @@ public class ClientConnection {
         in  = new BufferedReader(new InputStreamReader(socket.getInputStream()));
         out = new PrintWriter(socket.getOutputStream(), true);
 
+        dispatcher = new Thread(() -> {
+            try {
+                Frame f;
+                while ((f = frames.take()) != END) {
+                    if (f.response() != null) f.response().complete(f.lines());
+                    else handler.onLine(f.line());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                failPending(new IOException("Connection closed"));
+            }
+        }, "ServerDispatcher");
+
         listener = new Thread(() -> {
             try {
                 String s;
-                while ((s = in.readLine()) != null) handler.onLine(s);
-            } catch (IOException ignored) {
+                while ((s = in.readLine()) != null) {
+                    Frame response = readResponse(s);
+                    frames.put(response != null ? response : new Frame(s, null, null));
+                }
+            } catch (IOException | InterruptedException ignored) {
                 // socket closed or interrupted
+            } catch (RuntimeException e) {
+                // A malformed response header; the stream cannot be trusted past it
+                System.err.println("Bad response from server: " + e);
+                try { socket.close(); } catch (IOException ignored) {}
+            } finally {
+                // The dispatcher fails what is still pending once it reaches the end
+                try { frames.put(END); } catch (InterruptedException e) { dispatcher.interrupt(); }
             }
         }, "ServerListener");
+        dispatcher.start();
         listener.start();
     }
 
     /** Send one command line to the server. */
     public void send(String cmd) { out.println(cmd); }
 
-    /** Graceful shutdown: close socket and wait for listener to exit. */
+    /**
+     * Send one command as a tagged request.
+     * @param cmd the command line
+     * @return completes with the response lines, or fails if the connection closes first
+     */
+    public CompletableFuture<List<String>> request(String cmd) {
+        String tag = Long.toString(nextTag.incrementAndGet());
+        CompletableFuture<List<String>> response = new CompletableFuture<>();
+        pending.put(tag, response);
+        out.println("@" + tag + " " + cmd);
+        // The dispatcher fails whatever is pending when it exits; catch requests sent after that
+        if (!dispatcher.isAlive()) failPending(new IOException("Connection closed"));
+        return response;
+    }
+
+    /**
+     * If {@code header} is "@tag n" for a pending request, reads its n lines.
+     * The request stays pending until they are all read, so if the header or
+     * the stream is bad, it fails with the rest when the connection ends.
+     * @return the response for the dispatcher to complete, or null if the
+     *         line did not start a tagged response
+     * @throws NumberFormatException if n is not a line count
+     */
+    private Frame readResponse(String header) throws IOException {
+        if (!header.startsWith("@")) return null;
+        int space = header.indexOf(' ');
+        if (space < 0) return null;
+        String tag = header.substring(1, space);
+        if (!pending.containsKey(tag)) return null;
+        int count = Integer.parseInt(header.substring(space + 1));
+        if (count < 0) throw new NumberFormatException("Negative line count in " + header);
+        List<String> lines = new ArrayList<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            String s = in.readLine();
+            if (s == null) throw new EOFException("Response cut short");
+            lines.add(s);
+        }
+        CompletableFuture<List<String>> response = pending.remove(tag);
+        return response == null ? null : new Frame(null, response, lines);
+    }
+
+    private void failPending(IOException cause) {
+        for (String tag : pending.keySet()) {
+            CompletableFuture<List<String>> response = pending.remove(tag);
+            if (response != null) response.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Graceful shutdown: close the socket and wait for the listener and the
+     * dispatcher to exit, unless called from one of them.
+     */
     public void close() {
         try { socket.close(); } catch (IOException ignored) {}
-
+        for (Thread t : new Thread[] {listener, dispatcher}) {
+            if (t == Thread.currentThread()) continue;
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
     }
 }
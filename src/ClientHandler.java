@@ -1,6 +1,13 @@
 import java.io.*;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Phase 2 of CS180 Group Project
@@ -10,17 +17,102 @@ import java.util.ArrayList;
  * @author alexyan06, shivensaxena28, KayshavBhardwaj
  * @version April 6, 2025
  */
-public class ClientHandler implements Runnable {
+public class ClientHandler implements Runnable, MessageSubscriptions.Subscriber {
+    /** Greeting sent to every client when it connects. */
+    static final String WELCOME = "Welcome to the Marketplace Server!";
+    /** Reply to a name, password or message too long for the journal. */
+    private static final String TOO_LONG = "Input too long; the limit is "
+            + JournalRecord.MAX_STRING_BYTES / 1024 + " KB.";
+    /** Tagged queries one connection may have running at once. */
+    private static final int MAX_QUERIES_IN_FLIGHT = 64;
+    // Runs tagged read-only commands; they block on database locks, which virtual threads handle cheaply
+    private static final ExecutorService QUERIES = Executors.newVirtualThreadPerTaskExecutor();
+    // Connections that want new messages pushed to them
+    private static final MessageSubscriptions SUBSCRIPTIONS = new MessageSubscriptions();
+    // Command timings and connection counts, shown by the stats command
+    static final ServerStats STATS = new ServerStats();
+
     // Underlying socket connected to the client
     private Socket socket;
+    // Connection closed by the exit command; the socket unless another transport supplies one
+    private Closeable connection;
     // Reader for incoming client messages
     private BufferedReader in;
-    // Writer for outgoing responses
-    private PrintWriter out;
-    // Shared in-memory database instance
-    private static Database1 db = new Database1();
+    // Response text of the current command; sent in one piece once the command is done
+    private final ResponseBuffer response = new ResponseBuffer();
+    // Writer commands print their responses to
+    private PrintWriter out = new PrintWriter(response);
+    // Transport that finished responses are copied to
+    private Writer sink;
+    // Whether each response is preceded by a header with its line count
+    private boolean framed = false;
+    // Whether message lines start with the message's sequence number; read by publishers' threads
+    private volatile boolean numbered = false;
+    // Set by exit; the connection is closed after the goodbye has been sent
+    private boolean closeRequested = false;
+    // Serializes writes to the sink and guards queriesInFlight
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private final Condition queryDone = sendLock.newCondition();
+    private int queriesInFlight = 0;
+    // User this connection is subscribed as, or null
+    private volatile String subscribedAs = null;
+    // Pushed lines waiting to be written, and whether a thread is writing them
+    private final ConcurrentLinkedQueue<String> pushes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean pushing = new AtomicBoolean();
+    // Shared in-memory database instance; a follower swaps in a new one when it installs a snapshot
+    private static volatile DatabaseInterface db = new Database1();
+    // Feeds db from a primary while this server is a read-only follower, else null
+    private static volatile ReplicationFollower replica;
+    // Ships the journal to followers, or null
+    private static volatile ReplicationSource replicationSource;
+    // Queries a follower answers only if it was current this recently
+    private static volatile long maxStalenessMillis;
+    // Whether the promote command is accepted at all; off unless the server was started to allow it
+    private static volatile boolean promoteAllowed;
+    // Whether the stats command is accepted at all; off unless the server was started to allow it
+    private static volatile boolean statsAllowed;
+    // Commands a follower runs besides queries; they change only the session
+    private static final Set<String> REPLICA_COMMANDS = Set.of("login", "logout", "frame", "numbered", "exit",
+            "promote");
     // Currently logged-in user for this handler
     private User currentUser = null;
+    // Whether the client connected from this machine; only such clients may promote or see stats
+    private final boolean loopback;
+    // Tokenizer reused for every line this handler reads
+    private final CommandLine line = new CommandLine();
+
+    // Every command: name, arguments required, usage reply, login required, body
+    private static final CommandRegistry COMMANDS = new CommandRegistry()
+            .register("register", 3, "Usage: register <username> <password> <balance>", false,
+                    ClientHandler::register)
+            .register("login", 2, "Usage: login <username> <password>", false, ClientHandler::login)
+            .register("logout", 0, "", false, ClientHandler::logout)
+            .register("additem", 2, "Usage: additem <name> <cost>", true, ClientHandler::addItem)
+            .register("sellitem", 1, "Usage: sellitem <itemname>", true, ClientHandler::sellItem)
+            .register("unsellitem", 1, "Usage: unsellitem <itemname>", true, ClientHandler::unsellItem)
+            .registerQuery("listitems", 0, "", false, ClientHandler::listItems)
+            .registerQuery("myitems", 0, "", true, ClientHandler::myItems)
+            .registerQuery("finditems", 0, "", false, ClientHandler::findItems)
+            .registerQuery("search", 1, "Usage: search <text> [limit]", false, ClientHandler::search)
+            .registerQuery("searchitem", 1, "Usage: searchitem <itemname>", false,
+                    ClientHandler::searchItem)
+            .register("buy", 1, "Usage: buy <itemname>", true, ClientHandler::buy)
+            .registerQuery("getbalance", 0, "", true, ClientHandler::getBalance)
+            .register("deleteitem", 1, "Usage: deleteitem <itemname>", true, ClientHandler::deleteItem)
+            .register("changeitemprice", 2, "Usage: changeitemprice <itemname> <newprice>", true,
+                    ClientHandler::changeItemPrice)
+            .register("sendmessage", 2, "Usage: sendmessage <receiver> <message>", true,
+                    ClientHandler::sendMessage)
+            .registerQuery("viewuserlist", 0, "", true, ClientHandler::viewUserList)
+            .registerQuery("viewconversation", 1, "Usage: viewconversation <username>", true,
+                    ClientHandler::viewConversation)
+            .register("subscribe", 0, "", true, ClientHandler::subscribe)
+            .register("unsubscribe", 0, "", false, ClientHandler::unsubscribe)
+            .registerQuery("stats", 0, "", false, ClientHandler::stats)
+            .register("promote", 0, "", false, ClientHandler::promote)
+            .register("frame", 1, "Usage: frame <on|off>", false, ClientHandler::frame)
+            .register("numbered", 1, "Usage: numbered <on|off>", false, ClientHandler::numbered)
+            .register("exit", 0, "", false, ClientHandler::exit);
 
     /**
      * Constructs a handler for the given client socket.
@@ -28,6 +120,118 @@ public class ClientHandler implements Runnable {
      */
     public ClientHandler(Socket socket) {
         this.socket = socket;
+        this.connection = socket;
+        this.loopback = socket != null && socket.getInetAddress().isLoopbackAddress();
+        STATS.connectionOpened();
+    }
+
+    /**
+     * Constructs a handler for an in-process caller, which counts as a
+     * client on this machine.
+     * @param sink writer that receives each complete response
+     * @param connection closed when the client sends exit
+     */
+    ClientHandler(Writer sink, Closeable connection) {
+        this(sink, connection, true);
+    }
+
+    /**
+     * Constructs a handler for a transport that does its own reading, such as
+     * {@link NioServer}. It calls {@link #process(String)} for each line and
+     * sends whatever was written to {@code sink}.
+     * @param sink writer that receives each complete response
+     * @param connection closed when the client sends exit
+     * @param loopback whether the client connected from this machine
+     */
+    ClientHandler(Writer sink, Closeable connection, boolean loopback) {
+        this.sink = sink;
+        this.connection = connection;
+        this.loopback = loopback;
+        STATS.connectionOpened();
+    }
+
+    /**
+     * Constructs a handler that runs one tagged query for {@code session}
+     * with the session's user and its own response buffer.
+     */
+    private ClientHandler(ClientHandler session) {
+        this.currentUser = session.currentUser;
+        this.loopback = session.loopback;
+        this.numbered = session.numbered;
+    }
+
+    /**
+     * Replaces the database shared by all handlers, e.g. with a durable or a
+     * sharded one.
+     * @param database the database to use for every later command
+     */
+    static void setDatabase(DatabaseInterface database) {
+        db = database;
+    }
+
+    /**
+     * Makes this server a read-only follower until it is promoted. Commands
+     * that change the database are refused, and queries are refused while
+     * the follower is more than {@code maxStalenessMillis} behind.
+     * @param follower the replication stream feeding the database
+     * @param maxStaleness the staleness bound in milliseconds
+     */
+    static void setReplica(ReplicationFollower follower, long maxStaleness) {
+        maxStalenessMillis = maxStaleness;
+        replica = follower;
+        if (follower != null) {
+            follower.onDatabaseReplaced(ClientHandler::setDatabase);
+            // In case a snapshot was installed before the listener was in place
+            db = follower.getDatabase();
+        }
+    }
+
+    /**
+     * @param source ships this server's journal to followers; shown by the
+     *               {@code stats} command
+     */
+    static void setReplicationSource(ReplicationSource source) {
+        replicationSource = source;
+    }
+
+    /**
+     * @param allowed whether clients on this machine may send {@code promote};
+     *                clients elsewhere never may, so no stray client can
+     *                make a second primary
+     */
+    static void setPromoteAllowed(boolean allowed) {
+        promoteAllowed = allowed;
+    }
+
+    /**
+     * @param allowed whether clients on this machine may send {@code stats};
+     *                clients elsewhere never may, since the report shows
+     *                traffic and replication state to whoever asks
+     */
+    static void setStatsAllowed(boolean allowed) {
+        statsAllowed = allowed;
+    }
+
+    /**
+     * Prints the {@code stats} report to standard output periodically.
+     * @param periodMillis time between reports
+     */
+    static void startStatsDump(long periodMillis) {
+        STATS.startDump(periodMillis, ClientHandler::statsReport);
+    }
+
+    /** @return the command statistics followed by the replication state, if any */
+    private static String statsReport() {
+        StringBuilder sb = new StringBuilder(STATS.report(db));
+        ReplicationFollower follower = replica;
+        if (follower != null) {
+            sb.append(follower.report());
+        }
+        ReplicationSource source = replicationSource;
+        if (source != null) {
+            sb.append(source.report());
+        }
+        return sb.toString();
     }
 
     /**
@@ -38,20 +242,24 @@ public class ClientHandler implements Runnable {
         try {
             // Initialize input/output streams
             in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(socket.getOutputStream(), true);
+            // Buffered so even a long listing leaves in a few large writes
+            sink = new OutputStreamWriter(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
 
             // Send welcome message
-            out.println("Welcome to the Marketplace Server!");
+            out.println(WELCOME);
+            out.flush();
+            send(null, response);
 
             String line;
             // Read and handle each incoming line until client disconnects
-            while ((line = in.readLine()) != null) {
-                handleCommand(line);
+            while (!socket.isClosed() && (line = in.readLine()) != null) {
+                process(line);
             }
 
         } catch (IOException e) {
             System.err.println("Client error: " + e.getMessage());
         } finally {
+            disconnected();
             // Clean up socket on termination
             try {
                 socket.close();
@@ -62,250 +270,651 @@ public class ClientHandler implements Runnable {
     }
 
     /**
-     * Parses and executes a single command from the client.
+     * Runs one command and sends its complete response with a single flush.
+     *
+     * <p>A line of the form {@code @<tag> <command>} is a tagged request. Its
+     * response starts with {@code @<tag> <n>}, where n is the number of lines
+     * that follow, so clients can keep many requests in flight. Tagged
+     * read-only commands run concurrently on other threads, and their
+     * responses may come back out of order. Every other command first waits
+     * for those queries to finish, so it never overtakes one sent before it.</p>
      * @param input raw command line text
+     * @throws IOException if the response cannot be written
      */
-    private void handleCommand(String input) {
-        // Split command and arguments
-        String[] parts = input.split(" ", 2);
-        String cmd = parts[0].toLowerCase();
-        String[] args = parts.length > 1 ? parts[1].split(" ") : new String[0];
-
-        switch (cmd) {
-            case "register":
-                // Create a new user with initial balance
-                if (args.length < 3) {
-                    out.println("Usage: register <username> <password> <balance>");
-                    break;
-                }
-                try {
-                    double bal = Double.parseDouble(args[2]);
-                    boolean ok = db.addUser(args[0], args[1], bal, new ArrayList<>());
-                    out.println(ok ? "User registered." : "Username already exists.");
-                } catch (NumberFormatException e) {
-                    out.println("Invalid balance.");
-                }
-                break;
+    void process(String input) throws IOException {
+        String tag = null;
+        String command = input;
+        if (input.startsWith("@")) {
+            int space = input.indexOf(' ');
+            tag = space < 0 ? input.substring(1) : input.substring(1, space);
+            command = space < 0 ? "" : input.substring(space + 1);
+            CommandRegistry.Command found = COMMANDS.lookup(line.reset(command));
+            if (found != null && found.readOnly()) {
+                submitQuery(tag, command);
+                return;
+            }
+        }
+        awaitQueries();
+        handleCommand(command);
+        out.flush();
+        send(tag, response);
+        if (closeRequested && connection != null) {
+            connection.close();
+        }
+    }
 
-            case "login":
-                // Authenticate existing user
-                if (args.length < 2) {
-                    out.println("Usage: login <username> <password>");
-                    break;
-                }
-                if (db.login(args[0], args[1])) {
-                    currentUser = db.getUser(args[0]);
-                    out.println("Login successful.");
-                } else {
-                    out.println("Invalid credentials.");
-                }
-                break;
-
-            case "logout":
-                // Clear current session
-                currentUser = null;
-                out.println("Logged out.");
-                break;
-
-            case "additem":
-                // Add a new item to user's inventory
-                if (checkLoggedIn()) break;
-                if (args.length < 2) {
-                    out.println("Usage: additem <name> <cost>");
-                    break;
-                }
+    /** Runs a tagged read-only command on the query pool. */
+    private void submitQuery(String tag, String command) {
+        sendLock.lock();
+        try {
+            while (queriesInFlight >= MAX_QUERIES_IN_FLIGHT) {
+                queryDone.awaitUninterruptibly();
+            }
+            queriesInFlight++;
+        } finally {
+            sendLock.unlock();
+        }
+        ClientHandler query = new ClientHandler(this);
+        QUERIES.execute(() -> {
+            try {
+                query.handleCommand(command);
+                query.out.flush();
+                send(tag, query.response);
+            } catch (IOException e) {
+                // Client went away; nothing left to answer
+            } finally {
+                sendLock.lock();
                 try {
-                    double cost = Double.parseDouble(args[1]);
-                    boolean ok = db.addItem(args[0], cost, currentUser.getUsername());
-                    out.println(ok ? "Item added to inventory." : "Failed to add item.");
-                } catch (NumberFormatException e) {
-                    out.println("Invalid cost.");
-                }
-                break;
-
-            case "sellitem":
-                // List an owned item for sale
-                if (checkLoggedIn()) break;
-                if (args.length < 1) {
-                    out.println("Usage: sellitem <itemname>");
-                    break;
-                }
-                out.println(db.sellItem(currentUser.getUsername(), args[0])
-                        ? "Item listed for sale." : "Cannot sell: not in inventory or already listed.");
-                break;
-
-            case "unsellitem":
-                // Unlist an item, return it to inventory
-                if (checkLoggedIn()) break;
-                if (args.length < 1) {
-                    out.println("Usage: unsellitem <itemname>");
-                    break;
+                    queriesInFlight--;
+                    queryDone.signalAll();
+                } finally {
+                    sendLock.unlock();
                 }
-                out.println(db.unsellItem(currentUser.getUsername(), args[0])
-                        ? "Item removed from sale." : "Cannot unlist: not listed by you.");
-                break;
-
-            case "listitems":
-                // Display all items currently for sale
-                for (Item i : db.getItems()) {
-                    out.println(i.getName() + " - $" + String.format("%.2f", i.getCost())
-                            + " - Seller: " + i.getSeller());
-                }
-                break;
-
-            case "myitems":
-                // Show items in the current user's inventory
-                if (checkLoggedIn()) break;
-                for (Item item : currentUser.getOwnedItems()) {
-                    String price = String.format("%.2f", item.getCost());
-                    out.println(item.getName() + " - $" + price);
-                }
-                break;
+            }
+        });
+    }
 
-            case "searchitem":
-                // Search for a specific listed item
-                if (args.length < 1) {
-                    out.println("Usage: searchitem <itemname>");
-                } else {
-                    Item f = db.searchSoldItem(args[0]);
-                    if (f != null) {
-                        String price = String.format("%.2f", f.getCost());
-                        out.println("Found item: " + f.getName()
-                                + ", $" + price
-                                + ", Seller: " + f.getSeller());
-                    } else {
-                        out.println("Item not found or not for sale.");
-                    }
-                }
-                break;
+    /** Blocks until no tagged query of this connection is still running. */
+    private void awaitQueries() {
+        sendLock.lock();
+        try {
+            while (queriesInFlight > 0) {
+                queryDone.awaitUninterruptibly();
+            }
+        } finally {
+            sendLock.unlock();
+        }
+    }
 
-            case "buy":
-                // Purchase a listed item
-                if (checkLoggedIn()) break;
-                if (args.length < 1) {
-                    out.println("Usage: buy <itemname>");
-                } else {
-                    Item toBuy = db.searchSoldItem(args[0]);
-                    if (toBuy != null) {
-                        User seller = db.getUser(toBuy.getSeller());
-                        db.processTransaction(currentUser, seller, toBuy);
-                        out.println("Transaction processed.");
-                    } else {
-                        out.println("Item not found.");
-                    }
-                }
-                break;
-
-            case "getbalance":
-                // Show the current user's balance
-                if (checkLoggedIn()) break;
-                double bal = currentUser.getBalance();
-                out.println("$" + String.format("%.2f", bal));
-                break;
-
-            case "deleteitem":
-                // Permanently remove an owned listing
-                if (checkLoggedIn()) break;
-                if (args.length < 1) {
-                    out.println("Usage: deleteitem <itemname>");
-                } else {
-                    Item rem = db.searchOwnedItem(args[0]);
-                    if (rem == null) {
-                        out.println("Item not found.");
-                    } else if (!rem.getSeller().equals(currentUser.getUsername())) {
-                        out.println("You can only delete your own items.");
-                    } else {
-                        boolean d = db.deleteItem(args[0]);
-                        out.println(d ? "Item deleted." : "Item could not be deleted.");
-                    }
-                }
-                break;
+    /**
+     * Queues a pushed message; a pool thread writes queued lines in order so
+     * the publisher never waits on this client's socket.
+     * @param message the message to send
+     */
+    @Override
+    public void deliver(Message message) {
+        pushes.add(MessageSubscriptions.PUSH_PREFIX + messageLine(message));
+        if (pushing.compareAndSet(false, true)) {
+            QUERIES.execute(this::writePushes);
+        }
+    }
 
-            case "changeitemprice":
-                // Update the price of a listed or owned item
-                if (checkLoggedIn()) break;
-                if (args.length < 2) {
-                    out.println("Usage: changeitemprice <itemname> <newprice>");
-                } else {
-                    Item item1 = db.searchSoldItem(args[0]);
-                    Item item2 = db.searchOwnedItem(args[0]);
-                    if (item2 == null && item1 == null) {
-                        out.println("Item not found.");
-                    } else {
-                        // Handle sold listings first
-                        if (item1 != null) {
-                            try {
-                                double newPrice = Double.parseDouble(args[1]);
-                                if (!item1.getSeller().equals(currentUser.getUsername())) {
-                                    out.println("You can only change your own items.");
-                                } else {
-                                    db.changeItemPrice(item1, newPrice);
-                                    out.println("Item changed to $" + String.format("%.2f", newPrice));
-                                }
-                            } catch (NumberFormatException e) {
-                                out.println("Invalid price.");
-                            }
-                        // Handle items not yet listed
-                        } else {
-                            try {
-                                double newPrice = Double.parseDouble(args[1]);
-                                if (!item2.getSeller().equals(currentUser.getUsername())) {
-                                    out.println("You can only change your own items.");
-                                } else {
-                                    db.changeItemPrice(item2, newPrice);
-                                    out.println("Item changed to $" + String.format("%.2f", newPrice));
-                                }
-                            } catch (NumberFormatException e) {
-                                out.println("Invalid price.");
-                            }
-                        }
-                    }
-                }
-                break;
+    /** Writes every queued push with one flush. */
+    private void writePushes() {
+        sendLock.lock();
+        try {
+            String pushed;
+            while ((pushed = pushes.poll()) != null) {
+                sink.write(pushed + System.lineSeparator());
+            }
+            sink.flush();
+        } catch (IOException e) {
+            // Client went away; disconnected() unsubscribes it
+            pushes.clear();
+        } finally {
+            sendLock.unlock();
+        }
+        pushing.set(false);
+        // A line may have been queued after the last poll but before the flag cleared
+        if (!pushes.isEmpty() && pushing.compareAndSet(false, true)) {
+            QUERIES.execute(this::writePushes);
+        }
+    }
 
-            case "sendmessage":
-                // Send a direct message to another user
-                if (checkLoggedIn()) break;
-                if (args.length < 2) {
-                    out.println("Usage: sendmessage <receiver> <message>");
+    /** Called by the transport once the client is gone. */
+    void disconnected() {
+        stopPushes();
+        STATS.connectionClosed();
+    }
+
+    private void stopPushes() {
+        if (subscribedAs != null) {
+            SUBSCRIPTIONS.unsubscribe(subscribedAs, this);
+            subscribedAs = null;
+        }
+    }
+
+    /**
+     * Copies a buffered response to the transport and flushes once. The
+     * response is preceded by its tag and line count for tagged requests, or
+     * by its line count when framing is on.
+     */
+    private void send(String tag, ResponseBuffer body) throws IOException {
+        sendLock.lock();
+        try {
+            if (tag != null) {
+                sink.write("@" + tag + " " + body.lines() + System.lineSeparator());
+            } else if (framed) {
+                sink.write("#" + body.lines() + System.lineSeparator());
+            }
+            body.writeTo(sink);
+            body.reset();
+            sink.flush();
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Parses and executes a single command from the client.
+     * @param input raw command line text
+     */
+    void handleCommand(String input) {
+        // Tokenize in place and find the command without building any strings
+        CommandRegistry.Command command = COMMANDS.lookup(line.reset(input));
+        if (command == null) {
+            // Unrecognized command
+            out.println("Unknown command: " + line.name().toLowerCase());
+            return;
+        }
+        long started = STATS.start();
+        try {
+            if (replica != null && refusedByReplica(command)) return;
+            if (command.needsLogin() && checkLoggedIn()) return;
+            if (line.argCount() < command.minArgs()) {
+                out.println(command.usage());
+                return;
+            }
+            command.action().run(this, line);
+        } finally {
+            STATS.finish(command.name(), started);
+        }
+    }
+
+    /**
+     * On a follower, turns away commands that would change the database, and
+     * queries while the follower is too far behind the primary to answer.
+     * @return true if the command was refused
+     */
+    private boolean refusedByReplica(CommandRegistry.Command command) {
+        ReplicationFollower follower = replica;
+        if (follower == null || REPLICA_COMMANDS.contains(command.name())) {
+            return false;
+        }
+        if (!command.readOnly()) {
+            out.println("This server is a read-only replica; send changes to the primary.");
+            return true;
+        }
+        if (!command.name().equals("stats") && follower.stalenessMillis() > maxStalenessMillis) {
+            out.println("Replica is behind the primary; try again or use the primary.");
+            return true;
+        }
+        return false;
+    }
+
+    /** Create a new user with initial balance. */
+    private void register(CommandLine args) {
+        try {
+            double bal = args.doubleArg(2);
+            boolean ok = db.addUser(args.arg(0), args.arg(1), bal, new ArrayList<>());
+            out.println(ok ? "User registered." : "Username already exists.");
+        } catch (NumberFormatException e) {
+            out.println("Invalid balance.");
+        } catch (IllegalArgumentException e) {
+            out.println(TOO_LONG);
+        }
+    }
+
+    /** Authenticate existing user. */
+    private void login(CommandLine args) {
+        String username = args.arg(0);
+        if (db.login(username, args.arg(1))) {
+            stopPushes();
+            currentUser = db.getUser(username);
+            out.println("Login successful.");
+        } else {
+            out.println("Invalid credentials.");
+        }
+    }
+
+    /** Clear current session. */
+    private void logout(CommandLine args) {
+        stopPushes();
+        currentUser = null;
+        out.println("Logged out.");
+    }
+
+    /** Add a new item to user's inventory. */
+    private void addItem(CommandLine args) {
+        try {
+            double cost = args.doubleArg(1);
+            boolean ok = db.addItem(args.arg(0), cost, currentUser.getUsername());
+            out.println(ok ? "Item added to inventory." : "Failed to add item.");
+        } catch (NumberFormatException e) {
+            out.println("Invalid cost.");
+        } catch (IllegalArgumentException e) {
+            out.println(TOO_LONG);
+        }
+    }
+
+    /** List an owned item for sale. */
+    private void sellItem(CommandLine args) {
+        out.println(db.sellItem(currentUser.getUsername(), args.arg(0))
+                ? "Item listed for sale." : "Cannot sell: not in inventory or already listed.");
+    }
+
+    /** Unlist an item, return it to inventory. */
+    private void unsellItem(CommandLine args) {
+        out.println(db.unsellItem(currentUser.getUsername(), args.arg(0))
+                ? "Item removed from sale." : "Cannot unlist: not listed by you.");
+    }
+
+    /** Largest page {@code listitems page} and {@code finditems} will send. */
+    private static final int MAX_PAGE = 1000;
+    /** Page size of {@code finditems} when none is given. */
+    private static final int DEFAULT_PAGE = 100;
+    /** Results {@code search} sends when no limit is given. */
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final String LIST_USAGE = "Usage: listitems [since <version> | page <size> "
+            + "[sort price|name|seller|recent] [after <cursor>]]";
+    private static final String FIND_USAGE = "Usage: finditems [min <price>] [max <price>] [seller <username>] "
+            + "[page <size>] [after <cursor>]";
+
+    /**
+     * Display all items currently for sale. The arguments select a delta or a
+     * page instead; see {@link #listChanges} and {@link #listPage}.
+     */
+    private void listItems(CommandLine args) {
+        if (args.argCount() == 0) {
+            for (Item i : db.getItems()) {
+                out.println(listing(i.getName(), i.getCostCents(), i.getSeller()));
+            }
+        } else if (args.arg(0).equalsIgnoreCase("since") && args.argCount() == 2) {
+            listChanges(args);
+        } else if (args.arg(0).equalsIgnoreCase("page") && args.argCount() % 2 == 0) {
+            listPage(args);
+        } else {
+            out.println(LIST_USAGE);
+        }
+    }
+
+    /**
+     * {@code listitems since <version>}: only the listings changed after that
+     * catalog version, after a "Catalog &lt;version&gt;" header. Each line is
+     * "+ id listing" for a new or changed listing or "- id" for one that is
+     * gone. If the version is too old the header reads
+     * "Catalog &lt;version&gt; full" and every listing follows.
+     */
+    private void listChanges(CommandLine args) {
+        long since;
+        try {
+            since = Long.parseLong(args.arg(1));
+        } catch (NumberFormatException e) {
+            out.println(LIST_USAGE);
+            return;
+        }
+        CatalogLog.Delta delta = db.getCatalogChangesSince(since);
+        if (delta == null) {
+            // Read the version first; a change that races with the listing is sent again next time
+            out.println("Catalog " + db.getCatalogVersion() + " full");
+            for (Item i : db.getItems()) {
+                out.println("+ " + i.getId() + " " + listing(i.getName(), i.getCostCents(), i.getSeller()));
+            }
+            return;
+        }
+        out.println("Catalog " + delta.version());
+        for (CatalogLog.Change c : delta.changes()) {
+            if (c.removed()) {
+                out.println("- " + c.itemId());
+            } else {
+                out.println("+ " + c.itemId() + " " + listing(c.name(), c.priceCents(), c.seller()));
+            }
+        }
+    }
+
+    /**
+     * {@code listitems page <size> [sort <key>] [after <cursor>]}: one page of
+     * listings, cheapest, by name, by seller or newest first. The last line is
+     * "Next &lt;cursor&gt;" to pass as {@code after} for the following page, or
+     * "End" after the last page.
+     */
+    private void listPage(CommandLine args) {
+        ListingIndex.Sort sort = ListingIndex.Sort.RECENT;
+        String cursor = null;
+        int size;
+        try {
+            size = Integer.parseInt(args.arg(1));
+            for (int i = 2; i < args.argCount(); i += 2) {
+                String option = args.arg(i);
+                if (option.equalsIgnoreCase("sort")) {
+                    sort = ListingIndex.Sort.valueOf(args.arg(i + 1).toUpperCase());
+                } else if (option.equalsIgnoreCase("after")) {
+                    cursor = args.arg(i + 1);
                 } else {
-                    String msg = args[1];
-                    for (int i = 2; i < args.length; i++) msg += " " + args[i];
-                    db.sendMessage(currentUser.getUsername(), args[0], msg);
-                    out.println("Message sent to " + args[0]);
+                    throw new IllegalArgumentException(option);
                 }
-                break;
-
-            case "viewuserlist":
-                // List all users this client has messaged
-                if (checkLoggedIn()) break;
-                ArrayList<String> us = db.getMessageUserList(currentUser.getUsername());
-                if (us.isEmpty()) out.println("No messaging history.");
-                else us.forEach(out::println);
-                break;
-
-            case "viewconversation":
-                // Retrieve conversation thread with another user
-                if (checkLoggedIn()) break;
-                if (args.length < 1) {
-                    out.println("Usage: viewconversation <username>");
-                } else {
-                    for (Message m : db.getSenderToReceiverMessage(currentUser.getUsername(), args[0])) {
-                        out.println(m);
-                    }
+            }
+        } catch (IllegalArgumentException e) {
+            // Also catches NumberFormatException and unknown sort names
+            out.println(LIST_USAGE);
+            return;
+        }
+        if (size < 1 || size > MAX_PAGE) {
+            out.println("Page size must be between 1 and " + MAX_PAGE + ".");
+            return;
+        }
+        ListingIndex.Page page;
+        try {
+            page = db.getItemsPage(sort, cursor, size);
+        } catch (IllegalArgumentException e) {
+            out.println(e.getMessage());
+            return;
+        }
+        writePage(page);
+    }
+
+    /**
+     * {@code finditems [min <price>] [max <price>] [seller <name>] [page <size>] [after <cursor>]}:
+     * listings priced within the bounds, both inclusive, cheapest first,
+     * optionally only one seller's. Replies one page like {@code listitems page}.
+     */
+    private void findItems(CommandLine args) {
+        long min = 0;
+        long max = Long.MAX_VALUE;
+        String seller = null;
+        String cursor = null;
+        int size = DEFAULT_PAGE;
+        if (args.argCount() % 2 != 0) {
+            out.println(FIND_USAGE);
+            return;
+        }
+        try {
+            for (int i = 0; i < args.argCount(); i += 2) {
+                String option = args.arg(i).toLowerCase();
+                switch (option) {
+                    case "min" -> min = Money.toCents(args.doubleArg(i + 1));
+                    case "max" -> max = Money.toCents(args.doubleArg(i + 1));
+                    case "seller" -> seller = args.arg(i + 1);
+                    case "page" -> size = Integer.parseInt(args.arg(i + 1));
+                    case "after" -> cursor = args.arg(i + 1);
+                    default -> throw new IllegalArgumentException(option);
                 }
-                break;
+            }
+        } catch (IllegalArgumentException e) {
+            out.println(FIND_USAGE);
+            return;
+        }
+        if (size < 1 || size > MAX_PAGE) {
+            out.println("Page size must be between 1 and " + MAX_PAGE + ".");
+            return;
+        }
+        try {
+            writePage(db.findItems(min, max, seller, cursor, size));
+        } catch (IllegalArgumentException e) {
+            out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * {@code search <text> [limit]}: listings whose names match the text
+     * exactly, start with it or contain it, best matches first. If none do,
+     * names a typo or two away are sent instead.
+     */
+    private void search(CommandLine args) {
+        int limit = DEFAULT_SEARCH_LIMIT;
+        if (args.argCount() > 1) {
+            try {
+                limit = Integer.parseInt(args.arg(1));
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (limit < 1 || limit > MAX_PAGE) {
+                out.println("Limit must be between 1 and " + MAX_PAGE + ".");
+                return;
+            }
+        }
+        ArrayList<ItemSearchIndex.Hit> hits = db.searchItems(args.arg(0), limit);
+        if (hits.isEmpty()) {
+            out.println("No matches.");
+        }
+        for (ItemSearchIndex.Hit hit : hits) {
+            Item i = hit.item();
+            out.println(listing(i.getName(), i.getCostCents(), i.getSeller()));
+        }
+    }
+
+    /** Sends a page of listings, then "Next &lt;cursor&gt;" or "End". */
+    private void writePage(ListingIndex.Page page) {
+        for (Item i : page.items()) {
+            out.println(listing(i.getName(), i.getCostCents(), i.getSeller()));
+        }
+        out.println(page.next() == null ? "End" : "Next " + page.next());
+    }
+
+    private static String listing(String name, long priceCents, String seller) {
+        return name + " - $" + Money.format(priceCents) + " - Seller: " + seller;
+    }
+
+    /** Show items in the current user's inventory. */
+    private void myItems(CommandLine args) {
+        for (Item item : db.getOwnedItems(currentUser.getUsername())) {
+            String price = Money.format(item.getCostCents());
+            out.println(item.getName() + " - $" + price);
+        }
+    }
 
-            case "exit":
-                // Client requested disconnect
-                out.println("Goodbye!");
-                try { socket.close(); } catch (IOException ignored) {}
-                break;
+    /** Search for a specific listed item. */
+    private void searchItem(CommandLine args) {
+        Item f = db.searchSoldItem(args.arg(0));
+        if (f != null) {
+            String price = Money.format(f.getCostCents());
+            out.println("Found item: " + f.getName()
+                    + ", $" + price
+                    + ", Seller: " + f.getSeller());
+        } else {
+            out.println("Item not found or not for sale.");
+        }
+    }
 
-            default:
-                // Unrecognized command
-                out.println("Unknown command: " + cmd);
+    /** Purchase a listed item. */
+    private void buy(CommandLine args) {
+        // One atomic call, so a lost race or a short balance is reported as such
+        switch (db.buy(currentUser.getUsername(), args.arg(0))) {
+            case BOUGHT -> out.println("Transaction processed.");
+            case NOT_FOUND -> out.println("Item not found.");
+            case SOLD_OUT -> out.println("Purchase failed: item was sold to another buyer.");
+            case OWN_ITEM -> out.println("Purchase failed: you cannot buy your own item.");
+            case INSUFFICIENT_FUNDS -> out.println("Purchase failed: insufficient balance.");
+            case UNKNOWN_BUYER -> out.println("Purchase failed: please log in again.");
+        }
+    }
+
+    /**
+     * Server counters: commands run and their latency percentiles, connections,
+     * how long database mutations waited for locks, and replication lag. Only
+     * allowed if the server was started with {@code --allow-stats on}, and
+     * only from a client on the same machine.
+     */
+    private void stats(CommandLine args) {
+        if (!statsAllowed || !loopback) {
+            out.println("Stats are not available from this connection.");
+            return;
         }
+        out.print(statsReport());
+    }
+
+    /**
+     * Turns a follower into a primary. Writes stay refused until it has
+     * stopped following and logs changes of its own. Only allowed if the
+     * server was started with {@code --allow-promote on}, and only from a
+     * client on the same machine.
+     */
+    private void promote(CommandLine args) {
+        if (!promoteAllowed || !loopback) {
+            out.println("Promotion is not allowed from this connection.");
+            return;
+        }
+        ReplicationFollower follower = replica;
+        if (follower == null) {
+            out.println("Not a replica.");
+            return;
+        }
+        long lsn = follower.promote();
+        replica = null;
+        out.println("Promoted to primary at lsn " + lsn + ".");
+    }
+
+    /** Show the current user's balance. */
+    private void getBalance(CommandLine args) {
+        // A single atomic read; no lock needed
+        out.println("$" + Money.format(currentUser.getBalanceCents()));
+    }
+
+    /** Permanently remove an owned listing. */
+    private void deleteItem(CommandLine args) {
+        String name = args.arg(0);
+        Item rem = db.searchOwnedItem(name);
+        if (rem == null) {
+            out.println("Item not found.");
+        } else if (!rem.getSeller().equals(currentUser.getUsername())) {
+            out.println("You can only delete your own items.");
+        } else {
+            boolean d = db.deleteItem(name);
+            out.println(d ? "Item deleted." : "Item could not be deleted.");
+        }
+    }
+
+    /** Update the price of a listed or owned item. */
+    private void changeItemPrice(CommandLine args) {
+        // Prefer the marketplace listing, then fall back to inventory
+        String name = args.arg(0);
+        Item item = db.searchSoldItem(name);
+        if (item == null) {
+            item = db.searchOwnedItem(name);
+        }
+        if (item == null) {
+            out.println("Item not found.");
+            return;
+        }
+        try {
+            double newPrice = args.doubleArg(1);
+            // Checked again under the owner's lock, in case the item is sold meanwhile
+            if (!item.getSeller().equals(currentUser.getUsername())
+                    || !db.changeItemPrice(currentUser.getUsername(), item, newPrice)) {
+                out.println("You can only change your own items.");
+            } else {
+                out.println("Item changed to $" + Money.format(Money.toCents(newPrice)));
+            }
+        } catch (NumberFormatException e) {
+            out.println("Invalid price.");
+        }
+    }
+
+    /** Send a direct message to another user. */
+    private void sendMessage(CommandLine args) {
+        String receiver = args.arg(0);
+        // The body is everything after the receiver, spacing included
+        String text = args.rest(1);
+        Message sent;
+        try {
+            sent = db.sendMessage(currentUser.getUsername(), receiver, text);
+        } catch (IllegalArgumentException e) {
+            out.println(TOO_LONG);
+            return;
+        }
+        out.println("Message sent to " + receiver);
+        // The database locks are released by now; subscribers only queue the line
+        SUBSCRIPTIONS.publish(sent);
+    }
+
+    /** List all users this client has messaged. */
+    private void viewUserList(CommandLine args) {
+        ArrayList<String> us = db.getMessageUserList(currentUser.getUsername());
+        if (us.isEmpty()) out.println("No messaging history.");
+        else us.forEach(out::println);
+    }
+
+    /** Retrieve conversation thread with another user. */
+    private void viewConversation(CommandLine args) {
+        for (Message m : db.getSenderToReceiverMessage(currentUser.getUsername(), args.arg(0))) {
+            out.println(messageLine(m));
+        }
+    }
+
+    /** @return "sender receiver text", preceded by the sequence number if this session asked for it */
+    private String messageLine(Message m) {
+        return numbered ? m.getSequence() + " " + m : m.toString();
+    }
+
+    /**
+     * Turn response framing on or off. When on, every response starts with a
+     * line holding '#' and the number of lines that follow, so clients know
+     * where a multi-line response such as listitems ends. Pushed messages are
+     * never framed; they are single lines starting with "PUSH ".
+     */
+    private void frame(CommandLine args) {
+        if (args.arg(0).equalsIgnoreCase("on")) {
+            framed = true;
+            out.println("Framing on.");
+        } else if (args.arg(0).equalsIgnoreCase("off")) {
+            framed = false;
+            out.println("Framing off.");
+        } else {
+            out.println("Usage: frame <on|off>");
+        }
+    }
+
+    /**
+     * Turn message numbering on or off. When on, every line of
+     * viewconversation and every pushed message starts with the message's
+     * sequence number, {@code <seq> <sender> <receiver> <text>}, so a client
+     * that both fetches and receives pushes can tell a repeat from a new
+     * message that happens to have the same text.
+     */
+    private void numbered(CommandLine args) {
+        if (args.arg(0).equalsIgnoreCase("on")) {
+            numbered = true;
+            out.println("Numbering on.");
+        } else if (args.arg(0).equalsIgnoreCase("off")) {
+            numbered = false;
+            out.println("Numbering off.");
+        } else {
+            out.println("Usage: numbered <on|off>");
+        }
+    }
+
+    /**
+     * Push every new message to or from the logged-in user to this connection
+     * as a line {@code PUSH <sender> <receiver> <text>}, with the sequence
+     * number first if numbered is on, until logout.
+     */
+    private void subscribe(CommandLine args) {
+        stopPushes();
+        subscribedAs = currentUser.getUsername();
+        SUBSCRIPTIONS.subscribe(subscribedAs, this);
+        out.println("Subscribed to messages.");
+    }
+
+    /** Stop pushing new messages. */
+    private void unsubscribe(CommandLine args) {
+        stopPushes();
+        out.println("Unsubscribed from messages.");
+    }
+
+    /** Client requested disconnect. */
+    private void exit(CommandLine args) {
+        out.println("Goodbye!");
+        closeRequested = true;
     }
 
     /**
@@ -319,4 +928,25 @@ public class ClientHandler implements Runnable {
         }
         return false;
     }
+
+    /**
+     * Response text buffer that can count its lines and hand its characters to
+     * a writer without copying them first.
+     */
+    private static class ResponseBuffer extends CharArrayWriter {
+        ResponseBuffer() {
+            super(1024);
+        }
+
+        /** @return number of line breaks written since the last reset */
+        int lines() {
+            int lines = 0;
+            for (int i = 0; i < count; i++) {
+                if (buf[i] == '\n') {
+                    lines++;
+                }
+            }
+            return lines;
+        }
+    }
 }
@@ -3,8 +3,19 @@ import org.junit.jupiter.api.Test;
 import java.io.*;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -27,12 +38,8 @@ public class ClientHandlerTest {
         Field dbField = ClientHandler.class.getDeclaredField("db");
         dbField.setAccessible(true);
         db = (Database1) dbField.get(null);
-        // Clear internal lists
-        for (String fieldName : new String[]{"users", "items", "messages"}) {
-            Field f = Database1.class.getDeclaredField(fieldName);
-            f.setAccessible(true);
-            ((List<?>) f.get(db)).clear();
-        }
+        // Clear all users, items and messages
+        db.clear();
 
         handler = new ClientHandler((Socket) null);
         sw = new StringWriter();
@@ -99,6 +106,321 @@ public class ClientHandlerTest {
         assertTrue(resp.contains("$40.00"));
     }
 
+    @Test
+    public void testFormerOwnerCannotRepriceSoldItem() throws Exception {
+        db.addUser("seller", "pw", 0, new ArrayList<>());
+        db.addUser("buyer", "pw", 50, new ArrayList<>());
+        db.addItem("pen", 10, "seller");
+        db.sellItem("seller", "pen");
+        // The seller looked the pen up before the buyer took it
+        Item pen = db.searchSoldItem("pen");
+        assertEquals(PurchaseResult.BOUGHT, db.buy("buyer", "pen"));
+
+        assertFalse(db.changeItemPrice("seller", pen, 1));
+        assertEquals(1000, pen.getCostCents());
+        assertTrue(db.changeItemPrice("buyer", pen, 12));
+        assertEquals(1200, pen.getCostCents());
+    }
+
+    @Test
+    public void testBuyFailuresAreReported() throws Exception {
+        invokeCommand("register seller pw 100.0");
+        invokeCommand("login seller pw");
+        invokeCommand("additem lamp 80.00");
+        invokeCommand("sellitem lamp");
+        String resp = invokeCommand("buy lamp");
+        assertTrue(resp.contains("cannot buy your own item"));
+        invokeCommand("logout");
+
+        invokeCommand("register buyer pw 50.0");
+        invokeCommand("login buyer pw");
+        resp = invokeCommand("buy lamp");
+        assertTrue(resp.contains("insufficient balance"));
+        resp = invokeCommand("getbalance");
+        assertTrue(resp.contains("$50.00"));
+        // The listing survives a failed purchase
+        resp = invokeCommand("searchitem lamp");
+        assertTrue(resp.contains("Seller: seller"));
+    }
+
+    @Test
+    public void testOutOfRangeAmountsAreRejected() throws Exception {
+        assertThrows(NumberFormatException.class, () -> Money.toCents(1e17));
+        assertThrows(NumberFormatException.class, () -> Money.toCents(1e300));
+        assertThrows(NumberFormatException.class, () -> Money.toCents(Double.NaN));
+        assertEquals(Money.MAX_CENTS, Money.toCents(Money.MAX_CENTS / 100));
+
+        assertTrue(invokeCommand("register rich pw 1e17").contains("Invalid balance."));
+        assertTrue(invokeCommand("register broke pw -5").contains("Invalid balance."));
+        assertNull(db.getUser("broke"));
+        invokeCommand("register seller pw 10");
+        invokeCommand("login seller pw");
+        assertTrue(invokeCommand("additem pen -1").contains("Invalid cost."));
+        invokeCommand("additem pen 1");
+        assertTrue(invokeCommand("changeitemprice pen -3").contains("Invalid price."));
+        assertTrue(invokeCommand("changeitemprice pen 9.3e16").contains("Invalid price."));
+        assertEquals(100, db.searchOwnedItem("pen").getCostCents());
+    }
+
+    @Test
+    public void testCatalogDeltaSync() throws Exception {
+        invokeCommand("register seller pw 100.0");
+        invokeCommand("login seller pw");
+        invokeCommand("additem pen 10.00");
+        invokeCommand("additem cup 3.00");
+        invokeCommand("sellitem pen");
+        invokeCommand("sellitem cup");
+
+        CatalogCache cache = new CatalogCache();
+        String resp = invokeCommand("listitems since 0");
+        assertTrue(resp.startsWith("Catalog ") && resp.contains(" full"));
+        assertTrue(cache.apply(Arrays.asList(resp.split("\\R"))));
+        assertEquals(2, cache.listings().size());
+
+        invokeCommand("changeitemprice pen 12");
+        invokeCommand("unsellitem cup");
+        resp = invokeCommand("listitems since " + cache.version());
+        // Only the two changed listings are sent
+        String[] lines = resp.split("\\R");
+        assertEquals(3, lines.length);
+        assertFalse(resp.contains(" full"));
+        assertTrue(cache.apply(Arrays.asList(lines)));
+        assertEquals(List.of("pen - $12.00 - Seller: seller"), cache.listings());
+
+        resp = invokeCommand("listitems since " + cache.version());
+        assertEquals(1, resp.split("\\R").length);
+    }
+
+    @Test
+    public void testListItemsPages() throws Exception {
+        invokeCommand("register seller pw 100.0");
+        invokeCommand("login seller pw");
+        double[] prices = {5, 1, 4, 2, 3};
+        for (int i = 0; i < prices.length; i++) {
+            invokeCommand("additem item" + i + " " + prices[i]);
+            invokeCommand("sellitem item" + i);
+        }
+
+        String[] lines = invokeCommand("listitems page 2 sort price").split("\\R");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("item1 - $1.00"));
+        assertTrue(lines[1].startsWith("item3 - $2.00"));
+        assertTrue(lines[2].startsWith("Next "));
+
+        // A price change between pages does not disturb the cursor
+        invokeCommand("changeitemprice item4 0.50");
+        lines = invokeCommand("listitems page 2 sort price after " + lines[2].substring(5)).split("\\R");
+        assertTrue(lines[0].startsWith("item2 - $4.00"));
+        assertTrue(lines[1].startsWith("item0 - $5.00"));
+        assertEquals("End", lines[2]);
+
+        lines = invokeCommand("listitems page 1 sort recent").split("\\R");
+        assertTrue(lines[0].startsWith("item4"));
+        assertTrue(invokeCommand("listitems page 1 sort name after bogus").contains("Invalid cursor."));
+    }
+
+    @Test
+    public void testFindItemsByPriceAndSeller() throws Exception {
+        invokeCommand("register alice pw 100.0");
+        invokeCommand("register bob pw 100.0");
+        invokeCommand("login alice pw");
+        invokeCommand("additem lamp 25");
+        invokeCommand("additem mug 8");
+        invokeCommand("additem pen 2");
+        invokeCommand("sellitem lamp");
+        invokeCommand("sellitem mug");
+        invokeCommand("sellitem pen");
+        invokeCommand("logout");
+        invokeCommand("login bob pw");
+        invokeCommand("additem cup 5");
+        invokeCommand("sellitem cup");
+
+        String[] lines = invokeCommand("finditems max 20").split("\\R");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("pen - $2.00"));
+        assertTrue(lines[1].startsWith("cup - $5.00"));
+        assertTrue(lines[2].startsWith("mug - $8.00"));
+        assertEquals("End", lines[3]);
+
+        lines = invokeCommand("finditems seller alice min 5 page 1").split("\\R");
+        assertTrue(lines[0].startsWith("mug - $8.00 - Seller: alice"));
+        lines = invokeCommand("finditems seller alice min 5 page 1 after " + lines[1].substring(5)).split("\\R");
+        assertTrue(lines[0].startsWith("lamp - $25.00"));
+        assertEquals("End", lines[1]);
+
+        // Bought listings leave both indexes
+        invokeCommand("buy mug");
+        assertTrue(invokeCommand("finditems seller alice max 10").startsWith("pen - $2.00"));
+        assertFalse(invokeCommand("finditems max 10").contains("mug"));
+    }
+
+    @Test
+    public void testSearchRanksMatches() throws Exception {
+        invokeCommand("register seller pw 100.0");
+        invokeCommand("login seller pw");
+        for (String name : new String[] {"desklamp", "lamp", "lampshade", "clamp", "lamb", "table"}) {
+            invokeCommand("additem " + name + " 5");
+            invokeCommand("sellitem " + name);
+        }
+
+        String[] lines = invokeCommand("search LAMP").split("\\R");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("lamp "));
+        assertTrue(lines[1].startsWith("lampshade "));
+        // Substring matches: the earlier the match, the better
+        assertTrue(lines[2].startsWith("clamp "));
+        assertTrue(lines[3].startsWith("desklamp "));
+
+        // Typos are tried when nothing matches as typed
+        assertTrue(invokeCommand("search tabel").startsWith("table "));
+        assertTrue(invokeCommand("search lamq").startsWith("lamb "));
+        assertTrue(invokeCommand("search lamp 1").split("\\R").length == 1);
+
+        // Sold listings drop out of the index
+        invokeCommand("unsellitem table");
+        assertTrue(invokeCommand("search table").contains("No matches."));
+    }
+
+    @Test
+    public void testSearchIndexRebuildsOffTheWritePath() throws Exception {
+        ItemSearchIndex index = new ItemSearchIndex();
+        ArrayList<Item> items = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            Item item = new Item(i + 1, "widget" + i, 1, "seller");
+            items.add(item);
+            index.add(item);
+        }
+        index.flush();
+        // Enough dead terms to start a rebuild, with changes still arriving while it runs
+        for (int i = 0; i < 2500; i++) {
+            index.remove(items.get(i));
+            index.flush();
+        }
+        index.add(new Item(5000, "gadget", 1, "seller"));
+        index.remove(items.get(2999));
+        index.flush();
+
+        // 501 live names; once rebuilds settle, fewer than 1024 dead terms may remain
+        long deadline = System.currentTimeMillis() + 5000;
+        while (index.termCount() > 1524 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(index.termCount() <= 1524);
+        assertEquals(1, index.search("gadget", 5).size());
+        assertEquals(1, index.search("widget2998", 5).size());
+        // Removed names are only found as typos of live ones
+        for (String gone : new String[] {"widget2999", "widget12"}) {
+            assertTrue(index.search(gone, 5).stream().allMatch(h -> h.match() == ItemSearchIndex.Match.FUZZY));
+        }
+        // Typo search still works against the renumbered terms
+        assertEquals("widget2998", index.search("widgt2998", 5).get(0).item().getName());
+    }
+
+    @Test
+    public void testSearchAgreesWithListingsAfterConcurrentTrades() throws Exception {
+        Database1 market = new Database1();
+        for (int t = 0; t < 4; t++) {
+            market.addUser("trader" + t, "pw", 1_000_000, new ArrayList<>());
+            for (int i = 0; i < 50; i++) {
+                market.addItem("gizmo" + t + "x" + i, 1, "trader" + t);
+            }
+        }
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int mine = t;
+            int other = (t + 1) % 4;
+            // Lists and unlists its own items while buying from the next trader
+            threads.add(new Thread(() -> {
+                try {
+                    for (int round = 0; round < 20; round++) {
+                        for (int i = 0; i < 50; i++) {
+                            market.sellItem("trader" + mine, "gizmo" + mine + "x" + i);
+                        }
+                        for (int i = 0; i < 50; i += 2) {
+                            market.unsellItem("trader" + mine, "gizmo" + mine + "x" + i);
+                            market.buy("trader" + mine, "gizmo" + other + "x" + (i + 1));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        // Searches run throughout; none of them may hold the traders up
+        Thread searcher = new Thread(() -> {
+            while (threads.stream().anyMatch(Thread::isAlive)) {
+                market.searchItems("gizmo", 20);
+                market.searchItems("gizmi2x4", 20);
+            }
+        });
+        threads.forEach(Thread::start);
+        searcher.start();
+        for (Thread t : threads) {
+            t.join(30_000);
+        }
+        searcher.join(30_000);
+        assertTrue(failures.isEmpty());
+
+        for (Item listed : market.getItems()) {
+            List<ItemSearchIndex.Hit> hits = market.searchItems(listed.getName(), 10);
+            assertTrue(hits.stream().anyMatch(h -> h.item() == listed && h.match() == ItemSearchIndex.Match.EXACT));
+        }
+        long searchable = market.searchItems("gizmo", 1000).size();
+        assertEquals(market.getItems().size(), searchable);
+    }
+
+    @Test
+    public void testStatsCountCommands() throws Exception {
+        invokeCommand("register watcher pw 10.0");
+        invokeCommand("login watcher pw");
+        // Refused unless allowed, and then only on this machine; the default handler has no socket
+        StringWriter wire = new StringWriter();
+        ClientHandler local = new ClientHandler(wire, null);
+        local.process("stats");
+        assertTrue(wire.toString().contains("Stats are not available"));
+        ClientHandler.setStatsAllowed(true);
+        try {
+            assertTrue(invokeCommand("stats").contains("Stats are not available"));
+            wire.getBuffer().setLength(0);
+            local.process("stats");
+            long before = statsCount(wire.toString(), "getbalance");
+            invokeCommand("getbalance");
+            invokeCommand("getbalance");
+            wire.getBuffer().setLength(0);
+            local.process("stats");
+            String report = wire.toString();
+            // Counters are shared by every handler, so compare against the earlier report
+            assertEquals(before + 2, statsCount(report, "getbalance"));
+            assertTrue(report.startsWith("Uptime "));
+            assertTrue(report.contains("connections "));
+            assertTrue(report.contains("lock waits"));
+        } finally {
+            ClientHandler.setStatsAllowed(false);
+        }
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 1000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(1_000_000, histogram.max());
+        // Buckets are about 6% wide
+        assertTrue(Math.abs(histogram.percentile(0.5) - 500_000) <= 35_000);
+        assertTrue(Math.abs(histogram.percentile(0.99) - 990_000) <= 65_000);
+    }
+
+    /** @return the count column of a command's line in a stats report, or 0 */
+    private static long statsCount(String report, String command) {
+        for (String row : report.split("\\R")) {
+            String[] columns = row.trim().split("\\s+");
+            if (columns[0].equals(command)) {
+                return Long.parseLong(columns[1]);
+            }
+        }
+        return 0;
+    }
+
     @Test
     public void testMessagingAndView() throws Exception {
         invokeCommand("register a pw 100.0");
@@ -123,4 +445,383 @@ public class ClientHandlerTest {
         resp = invokeCommand("deleteitem x");
         assertTrue(resp.contains("Item not found."));
     }
+
+    @Test
+    public void testSearchIgnoresCaseAndBoughtItemIsOwned() throws Exception {
+        invokeCommand("register seller pw 100.0");
+        invokeCommand("login seller pw");
+        invokeCommand("additem Lamp 15.00");
+        invokeCommand("sellitem Lamp");
+        String resp = invokeCommand("searchitem LAMP");
+        assertTrue(resp.contains("Found item: Lamp, $15.00, Seller: seller"));
+        invokeCommand("logout");
+
+        invokeCommand("register buyer pw 50.0");
+        invokeCommand("login buyer pw");
+        invokeCommand("buy lamp");
+        resp = invokeCommand("searchitem lamp");
+        assertTrue(resp.contains("Item not found or not for sale"));
+
+        // The bought item is indexed in the buyer's inventory
+        resp = invokeCommand("changeitemprice Lamp 20");
+        assertTrue(resp.contains("Item changed to $20.00"));
+    }
+
+    @Test
+    public void testFramedResponsesCarryLineCount() throws Exception {
+        StringWriter wire = new StringWriter();
+        ClientHandler framed = new ClientHandler(wire, null);
+        framed.process("register seller pw 100.0");
+        framed.process("login seller pw");
+        framed.process("additem Lamp 15.00");
+        framed.process("additem Desk 40.00");
+        framed.process("sellitem Lamp");
+        framed.process("sellitem Desk");
+
+        wire.getBuffer().setLength(0);
+        framed.process("frame on");
+        framed.process("listitems");
+        String[] lines = wire.toString().split(System.lineSeparator());
+        assertEquals("#1", lines[0]);
+        assertEquals("Framing on.", lines[1]);
+        assertEquals("#2", lines[2]);
+        assertEquals(5, lines.length);
+    }
+
+    @Test
+    public void testTaggedRequestsEchoTheirTag() throws Exception {
+        StringWriter wire = new StringWriter();
+        ClientHandler session = new ClientHandler(wire, null);
+        session.process("register tagger pw 12.5");
+        wire.getBuffer().setLength(0);
+
+        session.process("@a login tagger pw");
+        session.process("@b getbalance");
+        session.process("@c searchitem nothing");
+        // An untagged command waits for the queries above to answer first
+        session.process("logout");
+
+        String out = wire.toString();
+        String nl = System.lineSeparator();
+        assertTrue(out.startsWith("@a 1" + nl + "Login successful." + nl));
+        assertTrue(out.contains("@b 1" + nl + "$12.50" + nl));
+        assertTrue(out.contains("@c 1" + nl + "Item not found or not for sale." + nl));
+        assertTrue(out.endsWith("Logged out." + nl));
+    }
+
+    @Test
+    public void testClientConnectionDispatchesOffTheReader() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread fake = new Thread(() -> {
+                try (Socket s = server.accept()) {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+                    PrintWriter out = new PrintWriter(s.getOutputStream(), true);
+                    out.println("hello");
+                    assertEquals("@1 ping", in.readLine());
+                    out.println("@1 2");
+                    out.println("a");
+                    out.println("b");
+                    out.println("bye");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            fake.start();
+
+            List<String> lines = new CopyOnWriteArrayList<>();
+            List<String> threads = new CopyOnWriteArrayList<>();
+            ClientConnection conn = new ClientConnection("localhost", server.getLocalPort(), line -> {
+                lines.add(line);
+                threads.add(Thread.currentThread().getName());
+            });
+            try {
+                assertEquals(List.of("a", "b"), conn.request("ping").get(5, TimeUnit.SECONDS));
+                fake.join(5000);
+                // Once the server hangs up, later requests fail instead of waiting forever
+                CompletableFuture<List<String>> late = conn.request("ping");
+                assertThrows(ExecutionException.class, () -> late.get(5, TimeUnit.SECONDS));
+                assertEquals(List.of("hello", "bye"), lines);
+                assertEquals(List.of("ServerDispatcher", "ServerDispatcher"), threads);
+            } finally {
+                conn.close();
+            }
+        }
+
+        // A malformed response header fails the request instead of leaving it waiting
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread fake = new Thread(() -> {
+                try (Socket s = server.accept()) {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+                    PrintWriter out = new PrintWriter(s.getOutputStream(), true);
+                    in.readLine();
+                    out.println("@1 two");
+                    // Stay open, so only the bad header can end the request
+                    in.readLine();
+                } catch (IOException e) {
+                    // The client hung up
+                }
+            });
+            fake.start();
+            ClientConnection conn = new ClientConnection("localhost", server.getLocalPort(), line -> { });
+            try {
+                CompletableFuture<List<String>> bad = conn.request("ping");
+                assertThrows(ExecutionException.class, () -> bad.get(5, TimeUnit.SECONDS));
+            } finally {
+                conn.close();
+                fake.join(5000);
+            }
+        }
+    }
+
+    @Test
+    public void testSubscriberReceivesPushedMessages() throws Exception {
+        StringWriter aliceWire = new StringWriter();
+        StringWriter bobWire = new StringWriter();
+        ClientHandler alice = new ClientHandler(aliceWire, null);
+        ClientHandler bob = new ClientHandler(bobWire, null);
+        alice.process("register alice pw 1");
+        alice.process("login alice pw");
+        bob.process("register bob pw 1");
+        bob.process("login bob pw");
+        bob.process("subscribe");
+
+        alice.process("sendmessage bob hello  there");
+        // Pushes are written by a pool thread
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!bobWire.toString().contains("PUSH ") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(bobWire.toString().contains("PUSH alice bob hello  there"));
+
+        // After logout nothing more is pushed
+        bob.process("logout");
+        bobWire.getBuffer().setLength(0);
+        alice.process("sendmessage bob again");
+        Thread.sleep(100);
+        assertFalse(bobWire.toString().contains("PUSH"));
+        assertFalse(aliceWire.toString().contains("PUSH"));
+    }
+
+    @Test
+    public void testNumberedMessagesCarryTheirSequence() throws Exception {
+        StringWriter aliceWire = new StringWriter();
+        StringWriter bobWire = new StringWriter();
+        ClientHandler alice = new ClientHandler(aliceWire, null);
+        ClientHandler bob = new ClientHandler(bobWire, null);
+        alice.process("register alice pw 1");
+        alice.process("login alice pw");
+        bob.process("register bob pw 1");
+        bob.process("login bob pw");
+        bob.process("numbered on");
+        bob.process("subscribe");
+
+        // The same text twice is still two messages
+        alice.process("sendmessage bob hi");
+        alice.process("sendmessage bob hi");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (bobWire.toString().split("PUSH ", -1).length < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        List<String> pushed = new ArrayList<>();
+        for (String row : bobWire.toString().split("\\R")) {
+            if (row.startsWith("PUSH ")) {
+                pushed.add(row.substring("PUSH ".length()));
+            }
+        }
+        assertEquals(2, pushed.size());
+        assertTrue(pushed.get(0).endsWith(" alice bob hi"));
+        assertNotEquals(pushed.get(0), pushed.get(1));
+
+        // A fetched thread numbers its lines the same way, so a client can match them up
+        bobWire.getBuffer().setLength(0);
+        bob.process("viewconversation alice");
+        assertEquals(pushed, List.of(bobWire.toString().split("\\R")));
+        bob.process("numbered off");
+        bobWire.getBuffer().setLength(0);
+        bob.process("viewconversation alice");
+        assertTrue(bobWire.toString().startsWith("alice bob hi"));
+    }
+
+    @Test
+    public void testLongMessageIsJournaled() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        String longText = "x".repeat(70_000);
+        try {
+            Database1 durable = Database1.open(dir, Journal.SyncPolicy.EVERY_WRITE, 10);
+            durable.addUser("alice", "pw", 1, new ArrayList<>());
+            durable.addUser("bob", "pw", 1, new ArrayList<>());
+            durable.sendMessage("alice", "bob", longText);
+            // Too long to log: refused before the conversation changes
+            String tooLong = "y".repeat(JournalRecord.MAX_STRING_BYTES + 1);
+            assertThrows(IllegalArgumentException.class, () -> durable.sendMessage("alice", "bob", tooLong));
+            assertEquals(1, durable.getSenderToReceiverMessage("alice", "bob").size());
+            durable.close();
+
+            Database1 reopened = Database1.open(dir, Journal.SyncPolicy.EVERY_WRITE, 10);
+            assertEquals(longText, reopened.getSenderToReceiverMessage("alice", "bob").get(0).getMessage());
+            reopened.close();
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+
+        invokeCommand("register carol pw 1");
+        invokeCommand("login carol pw");
+        String resp = invokeCommand("sendmessage carol " + "z".repeat(JournalRecord.MAX_STRING_BYTES + 1));
+        assertTrue(resp.startsWith("Input too long"));
+        assertTrue(db.getSenderToReceiverMessage("carol", "carol").isEmpty());
+    }
+
+    @Test
+    public void testShardedDatabaseTradesAcrossShards() throws Exception {
+        ShardedDatabase sharded = new ShardedDatabase(4);
+        // Pick a seller and a buyer who live in different shards
+        String seller = "seller";
+        String buyer = "buyer0";
+        for (int n = 1; sharded.shardIndex(buyer) == sharded.shardIndex(seller); n++) {
+            buyer = "buyer" + n;
+        }
+        ClientHandler.setDatabase(sharded);
+        try {
+            StringWriter sellerWire = new StringWriter();
+            StringWriter buyerWire = new StringWriter();
+            ClientHandler s = new ClientHandler(sellerWire, null);
+            ClientHandler b = new ClientHandler(buyerWire, null);
+            s.process("register " + seller + " pw 0");
+            s.process("login " + seller + " pw");
+            b.process("register " + buyer + " pw 100");
+            b.process("login " + buyer + " pw");
+            s.process("additem Lamp 15.00");
+            s.process("sellitem Lamp");
+            b.process("additem Lantern 30.00");
+            b.process("sellitem Lantern");
+
+            // Listings from both shards come back as one page, and one search
+            buyerWire.getBuffer().setLength(0);
+            b.process("listitems page 2 sort price");
+            String nl = System.lineSeparator();
+            assertTrue(buyerWire.toString().startsWith("Lamp - $15.00 - Seller: " + seller + nl
+                    + "Lantern - $30.00 - Seller: " + buyer + nl));
+            buyerWire.getBuffer().setLength(0);
+            b.process("search lant");
+            assertEquals("Lantern - $30.00 - Seller: " + buyer + nl, buyerWire.toString());
+
+            b.process("buy Lamp");
+            b.process("sendmessage " + seller + " thanks");
+            buyerWire.getBuffer().setLength(0);
+            b.process("getbalance");
+            b.process("viewconversation " + seller);
+            String out = buyerWire.toString();
+            assertTrue(out.contains("$85.00"));
+            assertTrue(out.contains("thanks"));
+            assertEquals(1, sharded.getSenderToReceiverMessage(seller, buyer).size());
+            String tooLong = "y".repeat(JournalRecord.MAX_STRING_BYTES + 1);
+            String from = buyer;
+            assertThrows(IllegalArgumentException.class, () -> sharded.sendMessage(from, seller, tooLong));
+            assertEquals(1, sharded.getSenderToReceiverMessage(seller, buyer).size());
+            assertEquals(buyer, sharded.searchOwnedItem("Lamp").getSeller());
+            assertEquals(1, sharded.getItems().size());
+            // Only the new owner's shard may reprice the lamp
+            Item lamp = sharded.searchOwnedItem("Lamp");
+            assertFalse(sharded.changeItemPrice(seller, lamp, 1));
+            assertTrue(sharded.changeItemPrice(buyer, lamp, 20));
+            assertEquals(2000, lamp.getCostCents());
+
+            sellerWire.getBuffer().setLength(0);
+            s.process("getbalance");
+            assertTrue(sellerWire.toString().contains("$15.00"));
+        } finally {
+            ClientHandler.setDatabase(db);
+        }
+    }
+
+    @Test
+    public void testFollowerReplaysPrimaryJournal() throws Exception {
+        Path primaryDir = Files.createTempDirectory("primary");
+        Path followerDir = Files.createTempDirectory("follower");
+        // Every mutation returns only once written, so the written lsn covers it
+        Database1 primary = Database1.open(primaryDir, Journal.SyncPolicy.EVERY_WRITE, 10);
+        ReplicationSource source = new ReplicationSource(primary.getJournal(), 0);
+        Database1 follower = Database1.open(followerDir, Journal.SyncPolicy.OS, 10);
+        Database1 fresh = new Database1();
+        ReplicationFollower stream = null;
+        ReplicationFollower late = null;
+        try {
+            primary.addUser("seller", "pw", 0, new ArrayList<>());
+            primary.addUser("buyer", "pw", 100, new ArrayList<>());
+            primary.addItem("Lamp", 15, "seller");
+            primary.sellItem("seller", "Lamp");
+            // Records before the follower connects come from disk, later ones from the live stream
+            stream = new ReplicationFollower(follower, "localhost", source.getPort());
+            awaitApplied(stream, primary);
+            primary.buy("buyer", "Lamp");
+            primary.sendMessage("buyer", "seller", "thanks");
+            awaitApplied(stream, primary);
+            assertEquals(1500, follower.getUser("seller").getBalanceCents());
+            assertEquals("buyer", follower.searchOwnedItem("Lamp").getSeller());
+            assertEquals(1, follower.getSenderToReceiverMessage("seller", "buyer").size());
+
+            // A follower that starts after the segments were snapshotted away gets the snapshot
+            Snapshotter snapshots = new Snapshotter(primaryDir, primary.getJournal());
+            snapshots.snapshotNow();
+            snapshots.close();
+            late = new ReplicationFollower(fresh, "localhost", source.getPort());
+            awaitApplied(late, primary);
+            // Loaded into a new database, so readers of the old one never see it half installed
+            assertNotSame(fresh, late.getDatabase());
+            assertNull(fresh.getUser("buyer"));
+            assertEquals(8500, late.getDatabase().getUser("buyer").getBalanceCents());
+
+            // Served as a replica: reads only, until promoted
+            ClientHandler.setDatabase(follower);
+            ClientHandler.setReplica(stream, 60_000);
+            StringWriter wire = new StringWriter();
+            ClientHandler session = new ClientHandler(wire, null);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (stream.stalenessMillis() > 60_000 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            session.process("register carol pw 1");
+            session.process("searchitem Lamp");
+            session.process("promote");
+            assertTrue(wire.toString().contains("Promotion is not allowed"));
+            ClientHandler.setPromoteAllowed(true);
+            session.process("promote");
+            session.process("register carol pw 1");
+            String out = wire.toString();
+            assertTrue(out.contains("read-only replica"));
+            assertTrue(out.contains("Item not found or not for sale"));
+            assertTrue(out.contains("Promoted to primary at lsn " + primary.getJournal().getWrittenLsn()));
+            assertTrue(out.endsWith("User registered." + System.lineSeparator()));
+            assertNull(primary.getUser("carol"));
+        } finally {
+            ClientHandler.setReplica(null, 0);
+            ClientHandler.setPromoteAllowed(false);
+            ClientHandler.setDatabase(db);
+            if (late != null) {
+                late.promote();
+            }
+            if (stream != null) {
+                stream.promote();
+            }
+            source.close();
+            primary.close();
+            follower.close();
+            for (Path dir : new Path[] {primaryDir, followerDir}) {
+                try (Stream<Path> files = Files.walk(dir)) {
+                    files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+                }
+            }
+        }
+    }
+
+    private static void awaitApplied(ReplicationFollower follower, Database1 primary) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (follower.getAppliedLsn() < primary.getJournal().getWrittenLsn()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(primary.getJournal().getWrittenLsn(), follower.getAppliedLsn());
+    }
 }
@@ -0,0 +1,189 @@
+import java.util.Arrays;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Reusable tokenizer for one request line. {@link #reset(String)} only records
+ * where each space-separated token starts and ends. No strings or arrays are
+ * created, so a handler can keep one instance and parse every line with it
+ * without producing garbage. Arguments become {@code String}s only when a
+ * command asks for one, and numbers are parsed straight from the line.
+ *
+ * <p>Token 0 is the command name; {@code arg(0)} is the first token after it.</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class CommandLine {
+    /** Powers of ten that are exact doubles, for the fast decimal path. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    /** Largest mantissa that a double holds exactly (2^53). */
+    private static final long MAX_EXACT = 1L << 53;
+
+    private String line = "";
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int count;
+
+    /**
+     * Tokenizes a new line, replacing the previous one. Runs of spaces
+     * separate tokens; leading and trailing spaces are ignored.
+     * @param input the request line
+     * @return this tokenizer
+     */
+    public CommandLine reset(String input) {
+        line = input;
+        count = 0;
+        int length = input.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && input.charAt(i) == ' ') {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            int start = i;
+            while (i < length && input.charAt(i) != ' ') {
+                i++;
+            }
+            if (count == starts.length) {
+                // Only lines with unusually many words ever get here
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = i;
+            count++;
+        }
+        return this;
+    }
+
+    /** @return true if the line holds no tokens at all */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /** @return number of tokens after the command name */
+    public int argCount() {
+        return Math.max(0, count - 1);
+    }
+
+    /** @return the command name as typed, or "" for an empty line */
+    public String name() {
+        return count == 0 ? "" : line.substring(starts[0], ends[0]);
+    }
+
+    /**
+     * Hash of the command name that ignores case, matching
+     * {@link #hashIgnoreCase(CharSequence)}.
+     * @return the hash, or 0 for an empty line
+     */
+    public int nameHash() {
+        return count == 0 ? 0 : hashIgnoreCase(line, starts[0], ends[0]);
+    }
+
+    /**
+     * @param name a command name
+     * @return true if the command name equals {@code name}, ignoring case
+     */
+    public boolean nameEquals(String name) {
+        return count > 0 && ends[0] - starts[0] == name.length()
+                && line.regionMatches(true, starts[0], name, 0, name.length());
+    }
+
+    /**
+     * @param index argument index, 0 being the token after the command name
+     * @return that argument
+     */
+    public String arg(int index) {
+        checkIndex(index);
+        return line.substring(starts[index + 1], ends[index + 1]);
+    }
+
+    /**
+     * Returns an argument and everything after it as typed, including the
+     * spaces between words. Used for free text such as message bodies.
+     * @param index argument index of the first word
+     * @return the rest of the line from that argument on
+     */
+    public String rest(int index) {
+        checkIndex(index);
+        return line.substring(starts[index + 1], ends[count - 1]);
+    }
+
+    /**
+     * Parses an argument as a double without copying it. Plain decimals such as
+     * {@code 12} or {@code -4.99} are converted directly; any other form falls
+     * back to {@link Double#parseDouble(String)}, so the result is always the
+     * same as that method would give.
+     * @param index argument index
+     * @return the parsed value
+     * @throws NumberFormatException if the argument is not a number
+     */
+    public double doubleArg(int index) {
+        checkIndex(index);
+        int i = starts[index + 1];
+        int end = ends[index + 1];
+        boolean negative = false;
+        if (line.charAt(i) == '-' || line.charAt(i) == '+') {
+            negative = line.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (; i < end; i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fraction >= 0) {
+                    fraction++;
+                }
+                if (mantissa >= MAX_EXACT || fraction >= POWERS_OF_TEN.length) {
+                    return Double.parseDouble(arg(index));
+                }
+            } else if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                // Exponents, hex, NaN, suffixes and garbage take the slow path
+                return Double.parseDouble(arg(index));
+            }
+        }
+        if (digits == 0) {
+            return Double.parseDouble(arg(index));
+        }
+        // Both operands are exact, so one division rounds correctly
+        double value = fraction > 0 ? mantissa / POWERS_OF_TEN[fraction] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Case-insensitive hash shared by tokenizer and registry.
+     * @param s characters to hash
+     * @return the hash
+     */
+    static int hashIgnoreCase(CharSequence s) {
+        return hashIgnoreCase(s, 0, s.length());
+    }
+
+    private static int hashIgnoreCase(CharSequence s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + Character.toLowerCase(s.charAt(i));
+        }
+        return h;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index + 1 >= count) {
+            throw new IndexOutOfBoundsException("argument " + index + " of " + argCount());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Table of the commands a {@link ClientHandler} understands. The table is built
+ * once at class load. Each entry records whether the command needs a logged-in
+ * user and how many arguments it takes, so the handler checks both in one
+ * place before it runs the command. Lookup hashes the command name inside the
+ * {@link CommandLine} without copying or lower-casing it.
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class CommandRegistry {
+    /**
+     * Body of a command.
+     */
+    public interface Action {
+        /**
+         * @param handler the connection running the command
+         * @param args the tokenized request line
+         */
+        void run(ClientHandler handler, CommandLine args);
+    }
+
+    /**
+     * One registered command.
+     * @param name lower-case command name
+     * @param minArgs arguments required after the name
+     * @param usage reply sent when fewer arguments are given
+     * @param needsLogin whether the command needs a logged-in user
+     * @param readOnly whether the command only reads shared state, so it may
+     *                 run alongside other read-only commands
+     * @param action what the command does
+     */
+    public record Command(String name, int minArgs, String usage, boolean needsLogin, boolean readOnly,
+                          Action action) {
+    }
+
+    // Open-addressed table; its size is a power of two kept at most half full
+    private Command[] table = new Command[32];
+    private int[] hashes = new int[32];
+    private int size;
+
+    /**
+     * Adds a command, replacing any earlier one with the same name.
+     * @param name command name, matched ignoring case
+     * @param minArgs arguments required after the name
+     * @param usage reply sent when fewer arguments are given
+     * @param needsLogin whether the command needs a logged-in user
+     * @param action what the command does
+     * @return this registry
+     */
+    public CommandRegistry register(String name, int minArgs, String usage, boolean needsLogin, Action action) {
+        return add(new Command(name.toLowerCase(), minArgs, usage, needsLogin, false, action));
+    }
+
+    /**
+     * Adds a read-only command, which changes neither the database nor the
+     * session and may therefore run concurrently with other queries.
+     * @param name command name, matched ignoring case
+     * @param minArgs arguments required after the name
+     * @param usage reply sent when fewer arguments are given
+     * @param needsLogin whether the command needs a logged-in user
+     * @param action what the command does
+     * @return this registry
+     */
+    public CommandRegistry registerQuery(String name, int minArgs, String usage, boolean needsLogin,
+                                         Action action) {
+        return add(new Command(name.toLowerCase(), minArgs, usage, needsLogin, true, action));
+    }
+
+    private CommandRegistry add(Command command) {
+        if ((size + 1) * 2 > table.length) {
+            resize();
+        }
+        insert(command);
+        return this;
+    }
+
+    /**
+     * @param line tokenized request line
+     * @return the command named by its first token, or null if unknown
+     */
+    public Command lookup(CommandLine line) {
+        if (line.isEmpty()) {
+            return null;
+        }
+        int hash = line.nameHash();
+        int mask = table.length - 1;
+        for (int i = hash & mask; table[i] != null; i = (i + 1) & mask) {
+            if (hashes[i] == hash && line.nameEquals(table[i].name())) {
+                return table[i];
+            }
+        }
+        return null;
+    }
+
+    private void insert(Command command) {
+        int hash = CommandLine.hashIgnoreCase(command.name());
+        int mask = table.length - 1;
+        int i = hash & mask;
+        while (table[i] != null && !table[i].name().equals(command.name())) {
+            i = (i + 1) & mask;
+        }
+        if (table[i] == null) {
+            size++;
+        }
+        table[i] = command;
+        hashes[i] = hash;
+    }
+
+    private void resize() {
+        Command[] old = table;
+        table = new Command[old.length * 2];
+        hashes = new int[old.length * 2];
+        size = 0;
+        for (Command command : old) {
+            if (command != null) {
+                insert(command);
+            }
+        }
+    }
+}
@@ -1,5 +1,12 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Phase 2 of CS180 Group Project
@@ -7,20 +14,289 @@ import java.util.Iterator;
  * <p>Purdue University -- CS18000 -- Spring 2025</p>
  *
  * Database1 manages users, items, and messages in-memory during server runtime.
- * All operations are synchronized to ensure thread safety across multiple clients.
+ * All collections are concurrent, so reads such as {@link #getItems()} never block.
+ * Mutations lock the stripe of every user they touch (see {@link StripedLocks}),
+ * which lets operations on unrelated users run in parallel. {@link LockMode#GLOBAL}
+ * funnels every mutation through one lock instead, like the original single monitor.
+ *
+ * <p>A database opened with {@link #open} is durable: every successful mutation is
+ * appended to a {@link Journal} while its locks are held, so the log order matches
+ * the order in which conflicting mutations were applied. The caller then waits for
+ * the record to be synced after the locks are released. On startup the newest
+ * {@link Snapshot} is loaded and only the journal records after it are replayed
+ * through {@link #apply(JournalRecord)}. A {@link Snapshotter} takes new snapshots
+ * in the background.</p>
  *
  * @author alexyan06, shivensaxena28, KayshavBhardwaj
  * @version April 6, 2025
  */
 public class Database1 implements DatabaseInterface {
-    /** All registered users. */
-    private ArrayList<User> users = new ArrayList<>();
-    /** Items currently listed for sale. */
-    private ArrayList<Item> items = new ArrayList<>();
-    /** All direct messages exchanged between users. */
-    private ArrayList<Message> messages = new ArrayList<>();
-    /** Items that are owned but not listed for sale. */
-    private ArrayList<Item> ownedItems = new ArrayList<>();
+    /** How mutations are serialized. */
+    public enum LockMode {
+        /** One lock for every mutation. */
+        GLOBAL,
+        /** One lock per stripe of usernames. */
+        STRIPED
+    }
+
+    /** Number of stripes used in {@link LockMode#STRIPED} mode. */
+    private static final int STRIPES = 256;
+
+    /** All registered users, keyed by username for constant-time lookup. */
+    private final ConcurrentHashMap<String, User> users = new ConcurrentHashMap<>();
+    /** Items currently listed for sale, keyed by item id in creation order. */
+    private final ConcurrentSkipListMap<Long, Item> items = new ConcurrentSkipListMap<>();
+    /** Direct messages, one append-only log per unordered pair of users. */
+    private final ConcurrentHashMap<String, MessageLog> conversations = new ConcurrentHashMap<>();
+    /** Every message each user sent or received, one log per user. */
+    private final ConcurrentHashMap<String, MessageLog> userMessages = new ConcurrentHashMap<>();
+    /** Listed items by case-insensitive name. */
+    private final ItemNameIndex listedByName = new ItemNameIndex();
+    /** Listed items sorted by price, name, seller and recency, for paging and range queries. */
+    private final ListingIndex listingOrder = new ListingIndex();
+    /**
+     * Listed item names for prefix, substring and fuzzy search. Changes are
+     * queued while the stripes are held and flushed once they are released,
+     * so a slow search never holds up a stripe.
+     */
+    private final ItemSearchIndex listingSearch = new ItemSearchIndex();
+    /** Items that are owned but not listed for sale, by case-insensitive name. */
+    private final ItemNameIndex ownedItems = new ItemNameIndex();
+    /** Versioned changes to the listings, for clients that sync deltas. */
+    private final CatalogLog catalog;
+    /** Every listed or owned item, by id; used to resolve journal records. */
+    private final ConcurrentHashMap<Long, Item> allItems = new ConcurrentHashMap<>();
+    /** Source of unique item ids. */
+    private final AtomicLong nextItemId;
+    /** Source of message sequence numbers, which order a user's history. */
+    private final AtomicLong nextMessageSequence;
+    /** Write-ahead log of mutations, or null for a memory-only database. */
+    private volatile Journal journal;
+    /** Set while following a primary, whose records are logged as shipped rather than as re-applied. */
+    private volatile boolean following;
+    /** Background snapshot task, or null if snapshots are off. */
+    private volatile Snapshotter snapshotter;
+    /** Locks guarding mutations, keyed by username. */
+    private final StripedLocks locks;
+
+    /** Creates a database using {@link LockMode#STRIPED} locking. */
+    public Database1() {
+        this(LockMode.STRIPED);
+    }
+
+    /**
+     * Creates a database with the given locking mode.
+     * @param mode how mutations are serialized
+     */
+    public Database1(LockMode mode) {
+        this(mode, new AtomicLong(1), new AtomicLong(1), new CatalogLog());
+    }
+
+    /**
+     * Creates one shard of a {@link ShardedDatabase}. Every shard draws item
+     * ids and message sequence numbers from the same counters, so an item or
+     * message keeps its number when it crosses to another shard, and records
+     * listing changes in the same catalog, so clients see one catalog version.
+     */
+    Database1(LockMode mode, AtomicLong itemIds, AtomicLong messageSequence, CatalogLog catalog) {
+        this.locks = new StripedLocks(mode == LockMode.GLOBAL ? 1 : STRIPES);
+        this.nextItemId = itemIds;
+        this.nextMessageSequence = messageSequence;
+        this.catalog = catalog;
+    }
+
+    /**
+     * Opens a durable database: loads the newest snapshot, replays the journal
+     * records after it, then logs every further mutation.
+     * @param dir data directory holding the journal
+     * @param policy when journal writes are synced to disk
+     * @param syncIntervalMillis sync period for {@link Journal.SyncPolicy#INTERVAL}
+     * @return the recovered database
+     * @throws IOException if the journal cannot be read or opened
+     */
+    public static Database1 open(Path dir, Journal.SyncPolicy policy, long syncIntervalMillis)
+            throws IOException {
+        Database1 db = new Database1();
+        long snapshotLsn = Snapshot.loadLatest(dir, db);
+        long lastLsn = Journal.replay(dir, snapshotLsn, db::apply);
+        db.journal = new Journal(dir, policy, syncIntervalMillis, lastLsn);
+        return db;
+    }
+
+    /**
+     * Starts taking a snapshot periodically. Requires a database from {@link #open}.
+     * @param dir the data directory passed to {@link #open}
+     * @param periodMillis time between snapshots
+     */
+    public void startSnapshots(Path dir, long periodMillis) {
+        if (journal == null) {
+            throw new IllegalStateException("Snapshots need a journal");
+        }
+        Snapshotter s = new Snapshotter(dir, journal);
+        s.start(periodMillis);
+        snapshotter = s;
+    }
+
+    /**
+     * Stops snapshots, then flushes and closes the journal, if there is one.
+     * @throws IOException if the final sync fails
+     */
+    public void close() throws IOException {
+        Snapshotter s = snapshotter;
+        snapshotter = null;
+        if (s != null) {
+            s.close();
+        }
+        Journal j = journal;
+        journal = null;
+        if (j != null) {
+            j.close();
+        }
+    }
+
+    /** @return how many times a user's lock stripe has been taken */
+    @Override
+    public long getLockAcquisitions() {
+        return locks.acquisitions();
+    }
+
+    /** @return how long mutations waited for a stripe another thread held */
+    @Override
+    public LatencyHistogram getLockWaits() {
+        return locks.waits();
+    }
+
+    /**
+     * Re-applies a logged mutation. Used during recovery, before the journal is
+     * attached, so nothing is logged twice.
+     * @param record the mutation to apply
+     */
+    public void apply(JournalRecord record) {
+        Item item = allItems.get(record.getItemId());
+        switch (record.getType()) {
+            case ADD_USER -> insertUser(record.getUser(), record.getText(), record.getAmountCents(),
+                    new ArrayList<>());
+            case DELETE_USER -> removeUser(record.getUser());
+            case ADD_ITEM -> {
+                locks.lock(record.getUser());
+                try {
+                    createItem(record.getItemId(), record.getText(), record.getAmountCents(), record.getUser());
+                } finally {
+                    locks.unlock(record.getUser());
+                }
+            }
+            case SELL_ITEM, UNSELL_ITEM -> {
+                locks.lock(record.getUser());
+                try {
+                    User u = getUser(record.getUser());
+                    if (u != null && item != null) {
+                        if (record.getType() == JournalRecord.Type.SELL_ITEM) {
+                            listItem(u, item);
+                        } else if (item.compareAndSetState(Item.State.LISTED, Item.State.OWNED)) {
+                            unlistItem(u, item);
+                        }
+                    }
+                } finally {
+                    locks.unlock(record.getUser());
+                    listingSearch.flush();
+                }
+            }
+            case DELETE_ITEM -> {
+                if (item != null) {
+                    locks.lock(item.getSeller());
+                    try {
+                        removeOwnedItem(item);
+                    } finally {
+                        locks.unlock(item.getSeller());
+                    }
+                }
+            }
+            case CHANGE_PRICE -> {
+                if (item != null) {
+                    setPrice(item.getSeller(), item, record.getAmountCents());
+                }
+            }
+            case SEND_MESSAGE -> sendMessage(record.getUser(), record.getOther(), record.getText());
+            case TRANSACTION -> {
+                User buyer = getUser(record.getUser());
+                User seller = getUser(record.getOther());
+                if (buyer != null && seller != null && item != null) {
+                    processTransaction(buyer, seller, item);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends a mutation to the journal. Call with the mutation's locks held.
+     * @param record the mutation
+     * @return lsn to pass to {@link #awaitDurable(long)}, or 0 if not journaling
+     */
+    private long log(JournalRecord record) {
+        Journal j = journal;
+        return j == null || following ? 0 : j.append(record);
+    }
+
+    /** @return the journal, or null for a memory-only database */
+    Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Switches between following a primary, when the only changes are records
+     * passed to {@link #replicate}, and taking changes of its own.
+     * @param following whether a {@link ReplicationFollower} feeds this database
+     */
+    void setFollowing(boolean following) {
+        this.following = following;
+    }
+
+    /**
+     * Applies a record shipped from the primary and, if this database has a
+     * journal, logs it under the primary's lsn. Records must come in lsn order
+     * from a single thread.
+     * @param record the primary's record, with its lsn set
+     */
+    void replicate(JournalRecord record) {
+        apply(record);
+        Journal j = journal;
+        if (j != null) {
+            j.appendReplicated(record);
+        }
+    }
+
+    /**
+     * Loads a snapshot shipped from the primary into a new database, for a
+     * follower too far behind to catch up from the log. The new database
+     * takes over this one's journal and snapshots and follows in its place.
+     * This one is left untouched, so clients keep reading it until the
+     * caller swaps the new one in, and never see it half loaded.
+     * @param file the snapshot
+     * @return the database holding the snapshot
+     * @throws IOException if the file is not a readable snapshot
+     */
+    Database1 loadReplacement(Path file) throws IOException {
+        Database1 fresh = new Database1();
+        Snapshot.load(file, fresh);
+        fresh.following = true;
+        fresh.journal = journal;
+        fresh.snapshotter = snapshotter;
+        journal = null;
+        snapshotter = null;
+        return fresh;
+    }
+
+    /**
+     * Waits, per the sync policy, until a logged mutation is durable. Call after
+     * releasing the mutation's locks so other clients can share the fsync.
+     * @param lsn value returned by {@link #log(JournalRecord)}
+     */
+    private void awaitDurable(long lsn) {
+        Journal j = journal;
+        if (j != null && lsn > 0) {
+            j.awaitDurable(lsn);
+        }
+    }
 
     /**
      * Adds a new user if the username is not already taken.
@@ -29,19 +305,34 @@ public class Database1 implements DatabaseInterface {
      * @param balance starting balance for the new account
      * @param messageList initial (empty) list of message contacts
      * @return true if registration succeeded, false if username exists
+     * @throws NumberFormatException if the balance is negative or out of range
+     * @throws IllegalArgumentException if a string is too long to log; nothing is changed
      */
     @Override
-    public synchronized boolean addUser(String username, String password,
-                                        double balance, ArrayList<String> messageList) {
-        // Check for existing user
-        for (User u : users) {
-            if (u.getUsername().equals(username)) {
+    public boolean addUser(String username, String password,
+                           double balance, ArrayList<String> messageList) {
+        return insertUser(username, password, Money.toAmountCents(balance), messageList);
+    }
+
+    private boolean insertUser(String username, String password, long balanceCents, ArrayList<String> messageList) {
+        // Checked before anything changes, so input too long to log is turned away untouched
+        JournalRecord.checkLength(username);
+        JournalRecord.checkLength(password);
+        long lsn = 0;
+        locks.lock(username);
+        try {
+            User user = new User(username, password, 0, messageList);
+            user.setBalanceCents(balanceCents);
+            // putIfAbsent is atomic, so two clients racing for a name cannot both win
+            if (users.putIfAbsent(username, user) != null) {
                 return false;
             }
+            lsn = log(JournalRecord.addUser(username, password, balanceCents));
+            return true;
+        } finally {
+            locks.unlock(username);
+            awaitDurable(lsn);
         }
-        // Add new user to list
-        users.add(new User(username, password, balance, messageList));
-        return true;
     }
 
     /**
@@ -51,33 +342,90 @@ public class Database1 implements DatabaseInterface {
      * @return true if deletion succeeded, false otherwise
      */
     @Override
-    public synchronized boolean deleteUser(String username, String password) {
-        User toRemove = getUser(username);
-        // Verify credentials
-        if (toRemove != null && toRemove.getPassword().equals(password)) {
-            // Remove all items they listed
-            items.removeIf(item -> item.getSeller().equals(username));
-            // Remove all messages sent to or from them
-            messages.removeIf(m -> m.getSender().equals(username) || m.getReceiver().equals(username));
+    public boolean deleteUser(String username, String password) {
+        User candidate = getUser(username);
+        if (candidate == null || !candidate.getPassword().equals(password)) {
+            return false;
+        }
+        return removeUser(username);
+    }
+
+    /**
+     * Removes a user along with their items and messages.
+     * @param username name of user to remove
+     * @return true if the user existed
+     */
+    private boolean removeUser(String username) {
+        // Remove all messages sent to or from them, one partner at a time so the
+        // pair can be locked in stripe order
+        HashSet<String> partners = new HashSet<>();
+        for (Message m : getSingleUserMessage(username)) {
+            partners.add(m.getSender().equals(username) ? m.getReceiver() : m.getSender());
+        }
+        for (String partner : partners) {
+            forgetConversation(username, partner);
+        }
+        long lsn = 0;
+        locks.lock(username);
+        try {
+            User toRemove = getUser(username);
+            if (toRemove == null) {
+                return false;
+            }
+            // Remove all items they listed or own
+            for (Item item : items.values()) {
+                if (item.getSeller().equals(username)) {
+                    items.remove(item.getId());
+                    listedByName.remove(item);
+                    listingOrder.remove(item);
+                    listingSearch.remove(item);
+                    allItems.remove(item.getId());
+                    catalog.removed(item);
+                }
+            }
+            for (Item item : toRemove.getOwnedItems()) {
+                ownedItems.remove(item);
+                allItems.remove(item.getId());
+            }
+            userMessages.remove(username);
             // Remove user record
-            users.remove(toRemove);
+            users.remove(username, toRemove);
+            lsn = log(JournalRecord.deleteUser(username));
             return true;
+        } finally {
+            locks.unlock(username);
+            listingSearch.flush();
+            awaitDurable(lsn);
         }
-        return false;
     }
 
     /**
-     * Retrieves a user by username.
-     * @param username the username to look up
-     * @return the User object, or null if not found
+     * Drops the conversation between two users and removes it from the
+     * partner's history, when {@code username} is going away.
+     * @param username the user being removed
+     * @param partner someone they exchanged messages with
      */
-    public synchronized User getUser(String username) {
-        for (User u : users) {
-            if (u.getUsername().equals(username)) {
-                return u;
+    void forgetConversation(String username, String partner) {
+        locks.lock(username, partner);
+        try {
+            conversations.remove(conversationKey(username, partner));
+            MessageLog partnerLog = userMessages.get(partner);
+            if (partnerLog != null) {
+                partnerLog.removeIf(m -> m.getSender().equals(username) || m.getReceiver().equals(username));
             }
+        } finally {
+            locks.unlock(username, partner);
         }
-        return null;
+    }
+
+    /**
+     * Retrieves a user by username in constant time.
+     * @param username the username to look up
+     * @return the User object, or null if not found
+     */
+    @Override
+    public User getUser(String username) {
+        return username == null ? null : users.get(username);
     }
 
     /**
@@ -87,7 +435,7 @@ public class Database1 implements DatabaseInterface {
      * @return true if credentials match an existing user
      */
     @Override
-    public synchronized boolean login(String username, String password) {
+    public boolean login(String username, String password) {
         User u = getUser(username);
         return u != null && u.getPassword().equals(password);
     }
@@ -98,16 +446,42 @@ public class Database1 implements DatabaseInterface {
      * @param cost item price
      * @param sellerUsername owner of the new item
      * @return true if successful, false if user not found
+     * @throws NumberFormatException if the cost is negative or out of range
+     * @throws IllegalArgumentException if the name is too long to log; nothing is changed
      */
     @Override
-    public synchronized boolean addItem(String name, double cost, String sellerUsername) {
+    public boolean addItem(String name, double cost, String sellerUsername) {
+        long costCents = Money.toAmountCents(cost);
+        JournalRecord.checkLength(name);
+        long lsn = 0;
+        locks.lock(sellerUsername);
+        try {
+            Item newItem = createItem(nextItemId.getAndIncrement(), name, costCents, sellerUsername);
+            if (newItem == null) return false;
+            lsn = log(JournalRecord.addItem(newItem.getId(), name, costCents, sellerUsername));
+            return true;
+        } finally {
+            locks.unlock(sellerUsername);
+            awaitDurable(lsn);
+        }
+    }
+
+    /**
+     * Creates an item in its owner's inventory. Caller holds the owner's stripe.
+     * @return the new item, or null if the owner does not exist
+     */
+    private Item createItem(long id, String name, long costCents, String sellerUsername) {
         User seller = getUser(sellerUsername);
-        if (seller == null) return false;
-        Item newItem = new Item(name, cost, sellerUsername);
+        if (seller == null) return null;
+        // Replayed ids must never be handed out again
+        nextItemId.accumulateAndGet(id + 1, Math::max);
+        Item newItem = new Item(id, name, 0, sellerUsername);
+        newItem.setCostCents(costCents);
         // Add to user's owned items and global owned list
         seller.addOwnedItem(newItem);
         ownedItems.add(newItem);
-        return true;
+        allItems.put(id, newItem);
+        return newItem;
     }
 
     /**
@@ -116,21 +490,43 @@ public class Database1 implements DatabaseInterface {
      * @param itemName name of the item
      * @return true if item successfully listed, false otherwise
      */
-    public synchronized boolean sellItem(String username, String itemName) {
-        User u = getUser(username);
-        if (u == null) return false;
-        ArrayList<Item> ownerItems = u.getOwnedItems();
-        for (Item ownerItem : ownerItems) {
-            // Only list if matching name and not already sellable
-            if (ownerItem.getName().equals(itemName) && !ownerItem.isSellable()) {
-                ownerItem.setSellable(true);
-                items.add(ownerItem);
-                ownedItems.remove(ownerItem);
-                u.removeOwnedItem(ownerItem);
-                return true;
+    @Override
+    public boolean sellItem(String username, String itemName) {
+        long lsn = 0;
+        locks.lock(username);
+        try {
+            User u = getUser(username);
+            if (u == null) return false;
+            ArrayList<Item> ownerItems = u.getOwnedItems();
+            for (Item ownerItem : ownerItems) {
+                // Only list if matching name and not already sellable
+                if (ownerItem.getName().equals(itemName) && !ownerItem.isSellable()) {
+                    listItem(u, ownerItem);
+                    lsn = log(JournalRecord.sellItem(username, ownerItem.getId()));
+                    return true;
+                }
             }
+            return false;
+        } finally {
+            locks.unlock(username);
+            listingSearch.flush();
+            awaitDurable(lsn);
         }
-        return false;
+    }
+
+    /**
+     * Moves an item from its owner's inventory to the marketplace. Caller holds
+     * the owner's stripe, and flushes the search index once it lets go.
+     */
+    private void listItem(User owner, Item item) {
+        item.setSellable(true);
+        items.put(item.getId(), item);
+        listedByName.add(item);
+        listingOrder.add(item);
+        listingSearch.add(item);
+        ownedItems.remove(item);
+        owner.removeOwnedItem(item);
+        catalog.listed(item);
     }
 
     /**
@@ -139,30 +535,54 @@ public class Database1 implements DatabaseInterface {
      * @param itemName name of the item
      * @return true if unlisted successfully, false otherwise
      */
-    public synchronized boolean unsellItem(String username, String itemName) {
-        User u = getUser(username);
-        if (u == null) return false;
-        for (Item listed : items) {
-            if (listed.getName().equals(itemName) &&
-                listed.getSeller().equals(username) &&
-                listed.isSellable()) {
-                listed.setSellable(false);
-                items.remove(listed);
-                ownedItems.add(listed);
-                u.addOwnedItem(listed);
-                return true;
+    @Override
+    public boolean unsellItem(String username, String itemName) {
+        long lsn = 0;
+        locks.lock(username);
+        try {
+            User u = getUser(username);
+            if (u == null) return false;
+            for (Item listed : listedByName.get(itemName)) {
+                // A buyer may have claimed the listing; the state decides who got it
+                if (listed.getName().equals(itemName) &&
+                    listed.getSeller().equals(username) &&
+                    listed.compareAndSetState(Item.State.LISTED, Item.State.OWNED)) {
+                    unlistItem(u, listed);
+                    lsn = log(JournalRecord.unsellItem(username, listed.getId()));
+                    return true;
+                }
             }
+            return false;
+        } finally {
+            locks.unlock(username);
+            listingSearch.flush();
+            awaitDurable(lsn);
         }
-        return false;
     }
 
     /**
-     * Returns a list of items currently available for sale.
+     * Moves a listed item back to its owner's inventory. Caller holds the
+     * owner's stripe and has already moved the item out of LISTED, and
+     * flushes the search index once it lets go of the stripe.
+     */
+    private void unlistItem(User owner, Item item) {
+        items.remove(item.getId());
+        listedByName.remove(item);
+        listingOrder.remove(item);
+        listingSearch.remove(item);
+        catalog.removed(item);
+        ownedItems.add(item);
+        owner.addOwnedItem(item);
+    }
+
+    /**
+     * Returns a list of items currently available for sale. Does not block writers.
      * @return list of sellable items
      */
-    public synchronized ArrayList<Item> getItems() {
+    @Override
+    public ArrayList<Item> getItems() {
         ArrayList<Item> forSale = new ArrayList<>();
-        for (Item i : items) {
+        for (Item i : items.values()) {
             if (i.isSellable()) {
                 forSale.add(i);
             }
@@ -171,14 +591,79 @@ public class Database1 implements DatabaseInterface {
     }
 
     /**
-     * Searches the marketplace for a sellable item by name (case-insensitive).
+     * Returns one page of the listings in the given order. The cost is a seek
+     * to the cursor plus the page itself, however many items are listed.
+     * @param sort the order
+     * @param cursor the previous page's {@link ListingIndex.Page#next()}, or null for the first page
+     * @param limit page size, at least 1
+     * @return the page
+     * @throws IllegalArgumentException if the cursor is not one this sort produced
+     */
+    @Override
+    public ListingIndex.Page getItemsPage(ListingIndex.Sort sort, String cursor, int limit) {
+        return listingOrder.page(sort, cursor, limit);
+    }
+
+    /**
+     * Finds listings in a price range, optionally from one seller, cheapest
+     * first. Served from the price index, or from the seller index when a
+     * seller is given; both are kept current by every listing change.
+     * @param minCents lowest price, inclusive
+     * @param maxCents highest price, inclusive
+     * @param seller only this seller's listings, or null for everyone's
+     * @param cursor the previous page's {@link ListingIndex.Page#next()}, or null for the first page
+     * @param limit page size, at least 1
+     * @return the page
+     * @throws IllegalArgumentException if the cursor is not one this kind of query produced
+     */
+    @Override
+    public ListingIndex.Page findItems(long minCents, long maxCents, String seller, String cursor, int limit) {
+        return listingOrder.range(minCents, maxCents, seller, cursor, limit);
+    }
+
+    /**
+     * Searches listed item names, ignoring case: exact names first, then names
+     * starting with the query, then names containing it. Only if nothing
+     * matches are names one or two typos away returned.
+     * @param query text to look for
+     * @param limit most listings to return
+     * @return matching listings, best first
+     */
+    @Override
+    public ArrayList<ItemSearchIndex.Hit> searchItems(String query, int limit) {
+        return listingSearch.search(query, limit);
+    }
+
+    /**
+     * The catalog version counts changes to the listings. Read it before
+     * {@link #getItems()}: every change the listing misses comes after it.
+     * @return the current catalog version
+     */
+    @Override
+    public long getCatalogVersion() {
+        return catalog.version();
+    }
+
+    /**
+     * @param version a version from {@link #getCatalogVersion()}
+     * @return the latest change to each listing changed since then, with the
+     *         version they lead to, or null if that version is too old to answer
+     */
+    @Override
+    public CatalogLog.Delta getCatalogChangesSince(long version) {
+        return catalog.since(version);
+    }
+
+    /**
+     * Searches the marketplace for a sellable item by name (case-insensitive)
+     * using the listing name index.
      * @param name item name to search
      * @return the Item if found, null otherwise
      */
     @Override
-    public synchronized Item searchSoldItem(String name) {
-        for (Item i : items) {
-            if (i.isSellable() && i.getName().equalsIgnoreCase(name)) {
+    public Item searchSoldItem(String name) {
+        for (Item i : listedByName.get(name)) {
+            if (i.isSellable()) {
                 return i;
             }
         }
@@ -186,22 +671,15 @@ public class Database1 implements DatabaseInterface {
     }
 
     /**
-     * Searches both owned and listed items by name.
+     * Searches both owned and listed items by name (case-insensitive) using the
+     * inventory and listing name indexes.
      * @param name item name to search
      * @return the Item if found, null otherwise
      */
-    public synchronized Item searchOwnedItem(String name) {
-        for (Item i : ownedItems) {
-            if (i.getName().equalsIgnoreCase(name)) {
-                return i;
-            }
-        }
-        for (Item i : items) {
-            if (i.isSellable() && i.getName().equalsIgnoreCase(name)) {
-                return i;
-            }
-        }
-        return null;
+    @Override
+    public Item searchOwnedItem(String name) {
+        Item owned = ownedItems.first(name);
+        return owned != null ? owned : searchSoldItem(name);
     }
 
     /**
@@ -210,44 +688,85 @@ public class Database1 implements DatabaseInterface {
      * @return true if deletion succeeded, false otherwise
      */
     @Override
-    public synchronized boolean deleteItem(String name) {
+    public boolean deleteItem(String name) {
         Item toRemove = null;
-        for (Item i : ownedItems) {
+        for (Item i : ownedItems.get(name)) {
             if (i.getName().equals(name)) {
                 toRemove = i;
                 break;
             }
         }
-        if (toRemove != null) {
-            ownedItems.remove(toRemove);
-            User seller = getUser(toRemove.getSeller());
-            if (seller != null) {
-                seller.removeOwnedItem(toRemove);
+        if (toRemove == null) {
+            return false;
+        }
+        String owner = toRemove.getSeller();
+        long lsn = 0;
+        locks.lock(owner);
+        try {
+            // The item may have been sold or listed since we found it
+            if (!owner.equals(toRemove.getSeller()) || !removeOwnedItem(toRemove)) {
+                return false;
             }
+            lsn = log(JournalRecord.deleteItem(toRemove.getId()));
             return true;
+        } finally {
+            locks.unlock(owner);
+            awaitDurable(lsn);
         }
-        return false;
     }
 
     /**
-     * Updates the price of an item in both marketplace and inventory.
+     * Deletes an item from its owner's inventory. Caller holds the owner's stripe.
+     * @return false if the item was not in inventory
+     */
+    private boolean removeOwnedItem(Item item) {
+        if (!ownedItems.remove(item)) {
+            return false;
+        }
+        allItems.remove(item.getId());
+        User seller = getUser(item.getSeller());
+        if (seller != null) {
+            seller.removeOwnedItem(item);
+        }
+        return true;
+    }
+
+    /**
+     * Updates the price of an item, whether it is listed or still in inventory,
+     * provided it still belongs to the user the caller checked.
+     * @param owner the user the item must belong to
      * @param item the item to modify
      * @param newPrice the new cost value
+     * @return false if the item belongs to someone else; nothing is changed
+     * @throws NumberFormatException if the price is negative or out of range
      */
-    public void changeItemPrice(Item item, double newPrice) {
-        // Update listed items
-        for (Item i : items) {
-            if (i.getName().equals(item.getName())) {
-                i.setCost(newPrice);
-                break;
+    @Override
+    public boolean changeItemPrice(String owner, Item item, double newPrice) {
+        return setPrice(owner, item, Money.toAmountCents(newPrice));
+    }
+
+    private boolean setPrice(String owner, Item item, long priceCents) {
+        long lsn = 0;
+        locks.lock(owner);
+        try {
+            // A purchase may have moved the item since the caller checked; it is not ours to price
+            if (!owner.equals(item.getSeller())) {
+                return false;
             }
-        }
-        // Update unlisted owned items
-        for (Item i : ownedItems) {
-            if (i.getName().equals(item.getName())) {
-                i.setCost(newPrice);
-                break;
+            // The price is a sort key, so the listing leaves the index while it changes
+            boolean listed = listingOrder.remove(item);
+            item.setCostCents(priceCents);
+            if (listed) {
+                listingOrder.add(item);
             }
+            if (item.isSellable()) {
+                catalog.listed(item);
+            }
+            lsn = log(JournalRecord.changePrice(item.getId(), priceCents));
+            return true;
+        } finally {
+            locks.unlock(owner);
+            awaitDurable(lsn);
         }
     }
 
@@ -256,97 +775,374 @@ public class Database1 implements DatabaseInterface {
      * @param sender username of sender
      * @param receiver username of receiver
      * @param message the message text
+     * @return the stored message, with its sequence number
+     * @throws IllegalArgumentException if the message is too long to log; nothing is changed
      */
     @Override
-    public synchronized void sendMessage(String sender, String receiver, String message) {
-        User s = getUser(sender);
-        User r = getUser(receiver);
-        if (s != null && r != null) {
-            // Track each other in contact lists
-            if (!s.getMessageUsernameList().contains(receiver)) s.addMessageUsername(receiver);
-            if (!r.getMessageUsernameList().contains(sender)) r.addMessageUsername(sender);
+    public Message sendMessage(String sender, String receiver, String message) {
+        JournalRecord.checkLength(sender);
+        JournalRecord.checkLength(receiver);
+        JournalRecord.checkLength(message);
+        long lsn = 0;
+        Message m;
+        locks.lock(sender, receiver);
+        try {
+            User s = getUser(sender);
+            User r = getUser(receiver);
+            if (s != null && r != null) {
+                // Track each other in contact lists
+                if (!s.getMessageUsernameList().contains(receiver)) s.addMessageUsername(receiver);
+                if (!r.getMessageUsernameList().contains(sender)) r.addMessageUsername(sender);
+            }
+            m = new Message(nextMessageSequence.getAndIncrement(), sender, receiver, message);
+            conversations.computeIfAbsent(conversationKey(sender, receiver), k -> new MessageLog()).append(m);
+            userMessages.computeIfAbsent(sender, k -> new MessageLog()).append(m);
+            if (!sender.equals(receiver)) {
+                userMessages.computeIfAbsent(receiver, k -> new MessageLog()).append(m);
+            }
+            lsn = log(JournalRecord.sendMessage(sender, receiver, message));
+        } finally {
+            locks.unlock(sender, receiver);
+            awaitDurable(lsn);
         }
-        messages.add(new Message(sender, receiver, message));
+        return m;
     }
 
     /**
-     * Retrieves all messages sent or received by a single user.
+     * Retrieves all messages sent or received by a single user from their own log.
      * @param username user whose messages are requested
      * @return list of matching Message objects
      */
     @Override
-    public synchronized ArrayList<Message> getSingleUserMessage(String username) {
+    public ArrayList<Message> getSingleUserMessage(String username) {
         User u = getUser(username);
-        ArrayList<Message> out = new ArrayList<>();
-        if (u == null) return out;
-        for (Message m : messages) {
-            if (m.getSender().equals(username) || m.getReceiver().equals(username)) {
-                out.add(m);
-            }
-        }
-        return out;
+        MessageLog log = u == null ? null : userMessages.get(username);
+        return log == null ? new ArrayList<>() : log.snapshot();
     }
 
     /**
      * Retrieves the list of usernames with whom a user has exchanged messages.
      * @param username the user in question
-     * @return list of contact usernames
+     * @return copy of the contact usernames
+     */
+    @Override
+    public ArrayList<String> getMessageUserList(String username) {
+        User u = getUser(username);
+        if (u == null) return new ArrayList<>();
+        // Copy under the user's lock so a concurrent sendMessage cannot break iteration
+        locks.lock(username);
+        try {
+            return new ArrayList<>(u.getMessageUsernameList());
+        } finally {
+            locks.unlock(username);
+        }
+    }
+
+    /**
+     * Retrieves the items a user owns, listed or not.
+     * @param username the owner
+     * @return copy of the owned items, empty if the user does not exist
      */
-    public synchronized ArrayList<String> getMessageUserList(String username) {
+    @Override
+    public ArrayList<Item> getOwnedItems(String username) {
         User u = getUser(username);
-        return u == null ? new ArrayList<>() : u.getMessageUsernameList();
+        if (u == null) return new ArrayList<>();
+        // Copy under the user's lock so a concurrent buy or transfer cannot break iteration
+        locks.lock(username);
+        try {
+            return new ArrayList<>(u.getOwnedItems());
+        } finally {
+            locks.unlock(username);
+        }
     }
 
     /**
-     * Retrieves the full conversation between two users.
+     * Retrieves the full conversation between two users. Costs time proportional
+     * to the length of that conversation only.
      * @param sender one participant
      * @param receiver the other participant
      * @return ordered list of Message objects between the two users
      */
     @Override
-    public synchronized ArrayList<Message> getSenderToReceiverMessage(String sender, String receiver) {
-        ArrayList<Message> convo = new ArrayList<>();
-        for (Message m : messages) {
-            if ((m.getSender().equals(sender) && m.getReceiver().equals(receiver)) ||
-                (m.getSender().equals(receiver) && m.getReceiver().equals(sender))) {
-                convo.add(m);
-            }
-        }
-        return convo;
+    public ArrayList<Message> getSenderToReceiverMessage(String sender, String receiver) {
+        MessageLog log = conversations.get(conversationKey(sender, receiver));
+        return log == null ? new ArrayList<>() : log.snapshot();
     }
 
     /**
-     * Returns a copy of all messages in the system.
+     * Returns a copy of all messages in the system, grouped by conversation.
      * @return list of all Message objects
      */
     @Override
-    public synchronized ArrayList<Message> getMessages() {
-        return new ArrayList<>(messages);
+    public ArrayList<Message> getMessages() {
+        ArrayList<Message> all = new ArrayList<>();
+        for (MessageLog log : conversations.values()) {
+            all.addAll(log.snapshot());
+        }
+        return all;
+    }
+
+    /**
+     * Builds the key of the conversation between two users; the order of the
+     * arguments does not matter.
+     * @param a one participant
+     * @param b the other participant
+     * @return key identifying the unordered pair
+     */
+    private static String conversationKey(String a, String b) {
+        // Usernames never contain a NUL character, so the key is unambiguous
+        return a.compareTo(b) <= 0 ? a + '\0' + b : b + '\0' + a;
     }
 
     /**
      * Handles money transfer, ownership update, and listing removal when an item is purchased.
+     * The item is claimed first; see {@link #completePurchase} for the rest.
      * @param buyer the User buying the item
      * @param seller the User selling the item
      * @param boughtItem the Item being transferred
      */
     @Override
-    public synchronized void processTransaction(User buyer, User seller, Item boughtItem) {
-        // Validate buyer has sufficient funds
-        if (buyer.getBalance() < boughtItem.getCost()) {
+    public void processTransaction(User buyer, User seller, Item boughtItem) {
+        if (!boughtItem.compareAndSetState(Item.State.LISTED, Item.State.SOLD)) {
+            System.out.println("Transaction invalid. Item is no longer for sale.");
+            return;
+        }
+        PurchaseResult result = completePurchase(buyer, seller, boughtItem);
+        if (result == PurchaseResult.NOT_FOUND) {
+            System.out.println("Transaction invalid. Item is no longer for sale.");
+        } else if (result == PurchaseResult.INSUFFICIENT_FUNDS) {
             System.out.println("Transaction invalid. Buyer balance is less than item cost.");
+        }
+    }
+
+    /**
+     * Buys the first listing named {@code itemName} that the buyer does not
+     * own. Each listing is claimed with a compare-and-set from LISTED to SOLD,
+     * so when many buyers race for one item exactly one of them wins, and the
+     * others move on without taking any lock. Only the winner locks the two
+     * users' stripes to move the money and the item.
+     * @param buyerName username of the buyer
+     * @param itemName name of the listing, matched ignoring case
+     * @return what happened; only {@link PurchaseResult#BOUGHT} changes anything
+     */
+    @Override
+    public PurchaseResult buy(String buyerName, String itemName) {
+        User buyer = getUser(buyerName);
+        if (buyer == null) {
+            return PurchaseResult.UNKNOWN_BUYER;
+        }
+        boolean sawOwn = false;
+        boolean sawClaimed = false;
+        for (Item candidate : listedByName.get(itemName)) {
+            if (buyerName.equals(candidate.getSeller())) {
+                sawOwn = true;
+                continue;
+            }
+            if (!candidate.compareAndSetState(Item.State.LISTED, Item.State.SOLD)) {
+                // Another buyer got here first, or the seller just unlisted it
+                sawClaimed |= candidate.getState() == Item.State.SOLD;
+                continue;
+            }
+            User seller = getUser(candidate.getSeller());
+            PurchaseResult result = seller == null ? PurchaseResult.NOT_FOUND
+                    : completePurchase(buyer, seller, candidate);
+            if (result != PurchaseResult.NOT_FOUND) {
+                return result;
+            }
+            // The seller was deleted along with the listing; try the next one
+        }
+        if (sawClaimed) {
+            return PurchaseResult.SOLD_OUT;
+        }
+        return sawOwn ? PurchaseResult.OWN_ITEM : PurchaseResult.NOT_FOUND;
+    }
+
+    /**
+     * Pays the seller and hands the item to the buyer. The caller has moved the
+     * item to SOLD, so no one else can buy, unlist or relist it meanwhile. Both
+     * users' stripes are held, in stripe order, while the inventories change;
+     * the money itself moves with a lock-free debit and credit in cents. On
+     * failure the item goes back to LISTED.
+     * @param buyer the User buying the item
+     * @param seller the User selling the item
+     * @param boughtItem the claimed Item
+     * @return BOUGHT, INSUFFICIENT_FUNDS, or NOT_FOUND if the listing is gone
+     */
+    PurchaseResult completePurchase(User buyer, User seller, Item boughtItem) {
+        long lsn = 0;
+        locks.lock(buyer.getUsername(), seller.getUsername());
+        try {
+            PurchaseResult result = settle(buyer, seller, boughtItem, this, this);
+            if (result == PurchaseResult.BOUGHT) {
+                lsn = log(JournalRecord.transaction(buyer.getUsername(), seller.getUsername(),
+                        boughtItem.getId()));
+            }
+            return result;
+        } finally {
+            locks.unlock(buyer.getUsername(), seller.getUsername());
+            listingSearch.flush();
+            awaitDurable(lsn);
+        }
+    }
+
+    /**
+     * Moves the money and a claimed item from the seller, who lives in
+     * {@code from}, to the buyer, who lives in {@code to}; the two are the
+     * same database unless the purchase crosses shards. The caller holds both
+     * users' stripes, and calls {@link #flushSearch()} on {@code from} once it
+     * has released them. On failure the item goes back to LISTED.
+     * @return BOUGHT, INSUFFICIENT_FUNDS, or NOT_FOUND if the listing is gone
+     */
+    static PurchaseResult settle(User buyer, User seller, Item boughtItem, Database1 from, Database1 to) {
+        // The seller may have been deleted, taking the listing with them
+        if (!seller.getUsername().equals(boughtItem.getSeller()) || from.getUser(seller.getUsername()) != seller) {
+            boughtItem.compareAndSetState(Item.State.SOLD, Item.State.LISTED);
+            return PurchaseResult.NOT_FOUND;
+        }
+        if (!User.transfer(buyer, seller, boughtItem.getCostCents())) {
+            // Buyer could not cover the price; nothing was moved
+            boughtItem.compareAndSetState(Item.State.SOLD, Item.State.LISTED);
+            return PurchaseResult.INSUFFICIENT_FUNDS;
+        }
+        // Remove from marketplace listings while they still sort by the old seller
+        from.items.remove(boughtItem.getId());
+        from.listedByName.remove(boughtItem);
+        from.listingOrder.remove(boughtItem);
+        from.listingSearch.remove(boughtItem);
+        from.catalog.removed(boughtItem);
+        if (from != to) {
+            from.allItems.remove(boughtItem.getId());
+            to.allItems.put(boughtItem.getId(), boughtItem);
+        }
+        // Transfer ownership
+        buyer.addOwnedItem(boughtItem);
+        seller.removeOwnedItem(boughtItem);
+        boughtItem.setSeller(buyer.getUsername());
+        // The buyer can now find, reprice or delete it from their inventory
+        to.ownedItems.add(boughtItem);
+        boughtItem.compareAndSetState(Item.State.SOLD, Item.State.OWNED);
+        return PurchaseResult.BOUGHT;
+    }
+
+    /** Locks the stripe of one user, for an operation that spans shards. */
+    void lockUser(String username) {
+        locks.lock(username);
+    }
+
+    /** Releases a stripe taken with {@link #lockUser}. */
+    void unlockUser(String username) {
+        locks.unlock(username);
+    }
+
+    /** Applies queued search index changes; call with no stripe held. */
+    void flushSearch() {
+        listingSearch.flush();
+    }
+
+    /** @return the listings named {@code name}, ignoring case, some of which may be claimed already */
+    Item[] listingsNamed(String name) {
+        return listedByName.get(name);
+    }
+
+    /** @return an owned, unlisted item named {@code name}, or null */
+    Item firstOwned(String name) {
+        return ownedItems.first(name);
+    }
+
+    /**
+     * Stores a message that crosses shards in this shard's copy of the
+     * conversation and in the history of the participant who lives here.
+     * Caller holds that participant's stripe.
+     */
+    void storeMessage(Message m, String participant) {
+        conversations.computeIfAbsent(conversationKey(m.getSender(), m.getReceiver()), k -> new MessageLog()).append(m);
+        userMessages.computeIfAbsent(participant, k -> new MessageLog()).append(m);
+    }
+
+    /** @return live view of every user, for snapshots */
+    Collection<User> userRecords() {
+        return users.values();
+    }
+
+    /** @return every listed or owned item in id order, for snapshots */
+    ArrayList<Item> itemRecords() {
+        ArrayList<Item> all = new ArrayList<>(allItems.values());
+        all.sort(Comparator.comparingLong(Item::getId));
+        return all;
+    }
+
+    /** @return every message in the order it was sent, for snapshots */
+    ArrayList<Message> messagesInOrder() {
+        ArrayList<Message> all = getMessages();
+        all.sort(Comparator.comparingLong(Message::getSequence));
+        return all;
+    }
+
+    long peekNextItemId() {
+        return nextItemId.get();
+    }
+
+    long peekNextMessageSequence() {
+        return nextMessageSequence.get();
+    }
+
+    /** Adds a user loaded from a snapshot. */
+    void restoreUser(User user) {
+        users.put(user.getUsername(), user);
+    }
+
+    /** Adds an item loaded from a snapshot to its owner's inventory or the marketplace. */
+    void restoreItem(Item item, boolean listed) {
+        User owner = getUser(item.getSeller());
+        if (owner == null) {
+            return;
+        }
+        allItems.put(item.getId(), item);
+        if (listed) {
+            item.setSellable(true);
+            items.put(item.getId(), item);
+            listedByName.add(item);
+            listingOrder.add(item);
+            listingSearch.add(item);
+            listingSearch.flush();
+            catalog.listed(item);
         } else {
-            // Adjust balances
-            buyer.setBalance(buyer.getBalance() - boughtItem.getCost());
-            seller.setBalance(seller.getBalance() + boughtItem.getCost());
-            // Transfer ownership
-            buyer.addOwnedItem(boughtItem);
-            seller.removeOwnedItem(boughtItem);
-            // Mark item as no longer sellable and update seller name
-            boughtItem.setSellable(false);
-            boughtItem.setSeller(buyer.getUsername());
-            // Remove from marketplace listings
-            items.remove(boughtItem);
+            owner.addOwnedItem(item);
+            ownedItems.add(item);
+        }
+    }
+
+    /** Appends a message loaded from a snapshot; messages arrive in send order. */
+    void restoreMessage(Message m) {
+        conversations.computeIfAbsent(conversationKey(m.getSender(), m.getReceiver()), k -> new MessageLog()).append(m);
+        userMessages.computeIfAbsent(m.getSender(), k -> new MessageLog()).append(m);
+        if (!m.getSender().equals(m.getReceiver())) {
+            userMessages.computeIfAbsent(m.getReceiver(), k -> new MessageLog()).append(m);
+        }
+    }
+
+    /** Restores the id counters saved in a snapshot. */
+    void restoreCounters(long itemId, long messageSequence) {
+        nextItemId.accumulateAndGet(itemId, Math::max);
+        nextMessageSequence.accumulateAndGet(messageSequence, Math::max);
+    }
+
+    /**
+     * Removes all users, items, and messages. Used to reset state between tests.
+     */
+    void clear() {
+        // Clients syncing the catalog must see the listings go
+        for (Item item : items.values()) {
+            catalog.removed(item);
         }
+        users.clear();
+        items.clear();
+        conversations.clear();
+        userMessages.clear();
+        listedByName.clear();
+        listingOrder.clear();
+        listingSearch.clear();
+        ownedItems.clear();
+        allItems.clear();
     }
 }
@@ -10,14 +10,29 @@ import java.util.ArrayList;
 public interface DatabaseInterface {
     boolean addUser(String username, String password, double balance, ArrayList<String> messageUser);
     boolean login(String username, String password);
+    User getUser(String username);
     boolean deleteUser(String username, String password);
     boolean addItem(String name, double cost, String sellerUsername);
+    boolean sellItem(String username, String itemName);
+    boolean unsellItem(String username, String itemName);
+    ArrayList<Item> getItems();
+    boolean changeItemPrice(String owner, Item item, double newPrice);
     boolean deleteItem(String name);
     Item searchOwnedItem(String name);
     Item searchSoldItem(String name);
-    void sendMessage(String sender, String receiver, String message);
+    Message sendMessage(String sender, String receiver, String message);
     ArrayList<Message> getMessages();
     ArrayList<Message> getSingleUserMessage(String username);
+    ArrayList<String> getMessageUserList(String username);
+    ArrayList<Item> getOwnedItems(String username);
     ArrayList<Message> getSenderToReceiverMessage(String sender, String receiver);
     void processTransaction(User buyer, User seller, Item item);
+    PurchaseResult buy(String buyer, String itemName);
+    ListingIndex.Page getItemsPage(ListingIndex.Sort sort, String cursor, int limit);
+    ListingIndex.Page findItems(long minCents, long maxCents, String seller, String cursor, int limit);
+    ArrayList<ItemSearchIndex.Hit> searchItems(String query, int limit);
+    long getCatalogVersion();
+    CatalogLog.Delta getCatalogChangesSince(long version);
+    long getLockAcquisitions();
+    LatencyHistogram getLockWaits();
 }
@@ -1,3 +1,5 @@
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * Phase 2 of CS180 Group Project
  *
@@ -6,18 +8,36 @@
  * Represents an item in the marketplace, tracking its name, price, owner,
  * and whether it's listed for sale.
  *
+ * <p>An item moves between {@link State#OWNED}, {@link State#LISTED} and
+ * {@link State#SOLD}. A purchase claims a listing by compare-and-set from
+ * LISTED to SOLD, so exactly one buyer wins it without taking a lock.</p>
+ *
  * @author alexyan06, shivensaxena28, KayshavBhardwaj
  * @version April 6, 2025
  */
 public class Item implements ItemInterface {
+    /**
+     * Where an item is in its life.
+     */
+    public enum State {
+        /** In its owner's inventory. */
+        OWNED,
+        /** Listed in the marketplace. */
+        LISTED,
+        /** Claimed by a buyer; becomes OWNED by them once the purchase completes. */
+        SOLD
+    }
+
+    /** Unique id assigned by the database; 0 for items created outside it. */
+    private final long id;
     /** The display name of this item. */
-    private String name;
-    /** The monetary cost of this item in dollars. */
-    private double cost;
+    private volatile String name;
+    /** The monetary cost of this item in cents. */
+    private volatile long costCents;
     /** Username of the current owner or seller of this item. */
-    private String seller;
-    /** Flag indicating if the item is currently listed for sale. */
-    private boolean sellable;  // new: true if listed for sale
+    private volatile String seller;
+    /** Current state; LISTED means the item is for sale. */
+    private final AtomicReference<State> state = new AtomicReference<>(State.OWNED);
 
     /**
      * Constructs a new Item with the given name, cost, and seller.
@@ -28,10 +48,29 @@ public class Item implements ItemInterface {
      * @param seller  the username of the item's owner
      */
     public Item(String name, double cost, String seller) {
+        this(0, name, cost, seller);
+    }
+
+    /**
+     * Constructs a new Item with a database-assigned id.
+     *
+     * @param id      unique id of the item
+     * @param name    the display name of the item
+     * @param cost    the initial price of the item
+     * @param seller  the username of the item's owner
+     */
+    public Item(long id, String name, double cost, String seller) {
+        this.id = id;
         this.name = name;
-        this.cost = cost;
+        this.costCents = Money.toCents(cost);
         this.seller = seller;
-        this.sellable = false;
+    }
+
+    /**
+     * @return the unique id of this item
+     */
+    public long getId() {
+        return id;
     }
 
     @Override
@@ -41,7 +80,14 @@ public class Item implements ItemInterface {
 
     @Override
     public double getCost() {
-        return cost;
+        return Money.toDollars(costCents);
+    }
+
+    /**
+     * @return the cost of this item in cents
+     */
+    public long getCostCents() {
+        return costCents;
     }
 
     @Override
@@ -56,7 +102,14 @@ public class Item implements ItemInterface {
 
     @Override
     public void setCost(double cost) {
-        this.cost = cost;
+        this.costCents = Money.toCents(cost);
+    }
+
+    /**
+     * @param cents the new cost of this item in cents
+     */
+    public void setCostCents(long cents) {
+        this.costCents = cents;
     }
 
     @Override
@@ -68,7 +121,7 @@ public class Item implements ItemInterface {
      * @return whether this item is currently listed for sale.
      */
     public boolean isSellable() {
-        return sellable;
+        return state.get() == State.LISTED;
     }
 
     /**
@@ -77,7 +130,25 @@ public class Item implements ItemInterface {
      * @param sellable new listed status of the item
      */
     public void setSellable(boolean sellable) {
-        this.sellable = sellable;
+        state.set(sellable ? State.LISTED : State.OWNED);
+    }
+
+    /**
+     * @return the current state of this item
+     */
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * Moves the item to {@code next} only if it is still in {@code expected}.
+     *
+     * @param expected the state the caller saw
+     * @param next     the state to move to
+     * @return true if the transition happened
+     */
+    public boolean compareAndSetState(State expected, State next) {
+        return state.compareAndSet(expected, next);
     }
 
     @Override
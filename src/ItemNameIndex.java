@@ -0,0 +1,126 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Maps a case-insensitive item name to the items that currently carry it. Each
+ * bucket is a small array that is replaced whole on every update. Lookups never
+ * lock and always see a complete bucket, and searching by name costs O(1) no
+ * matter how large the catalog is.
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class ItemNameIndex {
+    /** Shared empty bucket returned for unknown names. */
+    private static final Item[] EMPTY = new Item[0];
+
+    /** Normalized name to the items with that name, oldest first. */
+    private final ConcurrentHashMap<String, Item[]> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Normalizes a name so lookups ignore case.
+     * @param name raw item name
+     * @return the index key for the name
+     */
+    public static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Adds an item under its current name.
+     * @param item the item to index
+     */
+    public void add(Item item) {
+        buckets.compute(normalize(item.getName()), (key, bucket) -> {
+            if (bucket == null) {
+                return new Item[] {item};
+            }
+            Item[] grown = Arrays.copyOf(bucket, bucket.length + 1);
+            grown[bucket.length] = item;
+            return grown;
+        });
+    }
+
+    /**
+     * Removes an item from the bucket for its current name.
+     * @param item the item to remove
+     * @return true if the item was indexed
+     */
+    public boolean remove(Item item) {
+        boolean[] removed = new boolean[1];
+        buckets.computeIfPresent(normalize(item.getName()), (key, bucket) -> {
+            for (int i = 0; i < bucket.length; i++) {
+                if (bucket[i] == item) {
+                    removed[0] = true;
+                    if (bucket.length == 1) {
+                        return null;
+                    }
+                    Item[] shrunk = new Item[bucket.length - 1];
+                    System.arraycopy(bucket, 0, shrunk, 0, i);
+                    System.arraycopy(bucket, i + 1, shrunk, i, bucket.length - i - 1);
+                    return shrunk;
+                }
+            }
+            return bucket;
+        });
+        return removed[0];
+    }
+
+    /**
+     * @param item the item to check
+     * @return true if the item is currently indexed
+     */
+    public boolean contains(Item item) {
+        for (Item i : get(item.getName())) {
+            if (i == item) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the items whose name matches ignoring case. The returned array
+     * must not be modified.
+     * @param name item name to look up
+     * @return matching items, oldest first; never null
+     */
+    public Item[] get(String name) {
+        if (name == null) {
+            return EMPTY;
+        }
+        Item[] bucket = buckets.get(normalize(name));
+        return bucket == null ? EMPTY : bucket;
+    }
+
+    /**
+     * @param name item name to look up
+     * @return the oldest item whose name matches ignoring case, or null
+     */
+    public Item first(String name) {
+        Item[] bucket = get(name);
+        return bucket.length == 0 ? null : bucket[0];
+    }
+
+    /**
+     * @return a snapshot of every indexed item
+     */
+    public ArrayList<Item> values() {
+        ArrayList<Item> all = new ArrayList<>();
+        for (Item[] bucket : buckets.values()) {
+            all.addAll(Arrays.asList(bucket));
+        }
+        return all;
+    }
+
+    /** Removes every item from the index. */
+    public void clear() {
+        buckets.clear();
+    }
+}
@@ -0,0 +1,663 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Full-text search over the names of listed items, ignoring case. A query
+ * returns, best first:
+ * <ol>
+ *     <li>listings whose name is the query,</li>
+ *     <li>names starting with the query, from a sorted name index,</li>
+ *     <li>names containing the query, from a trigram inverted index,</li>
+ *     <li>if none of those match, names within one or two edits of the query,
+ *         found through the query's rarest trigrams and then checked by edit
+ *         distance.</li>
+ * </ol>
+ * Each distinct name is a term with a small id; the inverted index maps each
+ * trigram to the ids of the terms containing it, in increasing order. A term
+ * whose last listing goes stays in the trigram lists and is skipped by
+ * queries. The lists are rebuilt once such dead terms outnumber live ones.
+ *
+ * <p>Queries take no lock. The tables they read are concurrent maps, lists
+ * that one writer only appends to, and listing arrays that are replaced
+ * rather than changed, so a query sees every change made before it started
+ * and possibly some made while it runs. {@link #add} and {@link #remove} only
+ * queue a change, which Database1 does while holding its user locks;
+ * {@link #flush} applies the queue, one thread at a time, and Database1 calls
+ * it once those locks are released. A rebuild runs on its own thread: it
+ * builds new tables from the live terms without holding anything, then
+ * replays the changes made meanwhile and publishes the new tables.</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class ItemSearchIndex {
+    /**
+     * How a hit matched the query, best first.
+     */
+    public enum Match { EXACT, PREFIX, SUBSTRING, FUZZY }
+
+    /**
+     * One search result.
+     * @param item the listing
+     * @param match how its name matched
+     * @param distance edits between its name and the query; 0 unless fuzzy
+     */
+    public record Hit(Item item, Match match, int distance) {
+    }
+
+    /** Marks the start and end of a name, so trigrams also capture prefixes and suffixes. */
+    private static final char START = '\u0002';
+    private static final char END = '\u0003';
+    /** Dead terms tolerated before the trigram lists are rebuilt. */
+    private static final int MIN_DEAD_FOR_REBUILD = 1024;
+    private static final Item[] NO_LISTINGS = new Item[0];
+
+    /** One distinct normalized name and its current listings. */
+    private static final class Term {
+        final int id;
+        final String key;
+        /** Replaced on every change and never modified, so queries can read it unlocked. */
+        volatile Item[] listings = NO_LISTINGS;
+
+        Term(int id, String key) {
+            this.id = id;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Growable list of term ids, in increasing order. Only the writer appends;
+     * a query reads the size first and then no further than it.
+     */
+    private static final class IdList {
+        volatile int[] ids = new int[4];
+        volatile int size;
+
+        void add(int id) {
+            int n = size;
+            int[] a = ids;
+            if (n == a.length) {
+                a = Arrays.copyOf(a, n * 2);
+                ids = a;
+            }
+            a[n] = id;
+            size = n + 1;
+        }
+
+        Postings read() {
+            int n = size;
+            return new Postings(ids, n);
+        }
+    }
+
+    /** The ids a query saw in one list: the first {@code size} of {@code ids}. */
+    private record Postings(int[] ids, int size) {
+    }
+
+    /** Terms by id, appended to like {@link IdList}. */
+    private static final class TermList {
+        volatile Term[] terms = new Term[16];
+        volatile int size;
+
+        void add(Term term) {
+            int n = size;
+            Term[] a = terms;
+            if (n == a.length) {
+                a = Arrays.copyOf(a, n * 2);
+                terms = a;
+            }
+            a[n] = term;
+            size = n + 1;
+        }
+
+        /** Valid for any id found in a trigram list, which is added after its term. */
+        Term get(int id) {
+            return terms[id];
+        }
+    }
+
+    /** Everything queries read. A rebuild replaces it as a whole. */
+    private static final class Tables {
+        final TermList terms = new TermList();
+        final ConcurrentHashMap<String, Term> byKey = new ConcurrentHashMap<>();
+        /** Live terms in name order, for prefix queries. */
+        final ConcurrentSkipListMap<String, Term> sortedKeys = new ConcurrentSkipListMap<>();
+        /** Trigram to the terms containing it. */
+        final ConcurrentHashMap<Long, IdList> grams = new ConcurrentHashMap<>();
+        // Writer only
+        int liveTerms;
+        int deadTerms;
+
+        boolean needsRebuild() {
+            return deadTerms >= MIN_DEAD_FOR_REBUILD && deadTerms > liveTerms;
+        }
+    }
+
+    /** Scratch for counting shared trigrams, borrowed from {@link #spareCounts} per query. */
+    private static final class Counts {
+        int[] count = new int[0];
+        int[] touched = new int[16];
+        int touchedSize;
+    }
+
+    /** A queued listing change, keyed by the name the listing had when it was queued. */
+    private record Change(Item item, String key, boolean added) {
+    }
+
+    /** Scratch buffers kept between fuzzy queries; queries run on short-lived threads. */
+    private static final int SPARE_COUNTS = 16;
+
+    private volatile Tables tables = new Tables();
+    private final ConcurrentLinkedQueue<Change> pending = new ConcurrentLinkedQueue<>();
+    /** Held while applying changes and publishing tables; never by queries. */
+    private final ReentrantLock writeLock = new ReentrantLock();
+    /** Changes applied since the running rebuild started, or null if none is running. */
+    private ArrayList<Change> changesDuringRebuild;
+    private boolean rebuilding;
+    /** Bumped by {@link #clear()}, so a rebuild that started before it is thrown away. */
+    private long generation;
+    private final ArrayBlockingQueue<Counts> spareCounts = new ArrayBlockingQueue<>(SPARE_COUNTS);
+
+    /**
+     * Queues a listing to become searchable at the next {@link #flush()}.
+     * @param item a listing to make searchable
+     */
+    public void add(Item item) {
+        pending.add(new Change(item, ItemNameIndex.normalize(item.getName()), true));
+    }
+
+    /**
+     * Queues a listing to stop being found at the next {@link #flush()}.
+     * @param item the listing
+     */
+    public void remove(Item item) {
+        pending.add(new Change(item, ItemNameIndex.normalize(item.getName()), false));
+    }
+
+    /**
+     * Applies every queued change. When it returns, the changes this thread
+     * queued are visible to queries. Call without holding locks other
+     * threads need: it waits for any other thread applying changes.
+     */
+    public void flush() {
+        // Changes are only taken off the queue with the lock held, so an empty
+        // queue and a free lock mean everything queued so far is applied
+        if (pending.isEmpty() && !writeLock.isLocked()) {
+            return;
+        }
+        boolean startRebuild = false;
+        writeLock.lock();
+        try {
+            Tables t = tables;
+            Change change;
+            while ((change = pending.poll()) != null) {
+                apply(t, change);
+                if (changesDuringRebuild != null) {
+                    changesDuringRebuild.add(change);
+                }
+            }
+            if (!rebuilding && t.needsRebuild()) {
+                rebuilding = true;
+                startRebuild = true;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        if (startRebuild) {
+            Thread.ofVirtual().name("SearchIndexRebuild").start(this::rebuild);
+        }
+    }
+
+    /** Removes every listing, including queued ones. */
+    public void clear() {
+        writeLock.lock();
+        try {
+            pending.clear();
+            tables = new Tables();
+            generation++;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** @return terms in the current tables, live or dead */
+    int termCount() {
+        return tables.terms.size;
+    }
+
+    /** Applies one change. Caller holds the write lock, or owns unpublished tables. */
+    private static void apply(Tables t, Change change) {
+        if (change.added()) {
+            insert(t, change.item(), change.key());
+        } else {
+            delete(t, change.item(), change.key());
+        }
+    }
+
+    /** Adds a listing unless it is there already, so replaying a change twice is harmless. */
+    private static void insert(Tables t, Item item, String key) {
+        Term term = t.byKey.get(key);
+        boolean existed = term != null;
+        if (term == null) {
+            term = new Term(t.terms.size, key);
+            t.terms.add(term);
+            indexGrams(t, term);
+            t.byKey.put(key, term);
+        }
+        Item[] listings = term.listings;
+        for (Item listing : listings) {
+            if (listing == item) {
+                return;
+            }
+        }
+        Item[] grown = Arrays.copyOf(listings, listings.length + 1);
+        grown[listings.length] = item;
+        term.listings = grown;
+        if (listings.length == 0) {
+            if (existed) {
+                t.deadTerms--;
+            }
+            t.liveTerms++;
+            t.sortedKeys.put(key, term);
+        }
+    }
+
+    /** Removes a listing if it is there, like {@link #insert}. */
+    private static void delete(Tables t, Item item, String key) {
+        Term term = t.byKey.get(key);
+        if (term == null) {
+            return;
+        }
+        Item[] listings = term.listings;
+        int at = -1;
+        for (int i = 0; i < listings.length; i++) {
+            if (listings[i] == item) {
+                at = i;
+                break;
+            }
+        }
+        if (at < 0) {
+            return;
+        }
+        if (listings.length == 1) {
+            t.sortedKeys.remove(key);
+            t.liveTerms--;
+            t.deadTerms++;
+            term.listings = NO_LISTINGS;
+            return;
+        }
+        Item[] shrunk = new Item[listings.length - 1];
+        System.arraycopy(listings, 0, shrunk, 0, at);
+        System.arraycopy(listings, at + 1, shrunk, at, shrunk.length - at);
+        term.listings = shrunk;
+    }
+
+    /**
+     * Combines the results of the same search in several indexes into what
+     * one index holding all their listings would have returned. Each index's
+     * hits are its best, so the best of all of them are among them. Typo
+     * matches are dropped if any index matched the text itself, as a single
+     * index would not have looked for typos then.
+     * @param query the query every index was searched for
+     * @param results each index's hits
+     * @param limit the limit every index was searched with
+     * @return the combined hits, best first
+     */
+    public static ArrayList<Hit> merge(String query, List<ArrayList<Hit>> results, int limit) {
+        ArrayList<Hit> all = new ArrayList<>();
+        for (ArrayList<Hit> hits : results) {
+            all.addAll(hits);
+        }
+        if (all.stream().anyMatch(h -> h.match() != Match.FUZZY)) {
+            all.removeIf(h -> h.match() == Match.FUZZY);
+        }
+        String q = ItemNameIndex.normalize(query.trim());
+        // The order search produces: exact, then prefixes by name, then substrings by
+        // position and length, then typos by distance; ties by name
+        Comparator<Hit> rank = Comparator.<Hit>comparingInt(h -> h.match().ordinal())
+                .thenComparingInt(h -> h.match() == Match.SUBSTRING ? key(h).indexOf(q) : 0)
+                .thenComparingInt(h -> h.match() == Match.SUBSTRING ? key(h).length() : 0)
+                .thenComparingInt(Hit::distance)
+                .thenComparing(ItemSearchIndex::key);
+        all.sort(rank);
+        if (all.size() > limit) {
+            all.subList(limit, all.size()).clear();
+        }
+        return all;
+    }
+
+    private static String key(Hit hit) {
+        return ItemNameIndex.normalize(hit.item().getName());
+    }
+
+    /**
+     * Searches listed names for {@code query}, ignoring case. Takes no lock.
+     * @param query the text to look for
+     * @param limit most hits to return
+     * @return hits, best first: exact, then prefix, then substring; fuzzy only if there are none of those
+     */
+    public ArrayList<Hit> search(String query, int limit) {
+        String q = ItemNameIndex.normalize(query.trim());
+        ArrayList<Hit> hits = new ArrayList<>();
+        if (q.isEmpty() || limit < 1) {
+            return hits;
+        }
+        Tables t = tables;
+        HashSet<Term> seen = new HashSet<>();
+        Term exact = t.byKey.get(q);
+        if (exact != null) {
+            addHits(hits, seen, exact, Match.EXACT, 0, limit);
+        }
+        // Names sort right after their prefix, so the walk stops at the first non-match
+        for (Map.Entry<String, Term> e : t.sortedKeys.tailMap(q, false).entrySet()) {
+            if (hits.size() >= limit || !e.getKey().startsWith(q)) {
+                break;
+            }
+            addHits(hits, seen, e.getValue(), Match.PREFIX, 0, limit);
+        }
+        if (hits.size() < limit && q.length() >= 3) {
+            for (Term term : substringMatches(t, q, seen, limit - hits.size())) {
+                addHits(hits, seen, term, Match.SUBSTRING, 0, limit);
+            }
+        }
+        // Typos are only looked for when the text itself matched nothing
+        if (hits.isEmpty()) {
+            int maxEdits = q.length() <= 4 ? 1 : 2;
+            for (int[] match : fuzzyMatches(t, q, maxEdits, seen, limit - hits.size())) {
+                addHits(hits, seen, t.terms.get(match[0]), Match.FUZZY, match[1], limit);
+            }
+        }
+        return hits;
+    }
+
+    private static void addHits(ArrayList<Hit> hits, HashSet<Term> seen, Term term, Match match, int distance,
+                                int limit) {
+        Item[] listings = term.listings;
+        if (listings.length == 0 || !seen.add(term)) {
+            return;
+        }
+        for (Item item : listings) {
+            if (hits.size() >= limit) {
+                return;
+            }
+            hits.add(new Hit(item, match, distance));
+        }
+    }
+
+    /**
+     * Live terms containing {@code q}, earliest occurrence first, then shortest.
+     * Candidates are the terms holding every trigram of {@code q}.
+     */
+    private static ArrayList<Term> substringMatches(Tables t, String q, HashSet<Term> seen, int limit) {
+        Postings[] lists = new Postings[q.length() - 2];
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            IdList list = t.grams.get(gram(q.charAt(i), q.charAt(i + 1), q.charAt(i + 2)));
+            if (list == null) {
+                return new ArrayList<>();
+            }
+            lists[i] = list.read();
+        }
+        // Walk the shortest list and look the ids up in the others
+        Arrays.sort(lists, Comparator.comparingInt(Postings::size));
+        int[] positions = new int[lists.length];
+        // Rank is the match position, then the name length, packed so the heap compares longs
+        PriorityQueue<long[]> best = new PriorityQueue<>(limit + 1,
+                Comparator.<long[]>comparingLong(c -> c[0]).thenComparing(c -> t.terms.get((int) c[1]).key)
+                        .reversed());
+        Postings shortest = lists[0];
+        candidates:
+        for (int n = 0; n < shortest.size(); n++) {
+            int id = shortest.ids()[n];
+            for (int l = 1; l < lists.length; l++) {
+                int p = Arrays.binarySearch(lists[l].ids(), positions[l], lists[l].size(), id);
+                if (p < 0) {
+                    positions[l] = -p - 1;
+                    continue candidates;
+                }
+                positions[l] = p;
+            }
+            Term term = t.terms.get(id);
+            int at = term.key.indexOf(q);
+            if (at < 0 || term.listings.length == 0 || seen.contains(term)) {
+                continue;
+            }
+            long rank = (long) at << 32 | term.key.length();
+            if (best.size() == limit && rank > best.peek()[0]) {
+                continue;
+            }
+            best.add(new long[] {rank, id});
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        ArrayList<Term> out = new ArrayList<>(best.size());
+        for (long[] c : drain(best)) {
+            out.add(t.terms.get((int) c[1]));
+        }
+        return out;
+    }
+
+    /**
+     * Live terms within {@code maxEdits} of {@code q}, closest first, as
+     * {term id, distance} pairs. An edit changes at most three trigrams, so a
+     * match shares all but {@code 3 * maxEdits} of the query's trigrams, and
+     * must therefore appear in at least one of the {@code 3 * maxEdits + 1}
+     * rarest of them. Only those lists are read; each term found there is
+     * then checked by edit distance.
+     */
+    private ArrayList<int[]> fuzzyMatches(Tables t, String q, int maxEdits, HashSet<Term> seen, int limit) {
+        Counts c = spareCounts.poll();
+        if (c == null) {
+            c = new Counts();
+        }
+        try {
+            return fuzzyMatches(t, q, maxEdits, seen, limit, c);
+        } finally {
+            // Counts come back zeroed; a full pool just drops this one
+            spareCounts.offer(c);
+        }
+    }
+
+    private static ArrayList<int[]> fuzzyMatches(Tables t, String q, int maxEdits, HashSet<Term> seen, int limit,
+                                                 Counts c) {
+        // Terms added after this are not counted; the query may miss them, as if it ran earlier
+        int termCount = t.terms.size;
+        if (c.count.length < termCount) {
+            c.count = new int[Math.max(termCount, c.count.length * 2)];
+        }
+        HashSet<Long> queryGrams = paddedGrams(q);
+        ArrayList<Postings> lists = new ArrayList<>();
+        for (Long g : queryGrams) {
+            IdList list = t.grams.get(g);
+            if (list != null) {
+                lists.add(list.read());
+            }
+        }
+        lists.sort(Comparator.comparingInt(Postings::size));
+        int needed = Math.max(1, queryGrams.size() - 3 * maxEdits);
+        // A match missing from every one of the rarest lists could share at most needed - 1 grams
+        int rare = Math.max(0, lists.size() - needed + 1);
+        for (int l = 0; l < rare; l++) {
+            Postings list = lists.get(l);
+            for (int n = 0; n < list.size(); n++) {
+                int id = list.ids()[n];
+                if (id < termCount && c.count[id]++ == 0) {
+                    if (c.touchedSize == c.touched.length) {
+                        c.touched = Arrays.copyOf(c.touched, c.touchedSize * 2);
+                    }
+                    c.touched[c.touchedSize++] = id;
+                }
+            }
+        }
+        Comparator<int[]> rank = Comparator.<int[]>comparingInt(m -> m[1])
+                .thenComparing(m -> t.terms.get(m[0]).key);
+        PriorityQueue<int[]> best = new PriorityQueue<>(rank.reversed());
+        for (int n = 0; n < c.touchedSize; n++) {
+            int id = c.touched[n];
+            int shared = c.count[id];
+            c.count[id] = 0;
+            // Look the candidate up in the common lists until it has enough or cannot get there
+            for (int l = rare; l < lists.size() && shared < needed && shared + lists.size() - l >= needed; l++) {
+                Postings list = lists.get(l);
+                if (Arrays.binarySearch(list.ids(), 0, list.size(), id) >= 0) {
+                    shared++;
+                }
+            }
+            Term term = t.terms.get(id);
+            if (shared < needed || term.listings.length == 0 || seen.contains(term)
+                    || Math.abs(term.key.length() - q.length()) > maxEdits) {
+                continue;
+            }
+            int d = editDistance(q, term.key, maxEdits);
+            if (d <= maxEdits) {
+                best.add(new int[] {id, d});
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        }
+        c.touchedSize = 0;
+        return drain(best);
+    }
+
+    private static <T> ArrayList<T> drain(PriorityQueue<T> worstFirst) {
+        ArrayList<T> out = new ArrayList<>(worstFirst.size());
+        while (!worstFirst.isEmpty()) {
+            out.add(worstFirst.poll());
+        }
+        Collections.reverse(out);
+        return out;
+    }
+
+    /**
+     * Levenshtein distance, giving up once it must exceed {@code max}. Only the
+     * diagonal band of width {@code 2 * max + 1} is computed; every cell
+     * outside it is already more than {@code max}.
+     * @return the distance, or {@code max + 1} if it is larger than {@code max}
+     */
+    static int editDistance(String a, String b, int max) {
+        int n = a.length();
+        int m = b.length();
+        int over = max + 1;
+        if (Math.abs(n - m) > max) {
+            return over;
+        }
+        int[] prev = new int[m + 2];
+        int[] cur = new int[m + 2];
+        for (int j = 0; j <= m; j++) {
+            prev[j] = Math.min(j, over);
+        }
+        prev[m + 1] = over;
+        for (int i = 1; i <= n; i++) {
+            int lo = Math.max(1, i - max);
+            int hi = Math.min(m, i + max);
+            cur[0] = Math.min(i, over);
+            cur[lo - 1] = lo == 1 ? cur[0] : over;
+            int rowMin = cur[lo - 1];
+            for (int j = lo; j <= hi; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int d = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                cur[j] = Math.min(d, over);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            // The next row reads one cell past this band
+            cur[hi + 1] = over;
+            if (rowMin > max) {
+                return over;
+            }
+            int[] swap = prev;
+            prev = cur;
+            cur = swap;
+        }
+        return prev[m];
+    }
+
+    private static void indexGrams(Tables t, Term term) {
+        for (Long g : paddedGrams(term.key)) {
+            t.grams.computeIfAbsent(g, k -> new IdList()).add(term.id);
+        }
+    }
+
+    /**
+     * Drops dead terms and renumbers the live ones, on the rebuild thread.
+     * Changes applied from the start are recorded; the live terms are then
+     * copied and indexed with no lock held, and only replaying the recorded
+     * changes and publishing the result hold the write lock. A copy may or
+     * may not include a recorded change, which is why inserts and deletes
+     * are harmless to repeat.
+     */
+    private void rebuild() {
+        Tables old;
+        long startedAt;
+        writeLock.lock();
+        try {
+            old = tables;
+            startedAt = generation;
+            changesDuringRebuild = new ArrayList<>();
+        } finally {
+            writeLock.unlock();
+        }
+        Tables fresh = new Tables();
+        for (Term live : old.sortedKeys.values()) {
+            Item[] listings = live.listings;
+            if (listings.length == 0) {
+                continue;
+            }
+            Term copy = new Term(fresh.terms.size, live.key);
+            copy.listings = listings;
+            fresh.terms.add(copy);
+            indexGrams(fresh, copy);
+            fresh.byKey.put(copy.key, copy);
+            fresh.sortedKeys.put(copy.key, copy);
+            fresh.liveTerms++;
+        }
+        boolean again;
+        writeLock.lock();
+        try {
+            if (generation == startedAt) {
+                for (Change change : changesDuringRebuild) {
+                    apply(fresh, change);
+                }
+                tables = fresh;
+            }
+            changesDuringRebuild = null;
+            // Removals replayed above may already call for another pass
+            again = tables.needsRebuild();
+            rebuilding = again;
+        } finally {
+            writeLock.unlock();
+        }
+        if (again) {
+            rebuild();
+        }
+    }
+
+    /** @return the distinct trigrams of the name with start and end markers */
+    private static HashSet<Long> paddedGrams(String key) {
+        String padded = START + key + END;
+        HashSet<Long> out = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            out.add(gram(padded.charAt(i), padded.charAt(i + 1), padded.charAt(i + 2)));
+        }
+        return out;
+    }
+
+    private static long gram(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+}
@@ -0,0 +1,127 @@
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableRowSorter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Table model over {@link Listing} rows for the clients' item and inventory
+ * tables. A whole server response replaces the rows at once with
+ * {@link #setRows}, which fires a single change event, and a {@link JTable}
+ * only asks for the cells it paints, so the cost of showing a listing does
+ * not grow with its length the way adding rows to a list model one by one
+ * did. Call it on the event dispatch thread, like any Swing model.
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class ItemTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMNS = {"Item", "Price", "Seller"};
+
+    private final int columns;
+    /** Rows are not serialized; a deserialized model starts empty. */
+    private transient List<Listing> rows = new ArrayList<>();
+
+    /**
+     * @param withSeller whether to show the seller column; inventory rows
+     *                   all belong to the user and have none
+     */
+    public ItemTableModel(boolean withSeller) {
+        this.columns = withSeller ? 3 : 2;
+    }
+
+    /**
+     * Creates a table over a model, sortable by clicking a column header.
+     * Prices sort by amount and names without locale rules, which keeps
+     * sorting a large listing fast.
+     * @param model the rows to show
+     * @return the table
+     */
+    public static JTable createTable(ItemTableModel model) {
+        JTable table = new JTable(model);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.setFillsViewportHeight(true);
+        TableRowSorter<ItemTableModel> sorter = new TableRowSorter<>(model);
+        for (int c = 0; c < model.getColumnCount(); c++) {
+            if (model.getColumnClass(c) == String.class) {
+                sorter.setComparator(c, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER));
+            }
+        }
+        table.setRowSorter(sorter);
+        table.setDefaultRenderer(Long.class, new DefaultTableCellRenderer() {
+            @Override
+            protected void setValue(Object value) {
+                setText(value == null ? "" : "$" + Money.format((Long) value));
+            }
+        });
+        return table;
+    }
+
+    /**
+     * Replaces every row with one change event.
+     * @param listings the new rows; the model keeps the list
+     */
+    public void setRows(List<Listing> listings) {
+        rows = listings;
+        fireTableDataChanged();
+    }
+
+    /** Removes every row. */
+    public void clear() {
+        setRows(new ArrayList<>());
+    }
+
+    /**
+     * @param table a table showing this model
+     * @return the row selected in the table, or null
+     */
+    public Listing selected(JTable table) {
+        int view = table.getSelectedRow();
+        return view < 0 ? null : rows.get(table.convertRowIndexToModel(view));
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        rows = new ArrayList<>();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == 1 ? Long.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Listing listing = rows.get(row);
+        return switch (column) {
+            case 0 -> listing.name();
+            case 1 -> listing.priceCents();
+            default -> listing.seller();
+        };
+    }
+}
@@ -0,0 +1,634 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Binary write-ahead log of {@link JournalRecord}s with group commit. Clients
+ * append records to an in-memory batch. A single writer thread writes out
+ * whatever has piled up and, depending on the {@link SyncPolicy}, fsyncs once
+ * for the whole batch. While one batch is being synced the next one fills up,
+ * so many concurrent clients share each fsync.
+ *
+ * <p>The log is split into segment files named after the first lsn they may
+ * hold. {@link #roll()} closes the current segment so a {@link Snapshotter} can
+ * read it while clients keep appending to the next one. Once a snapshot covers
+ * a segment, the segment is deleted.</p>
+ *
+ * <p>Each frame on disk is {@code [int length][long lsn][payload][int crc32]},
+ * where the checksum covers the lsn and the payload. Replay stops at the first
+ * torn or corrupt frame and truncates the file there.</p>
+ *
+ * <p>Listeners added with {@link #addListener} receive every batch as the
+ * frames written to disk, which is how a {@link ReplicationSource} ships the
+ * log to followers. A follower's journal takes the shipped records with
+ * {@link #appendReplicated}, keeping the primary's lsns.</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class Journal implements Closeable {
+    /** When appended records are forced to stable storage. */
+    public enum SyncPolicy {
+        /** Every mutation waits until an fsync covering it has finished. */
+        EVERY_WRITE,
+        /** Records are fsynced in the background every few milliseconds. */
+        INTERVAL,
+        /** Records are written out promptly and the OS decides when to flush. */
+        OS
+    }
+
+    /** Segment file name prefix; followed by the zero-padded first lsn. */
+    private static final String SEGMENT_PREFIX = "journal-";
+    /** Segment file name suffix. */
+    private static final String SEGMENT_SUFFIX = ".log";
+    /** Frame bytes besides the payload: length, lsn and checksum. */
+    private static final int FRAME_OVERHEAD = 4 + 8 + 4;
+
+    private final Path dir;
+    private final SyncPolicy policy;
+    private final long intervalNanos;
+    private final Thread writer;
+    /** Segment being appended to; only touched by the writer thread once started. */
+    private FileChannel channel;
+
+    /** Guards the batch buffers, lsn counters and roll state below. */
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Signalled when records are appended, a roll is requested, or the journal closes. */
+    private final Condition hasWork = lock.newCondition();
+    /** Signalled when durableLsn advances, a roll finishes, or the writer fails. */
+    private final Condition synced = lock.newCondition();
+
+    /** Frames appended since the writer last took a batch. */
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(64 * 1024);
+    /** Batch currently being written; swapped with {@link #pending}. */
+    private ByteArrayOutputStream writing = new ByteArrayOutputStream(64 * 1024);
+    /** Last lsn handed out. */
+    private long lastLsn;
+    /** Last lsn written to the file. */
+    private long writtenLsn;
+    /** Last lsn known to be on stable storage. */
+    private long durableLsn;
+    /** Number of rolls requested and completed; a roll is pending while they differ. */
+    private long rollsRequested;
+    private long rollsDone;
+    /** Last lsn in the segment closed by the most recent roll. */
+    private long rolledThrough;
+    private boolean closed;
+    private IOException failure;
+    /** Lsns pinned with {@link #pin} and how many readers pinned each; also guards segment deletion. */
+    private final TreeMap<Long, Integer> pins = new TreeMap<>();
+    /** Called by the writer with the frames of each batch once it is written. */
+    private final List<Consumer<byte[]>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Opens the journal in a directory and appends after the last valid record.
+     * @param dir data directory
+     * @param policy when to fsync
+     * @param intervalMillis fsync period for {@link SyncPolicy#INTERVAL}
+     * @param lastLsn lsn of the last valid record, as returned by {@link #replay}
+     * @throws IOException if the segment cannot be opened
+     */
+    public Journal(Path dir, SyncPolicy policy, long intervalMillis, long lastLsn) throws IOException {
+        Files.createDirectories(dir);
+        this.dir = dir;
+        List<Path> segments = segments(dir);
+        Path active = segments.isEmpty() ? segmentPath(dir, lastLsn + 1) : segments.get(segments.size() - 1);
+        this.channel = FileChannel.open(active, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.policy = policy;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMillis));
+        this.lastLsn = lastLsn;
+        this.writtenLsn = lastLsn;
+        this.durableLsn = lastLsn;
+        this.writer = new Thread(this::writeLoop, "JournalWriter");
+        this.writer.start();
+    }
+
+    /**
+     * @return the sync policy of this journal
+     */
+    public SyncPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Adds a record to the current batch and assigns its lsn. Call this while
+     * holding the locks that order the mutation, then call
+     * {@link #awaitDurable(long)} after releasing them.
+     * @param record the mutation to log
+     * @return the lsn assigned to the record
+     */
+    public long append(JournalRecord record) {
+        byte[] body = record.payload();
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            long lsn = ++lastLsn;
+            record.setLsn(lsn);
+            writeFrame(pending, lsn, body);
+            hasWork.signal();
+            return lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a record shipped from a primary, keeping the lsn the primary gave
+     * it, so a follower's log and the primary's number records alike.
+     * @param record the record, with its lsn set
+     * @return the record's lsn
+     * @throws IllegalArgumentException if the lsn is not past the last one here
+     */
+    public long appendReplicated(JournalRecord record) {
+        byte[] body = record.payload();
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            if (record.getLsn() <= lastLsn) {
+                throw new IllegalArgumentException("Lsn " + record.getLsn() + " is not after " + lastLsn);
+            }
+            lastLsn = record.getLsn();
+            writeFrame(pending, lastLsn, body);
+            hasWork.signal();
+            return lastLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the record with the given lsn is durable. Only
+     * {@link SyncPolicy#EVERY_WRITE} waits; the other policies return at once.
+     * @param lsn value returned by {@link #append}; 0 means nothing to wait for
+     */
+    public void awaitDurable(long lsn) {
+        if (lsn <= 0 || policy != SyncPolicy.EVERY_WRITE) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (durableLsn < lsn && failure == null) {
+                synced.awaitUninterruptibly();
+            }
+            if (durableLsn < lsn) {
+                throw new IllegalStateException("Journal write failed", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the last lsn written to the file
+     */
+    public long getWrittenLsn() {
+        lock.lock();
+        try {
+            return writtenLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return the data directory holding the segments */
+    public Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Registers a listener for written batches. It runs on the writer thread
+     * after each batch is written, and synced if the policy syncs every
+     * write, and must return quickly. A listener added while a batch is being
+     * written may miss it, but that batch is then already counted in
+     * {@link #getWrittenLsn()}.
+     * @param listener receives the frames of each batch, in lsn order
+     */
+    public void addListener(Consumer<byte[]> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener a listener passed to {@link #addListener}
+     */
+    public void removeListener(Consumer<byte[]> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Closes the current segment after writing and syncing everything appended
+     * so far, and starts a new one. Appends continue while this waits.
+     * @return the last lsn in the closed segment; everything up to it can be
+     *         read with {@link #replay} without racing the writer
+     * @throws IOException if the writer has failed
+     */
+    public long roll() throws IOException {
+        lock.lock();
+        try {
+            long ticket = ++rollsRequested;
+            hasWork.signal();
+            while (rollsDone < ticket && failure == null && !closed) {
+                synced.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (rollsDone < ticket) {
+                throw new IOException("Journal closed during roll");
+            }
+            return rolledThrough;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Keeps the segments holding records after {@code lsn} on disk until
+     * {@link #unpin} is called with the same lsn, e.g. while a follower reads
+     * them to catch up.
+     * @param lsn last lsn the reader already has
+     */
+    public void pin(long lsn) {
+        synchronized (pins) {
+            pins.merge(lsn, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * @param lsn a value passed to {@link #pin}
+     */
+    public void unpin(long lsn) {
+        synchronized (pins) {
+            pins.computeIfPresent(lsn, (k, n) -> n == 1 ? null : n - 1);
+        }
+    }
+
+    /**
+     * Deletes closed segments whose records all have an lsn at or below the
+     * given one, e.g. because a snapshot now covers them. Segments holding
+     * records after a pinned lsn are kept.
+     * @param lsn highest lsn that no longer needs replaying
+     * @throws IOException if a segment cannot be deleted
+     */
+    public void deleteSegmentsThrough(long lsn) throws IOException {
+        synchronized (pins) {
+            if (!pins.isEmpty()) {
+                lsn = Math.min(lsn, pins.firstKey());
+            }
+            List<Path> segments = segments(dir);
+            // The last segment is the active one and is never deleted
+            for (int i = 0; i + 1 < segments.size(); i++) {
+                if (firstLsn(segments.get(i + 1)) <= lsn + 1) {
+                    Files.delete(segments.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes out everything appended so far, fsyncs, and stops the writer thread.
+     * @throws IOException if the final write or sync failed
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            hasWork.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /** Writer thread: takes whole batches, writes them, and syncs per policy. */
+    private void writeLoop() {
+        long lastSync = System.nanoTime();
+        while (true) {
+            long batchEnd;
+            boolean finish;
+            boolean rollNow;
+            lock.lock();
+            try {
+                while (pending.size() == 0 && !closed && rollsRequested == rollsDone) {
+                    if (policy == SyncPolicy.INTERVAL && durableLsn < writtenLsn) {
+                        long wait = intervalNanos - (System.nanoTime() - lastSync);
+                        if (wait <= 0) {
+                            break;
+                        }
+                        hasWork.awaitNanos(wait);
+                    } else {
+                        hasWork.awaitUninterruptibly();
+                    }
+                }
+                ByteArrayOutputStream batch = pending;
+                pending = writing;
+                writing = batch;
+                batchEnd = lastLsn;
+                finish = closed;
+                rollNow = rollsRequested != rollsDone;
+            } catch (InterruptedException e) {
+                continue;
+            } finally {
+                lock.unlock();
+            }
+
+            boolean forced = false;
+            byte[] frames = null;
+            try {
+                if (writing.size() > 0) {
+                    frames = writing.toByteArray();
+                    ByteBuffer buffer = ByteBuffer.wrap(frames);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    writing.reset();
+                }
+                long now = System.nanoTime();
+                if (policy == SyncPolicy.EVERY_WRITE || finish || rollNow
+                        || (policy == SyncPolicy.INTERVAL && now - lastSync >= intervalNanos)) {
+                    channel.force(false);
+                    lastSync = now;
+                    forced = true;
+                }
+                if (rollNow && !finish) {
+                    channel.close();
+                    channel = FileChannel.open(segmentPath(dir, batchEnd + 1), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                }
+            } catch (IOException e) {
+                lock.lock();
+                try {
+                    failure = e;
+                    synced.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                System.err.println("Journal error: " + e.getMessage());
+                return;
+            }
+
+            boolean done;
+            lock.lock();
+            try {
+                writtenLsn = batchEnd;
+                if (forced) {
+                    durableLsn = batchEnd;
+                }
+                if (rollNow) {
+                    rolledThrough = batchEnd;
+                    rollsDone = rollsRequested;
+                }
+                synced.signalAll();
+                done = finish && pending.size() == 0;
+            } finally {
+                lock.unlock();
+            }
+            // After writtenLsn moved, so a listener added meanwhile misses nothing
+            if (frames != null) {
+                for (Consumer<byte[]> listener : listeners) {
+                    listener.accept(frames);
+                }
+            }
+            if (done) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Appends one frame to a batch buffer.
+     */
+    private static void writeFrame(ByteArrayOutputStream batch, long lsn, byte[] body) {
+        CRC32 crc = new CRC32();
+        byte[] header = ByteBuffer.allocate(12).putInt(body.length).putLong(lsn).array();
+        crc.update(header, 4, 8);
+        crc.update(body);
+        batch.write(header, 0, header.length);
+        batch.write(body, 0, body.length);
+        int sum = (int) crc.getValue();
+        batch.write(sum >>> 24);
+        batch.write(sum >>> 16);
+        batch.write(sum >>> 8);
+        batch.write(sum);
+    }
+
+    /**
+     * Appends a record, with its lsn, to a buffer in the on-disk frame format.
+     * @param batch destination buffer
+     * @param record the record; its lsn must be set
+     */
+    public static void encode(ByteArrayOutputStream batch, JournalRecord record) {
+        writeFrame(batch, record.getLsn(), record.payload());
+    }
+
+    /**
+     * Decodes frames written by the journal, as handed to listeners.
+     * @param frames whole frames, back to back
+     * @return the records, with their lsns set
+     * @throws IOException if a frame is cut short or fails its checksum
+     */
+    public static List<JournalRecord> decode(byte[] frames) throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        ByteBuffer in = ByteBuffer.wrap(frames);
+        while (in.hasRemaining()) {
+            if (in.remaining() < FRAME_OVERHEAD) {
+                throw new IOException("Truncated journal frame");
+            }
+            int start = in.position();
+            int length = in.getInt();
+            long lsn = in.getLong();
+            if (length < 0 || in.remaining() < length + 4) {
+                throw new IOException("Truncated journal frame");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(frames, start + 4, 8 + length);
+            if ((int) crc.getValue() != in.getInt(start + 12 + length)) {
+                throw new IOException("Journal frame " + lsn + " failed its checksum");
+            }
+            JournalRecord record = JournalRecord.readFrom(
+                    new DataInputStream(new ByteArrayInputStream(frames, start + 12, length)));
+            record.setLsn(lsn);
+            records.add(record);
+            in.position(start + FRAME_OVERHEAD + length);
+        }
+        return records;
+    }
+
+    /**
+     * @param dir data directory
+     * @return the first lsn the oldest segment holds, so the oldest record
+     *         {@link #replay} can still return, or -1 if there are no segments
+     * @throws IOException if the directory cannot be listed
+     */
+    public static long oldestLsn(Path dir) throws IOException {
+        List<Path> segments = segments(dir);
+        return segments.isEmpty() ? -1 : firstLsn(segments.get(0));
+    }
+
+    /**
+     * Feeds every valid record after {@code afterLsn} to a consumer, in order,
+     * and cuts off a torn or corrupt tail of the last segment so new appends
+     * start at a clean frame. Used at startup, before the journal is opened.
+     * @param dir data directory
+     * @param afterLsn records at or below this lsn are skipped
+     * @param consumer receives each record with its lsn set
+     * @return lsn of the last valid record, or {@code afterLsn} if there is none
+     * @throws IOException if a segment cannot be read
+     */
+    public static long replay(Path dir, long afterLsn, Consumer<JournalRecord> consumer) throws IOException {
+        return replay(dir, afterLsn, Long.MAX_VALUE, consumer, true);
+    }
+
+    /**
+     * Feeds the valid records with {@code afterLsn < lsn <= throughLsn} to a
+     * consumer, in order.
+     * @param dir data directory
+     * @param afterLsn records at or below this lsn are skipped
+     * @param throughLsn records above this lsn are not read
+     * @param consumer receives each record with its lsn set
+     * @param repairTail whether to truncate a torn tail of the last segment;
+     *                   only safe while no journal is writing to the directory
+     * @return lsn of the last record passed on, or {@code afterLsn} if there is none
+     * @throws IOException if a segment cannot be read
+     */
+    public static long replay(Path dir, long afterLsn, long throughLsn, Consumer<JournalRecord> consumer,
+                              boolean repairTail) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return afterLsn;
+        }
+        List<Path> segments = segments(dir);
+        long last = afterLsn;
+        for (int i = 0; i < segments.size(); i++) {
+            boolean lastSegment = i + 1 == segments.size();
+            // Skip segments that end before the range and stop at ones that start after it
+            if (!lastSegment && firstLsn(segments.get(i + 1)) <= afterLsn + 1) {
+                continue;
+            }
+            if (firstLsn(segments.get(i)) > throughLsn) {
+                break;
+            }
+            last = Math.max(last, replaySegment(segments.get(i), afterLsn, throughLsn, consumer,
+                    repairTail && lastSegment));
+        }
+        return last;
+    }
+
+    private static long replaySegment(Path file, long afterLsn, long throughLsn, Consumer<JournalRecord> consumer,
+                                      boolean repairTail) throws IOException {
+        long last = afterLsn;
+        long validEnd = 0;
+        try (FileChannel in = repairTail
+                ? FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(12);
+            long position = 0;
+            long size = in.size();
+            while (position + FRAME_OVERHEAD <= size) {
+                header.clear();
+                readFully(in, header, position);
+                int length = header.getInt(0);
+                long lsn = header.getLong(4);
+                if (length < 0 || position + FRAME_OVERHEAD + length > size) {
+                    break;
+                }
+                ByteBuffer rest = ByteBuffer.allocate(length + 4);
+                readFully(in, rest, position + 12);
+                CRC32 crc = new CRC32();
+                crc.update(header.array(), 4, 8);
+                crc.update(rest.array(), 0, length);
+                if ((int) crc.getValue() != rest.getInt(length)) {
+                    break;
+                }
+                position += FRAME_OVERHEAD + length;
+                validEnd = position;
+                if (lsn > throughLsn) {
+                    return last;
+                }
+                if (lsn <= afterLsn) {
+                    continue;
+                }
+                JournalRecord record = JournalRecord.readFrom(
+                        new DataInputStream(new ByteArrayInputStream(rest.array(), 0, length)));
+                record.setLsn(lsn);
+                consumer.accept(record);
+                last = lsn;
+            }
+            if (repairTail && validEnd < size) {
+                System.err.println("Journal: discarding " + (size - validEnd) + " bytes of torn tail");
+                in.truncate(validEnd);
+            }
+        }
+        return last;
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    /**
+     * @return segment files in the directory, oldest first
+     */
+    private static List<Path> segments(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path p : stream) {
+                segments.add(p);
+            }
+        }
+        // Names are zero-padded, so lexical order is lsn order
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static Path segmentPath(Path dir, long firstLsn) {
+        return dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+    }
+
+    private static long firstLsn(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
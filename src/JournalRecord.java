@@ -0,0 +1,270 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * One mutation of the marketplace as written to the {@link Journal}. Records name
+ * items by id instead of by name, so replaying them rebuilds exactly the same
+ * state even when several items share a name.
+ *
+ * <p>A record is encoded the first time the journal asks for it, so
+ * databases without a journal never pay for encoding. Strings are limited to
+ * {@link #MAX_STRING_BYTES}; Database1 checks input against that limit with
+ * {@link #checkLength} before it changes anything.</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class JournalRecord {
+    /** Longest user name, password, item name or message body, in UTF-8 bytes. */
+    public static final int MAX_STRING_BYTES = 1 << 20;
+
+    /** Kinds of mutation; the ordinal is the on-disk type byte, so only append. */
+    public enum Type {
+        ADD_USER, DELETE_USER, ADD_ITEM, SELL_ITEM, UNSELL_ITEM,
+        DELETE_ITEM, CHANGE_PRICE, SEND_MESSAGE, TRANSACTION
+    }
+
+    /** Kind of mutation. */
+    private final Type type;
+    /** Acting user: the new user, seller, sender or buyer. */
+    private final String user;
+    /** Second user: message receiver or item seller in a transaction. */
+    private final String other;
+    /** Free text: password, item name or message body. */
+    private final String text;
+    /** Item the mutation applies to, or 0. */
+    private final long itemId;
+    /** Balance, cost or price in cents, or 0. */
+    private final long amountCents;
+    /** The record as written to the journal, without its lsn; encoded on first use. */
+    private volatile byte[] payload;
+    /** Position in the journal, assigned when the record is appended. */
+    private long lsn;
+
+    private JournalRecord(Type type, String user, String other, String text, long itemId, long amountCents) {
+        this.type = type;
+        this.user = user;
+        this.other = other;
+        this.text = text;
+        this.itemId = itemId;
+        this.amountCents = amountCents;
+    }
+
+    public static JournalRecord addUser(String username, String password, long balanceCents) {
+        return new JournalRecord(Type.ADD_USER, username, null, password, 0, balanceCents);
+    }
+
+    public static JournalRecord deleteUser(String username) {
+        return new JournalRecord(Type.DELETE_USER, username, null, null, 0, 0);
+    }
+
+    public static JournalRecord addItem(long itemId, String name, long costCents, String seller) {
+        return new JournalRecord(Type.ADD_ITEM, seller, null, name, itemId, costCents);
+    }
+
+    public static JournalRecord sellItem(String username, long itemId) {
+        return new JournalRecord(Type.SELL_ITEM, username, null, null, itemId, 0);
+    }
+
+    public static JournalRecord unsellItem(String username, long itemId) {
+        return new JournalRecord(Type.UNSELL_ITEM, username, null, null, itemId, 0);
+    }
+
+    public static JournalRecord deleteItem(long itemId) {
+        return new JournalRecord(Type.DELETE_ITEM, null, null, null, itemId, 0);
+    }
+
+    public static JournalRecord changePrice(long itemId, long priceCents) {
+        return new JournalRecord(Type.CHANGE_PRICE, null, null, null, itemId, priceCents);
+    }
+
+    public static JournalRecord sendMessage(String sender, String receiver, String message) {
+        return new JournalRecord(Type.SEND_MESSAGE, sender, receiver, message, 0, 0);
+    }
+
+    public static JournalRecord transaction(String buyer, String seller, long itemId) {
+        return new JournalRecord(Type.TRANSACTION, buyer, seller, null, itemId, 0);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getOther() {
+        return other;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public long getItemId() {
+        return itemId;
+    }
+
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    public long getLsn() {
+        return lsn;
+    }
+
+    void setLsn(long lsn) {
+        this.lsn = lsn;
+    }
+
+    /**
+     * @return the encoded record, as {@link #writeTo} writes it; do not modify
+     * @throws IllegalArgumentException if a string is longer than {@link #MAX_STRING_BYTES}
+     */
+    byte[] payload() {
+        byte[] p = payload;
+        if (p == null) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            try {
+                writeTo(new DataOutputStream(bytes));
+            } catch (IOException e) {
+                // Writing to memory does not fail
+                throw new UncheckedIOException(e);
+            }
+            p = bytes.toByteArray();
+            payload = p;
+        }
+        return p;
+    }
+
+    /**
+     * Writes the type byte and only the fields this type uses.
+     * @param out destination stream
+     * @throws IOException if the stream fails
+     * @throws IllegalArgumentException if a string is longer than {@link #MAX_STRING_BYTES}
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(type.ordinal());
+        switch (type) {
+            case ADD_USER -> {
+                writeString(out, user);
+                writeString(out, text);
+                out.writeLong(amountCents);
+            }
+            case DELETE_USER -> writeString(out, user);
+            case ADD_ITEM -> {
+                out.writeLong(itemId);
+                writeString(out, text);
+                out.writeLong(amountCents);
+                writeString(out, user);
+            }
+            case SELL_ITEM, UNSELL_ITEM -> {
+                writeString(out, user);
+                out.writeLong(itemId);
+            }
+            case DELETE_ITEM -> out.writeLong(itemId);
+            case CHANGE_PRICE -> {
+                out.writeLong(itemId);
+                out.writeLong(amountCents);
+            }
+            case SEND_MESSAGE -> {
+                writeString(out, user);
+                writeString(out, other);
+                writeString(out, text);
+            }
+            case TRANSACTION -> {
+                writeString(out, user);
+                writeString(out, other);
+                out.writeLong(itemId);
+            }
+        }
+    }
+
+    /**
+     * Reads a record written by {@link #writeTo(DataOutputStream)}.
+     * @param in source stream
+     * @return the decoded record, without its lsn
+     * @throws IOException if the stream fails or holds an unknown type
+     */
+    public static JournalRecord readFrom(DataInputStream in) throws IOException {
+        int typeByte = in.readUnsignedByte();
+        if (typeByte >= Type.values().length) {
+            throw new IOException("Unknown journal record type " + typeByte);
+        }
+        return switch (Type.values()[typeByte]) {
+            case ADD_USER -> addUser(readString(in), readString(in), in.readLong());
+            case DELETE_USER -> deleteUser(readString(in));
+            case ADD_ITEM -> {
+                long id = in.readLong();
+                String name = readString(in);
+                long cost = in.readLong();
+                yield addItem(id, name, cost, readString(in));
+            }
+            case SELL_ITEM -> sellItem(readString(in), in.readLong());
+            case UNSELL_ITEM -> unsellItem(readString(in), in.readLong());
+            case DELETE_ITEM -> deleteItem(in.readLong());
+            case CHANGE_PRICE -> changePrice(in.readLong(), in.readLong());
+            case SEND_MESSAGE -> sendMessage(readString(in), readString(in), readString(in));
+            case TRANSACTION -> transaction(readString(in), readString(in), in.readLong());
+        };
+    }
+
+    /**
+     * Checks that a string fits in a record without encoding it, for callers
+     * that must turn long input away before building one.
+     * @param s the string, or null
+     * @throws IllegalArgumentException if it is longer than {@link #MAX_STRING_BYTES} in UTF-8
+     */
+    public static void checkLength(String s) {
+        // No char takes more than three bytes; a surrogate pair takes four for two chars
+        if (s == null || s.length() <= MAX_STRING_BYTES / 3) {
+            return;
+        }
+        long bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+        }
+        if (bytes > MAX_STRING_BYTES) {
+            throw tooLong(bytes);
+        }
+    }
+
+    private static IllegalArgumentException tooLong(long bytes) {
+        return new IllegalArgumentException("String of " + bytes + " bytes is too long to log");
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw tooLong(bytes.length);
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IOException("Bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return lsn + " " + type + " " + (user == null ? "" : user) + (other == null ? "" : " " + other)
+                + (itemId == 0 ? "" : " #" + itemId);
+    }
+}
@@ -0,0 +1,116 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Lock-free histogram of durations in nanoseconds. Each power of two is split
+ * into 16 equal buckets, so any percentile it reports is within about 6% of
+ * the true value, from a nanosecond up to the largest long, in under a
+ * thousand counters. Recording is one atomic add and a compare with the
+ * maximum; threads never wait for one another, and a reader sees a recent,
+ * if not perfectly simultaneous, picture.
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class LatencyHistogram {
+    /** Buckets per power of two, as a power of two itself. */
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Adds one duration.
+     * @param nanos the duration; negative values count as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.getAndIncrement(bucket(value));
+        long seen = max.get();
+        while (value > seen && !max.compareAndSet(seen, value)) {
+            seen = max.get();
+        }
+    }
+
+    /**
+     * Adds everything another histogram has recorded, e.g. to combine shards.
+     * @param other the histogram to add
+     */
+    public void addAll(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = other.counts.get(i);
+            if (n != 0) {
+                counts.getAndAdd(i, n);
+            }
+        }
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    /** @return how many durations were recorded */
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += counts.get(i);
+        }
+        return n;
+    }
+
+    /** @return the longest duration recorded, in nanoseconds */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns the duration that a fraction {@code q} of the recorded ones do
+     * not exceed, rounded up to the top of its bucket but never past the maximum.
+     * @param q fraction between 0 and 1, e.g. 0.99
+     * @return the duration in nanoseconds, or 0 if none were recorded
+     */
+    public long percentile(double q) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /** Values below 16 get a bucket each; above that, 16 buckets per power of two. */
+    private static int bucket(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /** @return the largest value that falls in the bucket */
+    private static long highest(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+        long sub = bucket % SUB_COUNT;
+        long low = (SUB_COUNT + sub) << (exponent - SUB_BITS);
+        return low + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * One row of an item table in the clients, parsed once from the line the
+ * server sent: "name - $price - Seller: seller" for a listing, or
+ * "name - $price" for an item in the user's inventory.
+ *
+ * @param id the item id, or 0 if the server did not send one
+ * @param name the item name
+ * @param priceCents the price in cents
+ * @param seller the seller, or null for inventory lines
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public record Listing(long id, String name, long priceCents, String seller) {
+    private static final String PRICE = " - $";
+    private static final String SELLER = " - Seller: ";
+
+    /**
+     * @param id the item id, or 0
+     * @param line a listing or inventory line
+     * @return the parsed row, or null if the line is neither
+     */
+    public static Listing parse(long id, String line) {
+        int price = line.indexOf(PRICE);
+        if (price < 0) {
+            return null;
+        }
+        int seller = line.indexOf(SELLER, price);
+        try {
+            long cents = Money.toCents(Double.parseDouble(
+                    line.substring(price + PRICE.length(), seller < 0 ? line.length() : seller)));
+            return new Listing(id, line.substring(0, price), cents,
+                    seller < 0 ? null : line.substring(seller + SELLER.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** @return the price in dollars */
+    public double price() {
+        return Money.toDollars(priceCents);
+    }
+}
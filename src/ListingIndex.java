@@ -0,0 +1,212 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * The marketplace listings kept sorted every way {@code listitems} can page
+ * through them. Each sort has its own concurrent skip list, so a page is one
+ * O(log n) seek to the cursor plus a walk over the page, and readers never
+ * lock. Ties are broken by item id, so every listing has one place in each
+ * order. The same lists answer price-range and seller queries: the price
+ * order is a price index, and the seller order, which sorts each seller's
+ * listings by price, is a seller index whose price ranges are contiguous.
+ *
+ * <p>The sort keys are read from the items themselves. An item's price must
+ * therefore only change while it is out of the index: Database1 removes it,
+ * changes the price and adds it back, all under the owner's stripe.</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class ListingIndex {
+    /**
+     * Orders a page can be fetched in.
+     */
+    public enum Sort {
+        /** Cheapest first. */
+        PRICE(Comparator.comparingLong(Item::getCostCents).thenComparingLong(Item::getId)),
+        /** By name ignoring case. */
+        NAME(Comparator.comparing(Item::getName, String.CASE_INSENSITIVE_ORDER)
+                .thenComparing(Item::getName).thenComparingLong(Item::getId)),
+        /** By seller's username, then cheapest first. */
+        SELLER(Comparator.comparing(Item::getSeller).thenComparingLong(Item::getCostCents)
+                .thenComparingLong(Item::getId)),
+        /** Newest item first. */
+        RECENT(Comparator.comparingLong(Item::getId).reversed());
+
+        private final Comparator<Item> order;
+
+        Sort(Comparator<Item> order) {
+            this.order = order;
+        }
+    }
+
+    /**
+     * One page of listings.
+     * @param items the listings, in sort order
+     * @param next cursor for the following page, or null if this is the last
+     */
+    public record Page(ArrayList<Item> items, String next) {
+    }
+
+    private final EnumMap<Sort, ConcurrentSkipListSet<Item>> sorted = new EnumMap<>(Sort.class);
+
+    /** Creates an empty index. */
+    public ListingIndex() {
+        for (Sort sort : Sort.values()) {
+            sorted.put(sort, new ConcurrentSkipListSet<>(sort.order));
+        }
+    }
+
+    /**
+     * @param item a listing to add to every order
+     */
+    public void add(Item item) {
+        for (ConcurrentSkipListSet<Item> set : sorted.values()) {
+            set.add(item);
+        }
+    }
+
+    /**
+     * Removes a listing. Call before changing its price or seller.
+     * @param item the listing
+     * @return true if it was indexed
+     */
+    public boolean remove(Item item) {
+        boolean removed = false;
+        for (ConcurrentSkipListSet<Item> set : sorted.values()) {
+            removed |= set.remove(item);
+        }
+        return removed;
+    }
+
+    /** Removes every listing. */
+    public void clear() {
+        for (ConcurrentSkipListSet<Item> set : sorted.values()) {
+            set.clear();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} listings in the given order, starting after
+     * the cursor.
+     * @param sort the order
+     * @param cursor {@link Page#next()} of the previous page, or null to start
+     * @param limit page size, at least 1
+     * @return the page
+     * @throws IllegalArgumentException if the cursor is malformed or was made for another sort
+     */
+    public Page page(Sort sort, String cursor, int limit) {
+        ConcurrentSkipListSet<Item> set = sorted.get(sort);
+        return walk(sort, cursor == null ? set : set.tailSet(decode(sort, cursor), false), limit);
+    }
+
+    /**
+     * Returns up to {@code limit} listings priced from {@code minCents} to
+     * {@code maxCents} inclusive, cheapest first, optionally only those of one
+     * seller. Either way the matches are one contiguous range of an index, so
+     * a page costs O(log n + page) however few listings match.
+     * @param minCents lowest price
+     * @param maxCents highest price
+     * @param seller only this seller's listings, or null for everyone's
+     * @param cursor {@link Page#next()} of the previous page of the same query, or null to start
+     * @param limit page size, at least 1
+     * @return the page
+     * @throws IllegalArgumentException if the cursor is malformed or was made for another kind of query
+     */
+    public Page range(long minCents, long maxCents, String seller, String cursor, int limit) {
+        Sort sort = seller == null ? Sort.PRICE : Sort.SELLER;
+        String who = seller == null ? "" : seller;
+        Item low = probe(Long.MIN_VALUE, minCents, who, "");
+        Item high = probe(Long.MAX_VALUE, maxCents, who, "");
+        if (sort.order.compare(low, high) > 0) {
+            return new Page(new ArrayList<>(), null);
+        }
+        boolean lowInclusive = true;
+        if (cursor != null) {
+            Item after = decode(sort, cursor);
+            if (sort.order.compare(after, high) >= 0) {
+                return new Page(new ArrayList<>(), null);
+            } else if (sort.order.compare(after, low) >= 0) {
+                low = after;
+                lowInclusive = false;
+            }
+        }
+        return walk(sort, sorted.get(sort).subSet(low, lowInclusive, high, true), limit);
+    }
+
+    /**
+     * Combines pages fetched with the same sort, cursor and limit from
+     * several indexes into the page one index holding all their listings
+     * would have returned. Cursors carry sort keys rather than positions, so
+     * the cursor of the combined page works for every index alike.
+     * @param sort the order the pages are in
+     * @param pages one page from each index
+     * @param limit the page size they were fetched with
+     * @return the combined page
+     */
+    public static Page merge(Sort sort, List<Page> pages, int limit) {
+        ArrayList<Item> all = new ArrayList<>();
+        boolean more = false;
+        for (Page page : pages) {
+            all.addAll(page.items());
+            more |= page.next() != null;
+        }
+        all.sort(sort.order);
+        if (all.size() > limit) {
+            all.subList(limit, all.size()).clear();
+            more = true;
+        }
+        String next = more && !all.isEmpty() ? encode(sort, all.get(all.size() - 1)) : null;
+        return new Page(all, next);
+    }
+
+    private static Page walk(Sort sort, Iterable<Item> from, int limit) {
+        Iterator<Item> it = from.iterator();
+        ArrayList<Item> items = new ArrayList<>(Math.min(limit, 256));
+        while (items.size() < limit && it.hasNext()) {
+            items.add(it.next());
+        }
+        String next = it.hasNext() && !items.isEmpty() ? encode(sort, items.get(items.size() - 1)) : null;
+        return new Page(items, next);
+    }
+
+    /**
+     * A cursor holds the sort keys of the last listing on the page, so it stays
+     * valid however the listings change in between.
+     */
+    private static String encode(Sort sort, Item last) {
+        String raw = sort.name() + '\n' + last.getId() + '\n' + last.getCostCents() + '\n'
+                + last.getSeller() + '\n' + last.getName();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** @return a stand-in item that sorts where the cursor's listing did */
+    private static Item decode(Sort sort, String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\n", 5);
+            if (parts.length == 5 && parts[0].equals(sort.name())) {
+                return probe(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3], parts[4]);
+            }
+        } catch (IllegalArgumentException e) {
+            // Not base64, or not numbers where numbers belong
+        }
+        throw new IllegalArgumentException("Invalid cursor.");
+    }
+
+    private static Item probe(long id, long costCents, String seller, String name) {
+        Item probe = new Item(id, name, 0, seller);
+        probe.setCostCents(costCents);
+        return probe;
+    }
+}
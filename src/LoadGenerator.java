@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Headless load generator for capacity planning. It opens one connection per
+ * simulated user, gives each user an account and a few listings, then sends
+ * a configurable mix of commands at a fixed total rate and reports throughput
+ * and p50/p99/p999/max latency for each command.
+ *
+ * <p>Pacing is open-loop: request i is due at start + i / rate whether or not
+ * earlier responses have arrived, and its latency is measured from when it was
+ * due, not from when it was actually sent. A stalled server therefore shows up
+ * as the long waits its users would really see, instead of quietly lowering
+ * the request rate (coordinated omission). If the generator itself falls
+ * behind, the report says by how much.</p>
+ *
+ * <p>Options: {@code --host}, {@code --port}, {@code --users <n>} (100),
+ * {@code --rate <requests per second>} (1000), {@code --duration <seconds>} (30),
+ * {@code --warmup <seconds>} (5), {@code --senders <threads>} (4),
+ * {@code --listings <per user>} (5), {@code --mix <command=weight,...>} over
+ * register, login, listitems, buy, sendmessage and viewconversation, and
+ * {@code --embedded threads|virtual|nio} to start a server in this process
+ * instead of using a running one.</p>
+ *
+ * <p>Commands are sent as tagged requests on each user's connection.
+ * {@code listitems} fetches a page of 50, as the clients do, and a user who
+ * buys an item lists it again right away, reported as {@code sellitem}, so
+ * there is always something to buy.</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class LoadGenerator {
+    private static final String DEFAULT_MIX =
+            "register=1,login=4,listitems=30,buy=10,sendmessage=25,viewconversation=30";
+    private static final List<String> COMMANDS =
+            List.of("register", "login", "listitems", "buy", "sendmessage", "viewconversation");
+    /** How long to wait after the last request for responses still in flight. */
+    private static final long DRAIN_NANOS = 10_000_000_000L;
+
+    /** One simulated user: its account and its connection. */
+    private record Session(String name, ClientConnection conn) {
+    }
+
+    /** Results for one command. */
+    private static final class Tally {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+    }
+
+    private final Map<String, Tally> tallies = new ConcurrentHashMap<>();
+    private final AtomicLong outstanding = new AtomicLong();
+    private final AtomicLong worstLag = new AtomicLong();
+    private final AtomicLong registered = new AtomicLong();
+    private final String runId = Long.toString(System.currentTimeMillis() % 1_000_000_000L, 36);
+    private List<Session> sessions;
+    private String[] itemNames;
+    private String[] mixNames;
+    private int[] mixWeights;
+    private int mixTotal;
+    /** Responses to requests due before this time are not counted. */
+    private long measureFrom;
+
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = Server.PORT;
+        int users = 100;
+        double rate = 1000;
+        double duration = 30;
+        double warmup = 5;
+        int senders = 4;
+        int listings = 5;
+        String mix = DEFAULT_MIX;
+        String embedded = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--host" -> host = args[i + 1];
+                case "--port" -> port = Integer.parseInt(args[i + 1]);
+                case "--users" -> users = Integer.parseInt(args[i + 1]);
+                case "--rate" -> rate = Double.parseDouble(args[i + 1]);
+                case "--duration" -> duration = Double.parseDouble(args[i + 1]);
+                case "--warmup" -> warmup = Double.parseDouble(args[i + 1]);
+                case "--senders" -> senders = Integer.parseInt(args[i + 1]);
+                case "--listings" -> listings = Integer.parseInt(args[i + 1]);
+                case "--mix" -> mix = args[i + 1];
+                case "--embedded" -> embedded = args[i + 1].toLowerCase();
+                default -> System.err.println("Ignoring unknown option " + args[i]);
+            }
+        }
+
+        PrintStream results = System.out;
+        ServerInterface server = null;
+        if (embedded != null) {
+            // The server logs every connection; keep the report readable
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            server = switch (embedded) {
+                case "nio" -> new NioServer(port);
+                case "virtual" -> new Server(port, true);
+                default -> new Server(port, false);
+            };
+            Thread serverThread = new Thread((Runnable) server, "load-server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+            Thread.sleep(300);
+        }
+
+        LoadGenerator generator = new LoadGenerator();
+        generator.parseMix(mix);
+        results.printf("Setting up %d users with %d listings each on %s:%d%n", users, listings, host, port);
+        generator.connect(host, port, users, listings);
+        results.printf("Running %s at %.0f requests/s for %.0f s after %.0f s warmup%n", mix, rate, duration,
+                warmup);
+        generator.run(rate, warmup, duration, Math.max(1, Math.min(senders, users)));
+        generator.report(results, duration);
+        generator.disconnect();
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private void parseMix(String mix) {
+        LinkedHashMap<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            String name = parts[0].toLowerCase();
+            if (!COMMANDS.contains(name) || parts.length != 2) {
+                throw new IllegalArgumentException("Bad mix entry " + entry + "; commands are " + COMMANDS);
+            }
+            weights.put(name, Integer.parseInt(parts[1]));
+        }
+        mixNames = weights.keySet().toArray(new String[0]);
+        mixWeights = new int[mixNames.length];
+        for (int i = 0; i < mixNames.length; i++) {
+            mixTotal += weights.get(mixNames[i]);
+            mixWeights[i] = mixTotal;
+        }
+        if (mixTotal <= 0) {
+            throw new IllegalArgumentException("The mix needs a positive weight");
+        }
+    }
+
+    /** Opens every connection and gives each user an account and listings. */
+    private void connect(String host, int port, int users, int listings) throws IOException {
+        sessions = new ArrayList<>(users);
+        itemNames = new String[users * listings];
+        List<CompletableFuture<List<String>>> setup = new ArrayList<>();
+        for (int u = 0; u < users; u++) {
+            String name = "lg" + runId + "u" + u;
+            ClientConnection conn = new ClientConnection(host, port, line -> { });
+            sessions.add(new Session(name, conn));
+            conn.request("register " + name + " pw 1000000");
+            conn.request("login " + name + " pw");
+            for (int k = 0; k < listings; k++) {
+                String item = name + "i" + k;
+                itemNames[u * listings + k] = item;
+                conn.request("additem " + item + " 1");
+                setup.add(conn.request("sellitem " + item));
+            }
+            if (listings == 0) {
+                setup.add(conn.request("getbalance"));
+            }
+        }
+        CompletableFuture.allOf(setup.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    /** Sends requests from {@code senders} threads until the duration is up, then waits for the stragglers. */
+    private void run(double rate, double warmup, double duration, int senders) throws InterruptedException {
+        long start = System.nanoTime() + 100_000_000L;
+        measureFrom = start + (long) (warmup * 1e9);
+        long end = measureFrom + (long) (duration * 1e9);
+        Thread[] threads = new Thread[senders];
+        for (int s = 0; s < senders; s++) {
+            // Sender s owns every senders-th user and an equal share of the rate
+            List<Session> mine = new ArrayList<>();
+            for (int u = s; u < sessions.size(); u += senders) {
+                mine.add(sessions.get(u));
+            }
+            threads[s] = new Thread(() -> pace(mine, rate / senders, start, end), "load-sender-" + s);
+            threads[s].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        long deadline = System.nanoTime() + DRAIN_NANOS;
+        while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void pace(List<Session> mine, double rate, long start, long end) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (long i = 0; ; i++) {
+            // Computed from the start every time, so rounding never makes the schedule drift
+            long due = start + (long) (i * 1e9 / rate);
+            if (due >= end) {
+                return;
+            }
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            worstLag.accumulateAndGet(-wait, Math::max);
+            Session session = mine.get(random.nextInt(mine.size()));
+            String kind = pick(random.nextInt(mixTotal));
+            send(session, kind, command(kind, session, random), due);
+        }
+    }
+
+    private String pick(int ticket) {
+        for (int i = 0; i < mixWeights.length; i++) {
+            if (ticket < mixWeights[i]) {
+                return mixNames[i];
+            }
+        }
+        return mixNames[mixNames.length - 1];
+    }
+
+    private String command(String kind, Session session, ThreadLocalRandom random) {
+        String other = sessions.get(random.nextInt(sessions.size())).name();
+        return switch (kind) {
+            case "register" -> "register lg" + runId + "r" + registered.incrementAndGet() + " pw 100";
+            case "login" -> "login " + session.name() + " pw";
+            case "listitems" -> "listitems page 50";
+            case "buy" -> itemNames.length == 0 ? "listitems page 1"
+                    : "buy " + itemNames[random.nextInt(itemNames.length)];
+            case "sendmessage" -> "sendmessage " + other + " load test message";
+            default -> "viewconversation " + other;
+        };
+    }
+
+    /**
+     * Sends one request and records its latency from {@code due} once the
+     * response is in. A completed purchase is followed by relisting the item.
+     */
+    private void send(Session session, String kind, String command, long due) {
+        outstanding.incrementAndGet();
+        session.conn().request(command).whenComplete((lines, error) -> {
+            long done = System.nanoTime();
+            if (due >= measureFrom) {
+                Tally tally = tallies.computeIfAbsent(kind, k -> new Tally());
+                if (error != null) {
+                    tally.errors.increment();
+                } else {
+                    tally.latency.record(done - due);
+                }
+            }
+            if (error == null && kind.equals("buy") && !lines.isEmpty()
+                    && lines.get(0).startsWith("Transaction processed")) {
+                send(session, "sellitem", "sellitem " + command.substring("buy ".length()), done);
+            }
+            outstanding.decrementAndGet();
+        });
+    }
+
+    private void report(PrintStream out, double duration) {
+        out.printf("%n%-18s %10s %10s %10s %10s %10s %10s %8s%n", "command", "count", "per sec", "p50 ms",
+                "p99 ms", "p999 ms", "max ms", "errors");
+        long total = 0;
+        for (String kind : new TreeSet<>(tallies.keySet())) {
+            Tally t = tallies.get(kind);
+            LatencyHistogram h = t.latency;
+            total += h.count();
+            out.printf("%-18s %10d %10.1f %10.2f %10.2f %10.2f %10.2f %8d%n", kind, h.count(), h.count() / duration,
+                    h.percentile(0.5) / 1e6, h.percentile(0.99) / 1e6, h.percentile(0.999) / 1e6, h.max() / 1e6,
+                    t.errors.sum());
+        }
+        out.printf("%-18s %10d %10.1f%n", "total", total, total / duration);
+        if (outstanding.get() > 0) {
+            out.printf("%d requests never got a response%n", outstanding.get());
+        }
+        out.printf("Generator was at most %.2f ms behind schedule%s%n", worstLag.get() / 1e6,
+                worstLag.get() > 10_000_000L ? "; add --senders or machines, latencies include this lag" : "");
+    }
+
+    private void disconnect() {
+        for (Session session : sessions) {
+            session.conn().close();
+        }
+    }
+}
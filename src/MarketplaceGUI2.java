@@ -3,7 +3,9 @@ import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 
 /* ========================================================================= */
 public class MarketplaceGUI2 {
@@ -12,6 +14,7 @@ public class MarketplaceGUI2 {
     private ClientConnection conn;
     private String  currentUser = null;
     private double  balance     = 0.0;
+    private final CatalogCache catalog = new CatalogCache();   // listings, synced by delta
 
     /* ---- widgets ---- */
     private final JFrame  frame  = new JFrame("CS180 Marketplace Client #1");
@@ -151,23 +154,29 @@ public class MarketplaceGUI2 {
 
         /* ==== async server lines ==== */
         @Override public void onLine(String s){
+            if(s.startsWith(MessageSubscriptions.PUSH_PREFIX)){
+                msgPanel.acceptPush(s.substring(MessageSubscriptions.PUSH_PREFIX.length()));
+                return;
+            }
             if(s.startsWith("Login successful")){
                 currentUser = user.getText().trim();
                 SwingUtilities.invokeLater(()->{
                     buildNavbar();
                     cards.show(center,"items");
                 });
-                conn.send("getbalance"); conn.send("listitems");
+                conn.send("getbalance"); itemsPanel.sync();
+                conn.send("numbered on"); // message lines carry their sequence number
+                conn.send("subscribe");   // new messages arrive as PUSH lines
             }
             else if(s.startsWith("User registered"))
-                JOptionPane.showMessageDialog(this,"Registered – now press Login.");
+                notice("Registered – now press Login.");
             else if(s.startsWith("Username already exists"))
-                JOptionPane.showMessageDialog(this,"That username is taken.");
+                notice("That username is taken.");
             else if(s.startsWith("Invalid credentials"))
-                JOptionPane.showMessageDialog(this,"Incorrect username or password.");
+                notice("Incorrect username or password.");
             else if(s.startsWith("$")){
                 try{ balance = Double.parseDouble(s.substring(1)); }catch(NumberFormatException ignored){}
-                balLbl.setText("BAL: "+s);
+                SwingUtilities.invokeLater(()->balLbl.setText("BAL: "+s));
             }
 
             itemsPanel.acceptLine(s);
@@ -207,13 +216,26 @@ public class MarketplaceGUI2 {
 
     private void refresh(String tab){
         switch(tab){
-            case "items"    -> { itemsPanel.reset(); conn.send("listitems"); }
-            case "inventory"-> { invPanel.reset();  conn.send("myitems");  }
+            case "items"    -> itemsPanel.sync();
+            case "inventory"-> invPanel.load();
             case "messages" -> { msgPanel.reset(); conn.send("viewuserlist");}
         }
         conn.send("getbalance");
     }
 
+    /**
+     * Shows a server notification in a non-modal dialog. Server lines arrive
+     * on the connection's dispatcher, which must not wait for the user to
+     * press OK, so this never blocks.
+     */
+    private void notice(String text){
+        SwingUtilities.invokeLater(()->{
+            JDialog d=new JOptionPane(text,JOptionPane.INFORMATION_MESSAGE).createDialog(frame,"Message");
+            d.setModal(false);
+            d.setVisible(true);
+        });
+    }
+
     private void resetPanels(){
         itemsPanel.reset(); invPanel.reset(); msgPanel.reset();
         balLbl.setText("BAL: $0.00"); hiLbl.setText("");
@@ -222,8 +244,8 @@ public class MarketplaceGUI2 {
 
     /* ============================= ITEMS =============================== */
     private class ItemsPanel extends JPanel implements ActionListener{
-        private final DefaultListModel<String> m=new DefaultListModel<>();
-        private final JList<String> list=new JList<>(m);
+        private final ItemTableModel m=new ItemTableModel(true);
+        private final JTable list=ItemTableModel.createTable(m);
         private final JTextField search=new JTextField(10);
         private final JTextField newPrice = new JTextField(5);
 
@@ -256,29 +278,38 @@ public class MarketplaceGUI2 {
 
         void reset(){ SwingUtilities.invokeLater(m::clear); }
 
-        void acceptLine(String s){
-            if(s.contains("Seller:"))
-                SwingUtilities.invokeLater(()->m.addElement(s));
+        /** Fetches only the listings that changed and redraws from the cache in one update. */
+        void sync(){
+            catalog.sync(conn).thenAccept(changed->{
+                List<Listing> rows=catalog.rows();   // parsed off the EDT
+                SwingUtilities.invokeLater(()->{
+                    if(!changed && m.getRowCount()>0) return;
+                    m.setRows(rows);
+                });
+            });
+        }
 
-            else if(s.startsWith("Transaction processed")){
-                JOptionPane.showMessageDialog(this,"Purchase complete!");
+        void acceptLine(String s){
+            if(s.startsWith("Transaction processed")){
+                notice("Purchase complete!");
                 refresh("items");
             }
+            else if(s.startsWith("Purchase failed:"))
+                notice(s.substring(16).trim());
             else if(s.startsWith("Item removed from sale."))
-                JOptionPane.showMessageDialog(this,"Item removed from market.");
+                notice("Item removed from market.");
             else if(s.startsWith("Invalid cost") || s.startsWith("Invalid price"))
-                JOptionPane.showMessageDialog(this,"Invalid price.");
+                notice("Invalid price.");
             else if(s.startsWith("Found item:"))
-                SwingUtilities.invokeLater(()->JOptionPane.showMessageDialog(this,s));
+                notice(s);
         }
 
         @Override public void actionPerformed(ActionEvent e){
-            String sel=list.getSelectedValue(); if(sel==null) return;
+            Listing sel=m.selected(list); if(sel==null) return;
 
-            String[] parts=sel.split(" - ");
-            String item   = parts[0];
-            double price  = Double.parseDouble(parts[1].substring(1));
-            String seller = parts[2].substring("Seller:".length()).trim();
+            String item   = sel.name();
+            double price  = sel.price();
+            String seller = sel.seller();
 
             switch(e.getActionCommand()){
                 case "Buy" -> handleBuy(item,price,seller);
@@ -322,8 +353,8 @@ public class MarketplaceGUI2 {
 
     /* =========================== INVENTORY ============================= */
     private class InventoryPanel extends JPanel implements ActionListener{
-        private final DefaultListModel<String> m=new DefaultListModel<>();
-        private final JList<String> list=new JList<>(m);
+        private final ItemTableModel m=new ItemTableModel(false);
+        private final JTable list=ItemTableModel.createTable(m);
         private final JTextField price=new JTextField(5);
 
         InventoryPanel(){
@@ -343,31 +374,38 @@ public class MarketplaceGUI2 {
 
         void reset(){ SwingUtilities.invokeLater(m::clear); }
 
-        void acceptLine(String s){
-            if(s.contains(" - $")){
-                SwingUtilities.invokeLater(()->m.addElement(s));
-                return;
-            }
+        /** Fetches the inventory as one response and shows it in one update. */
+        void load(){
+            conn.request("myitems").thenAccept(lines->{
+                List<Listing> rows=new ArrayList<>(lines.size());
+                for(String line: lines){
+                    Listing row=Listing.parse(0,line);
+                    if(row!=null) rows.add(row);
+                }
+                SwingUtilities.invokeLater(()->m.setRows(rows));
+            });
+        }
 
+        void acceptLine(String s){
             if(s.startsWith("Item listed for sale")){
-                JOptionPane.showMessageDialog(this,"Item listed successfully!");
+                notice("Item listed successfully!");
                 refresh("inventory");
             } else if(s.startsWith("Item added to inventory")){
-                JOptionPane.showMessageDialog(this,"Item added to inventory.");
+                notice("Item added to inventory.");
                 refresh("inventory");
             } else if(s.startsWith("Item deleted")){
-                JOptionPane.showMessageDialog(this,"Item deleted.");
+                notice("Item deleted.");
                 refresh("inventory");          // **force full refresh**
             } else if(s.startsWith("Item not found") || s.startsWith("You can only delete")){
-                JOptionPane.showMessageDialog(this,s);
+                notice(s);
             }
         }
 
         @Override public void actionPerformed(ActionEvent e){
-            int idx=list.getSelectedIndex();
-            if(idx==-1){ JOptionPane.showMessageDialog(this,"Select an item."); return; }
+            Listing sel=m.selected(list);
+            if(sel==null){ JOptionPane.showMessageDialog(this,"Select an item."); return; }
 
-            String itemName=list.getSelectedValue().split(" - ")[0];
+            String itemName=sel.name();
 
             if("Sell".equals(e.getActionCommand()))
                 conn.send("sellitem "+itemName);
@@ -393,7 +431,8 @@ public class MarketplaceGUI2 {
 
         private final DefaultListModel<String> convoM=new DefaultListModel<>();
         private final JList<String> convo=new JList<>(convoM);
-        private final HashSet<String> convoLines = new HashSet<>();
+        // sequence numbers of the messages in convoM; touched on the EDT only
+        private final HashSet<Long> convoSeqs = new HashSet<>();
 
         private final JTextField msgField   = new JTextField(20);
         private final JTextField searchUser = new JTextField(12);
@@ -430,7 +469,7 @@ public class MarketplaceGUI2 {
         }
 
         void reset(){ SwingUtilities.invokeLater(()->{
-            usersM.clear(); convoM.clear(); convoLines.clear(); activeOther=null;
+            usersM.clear(); convoM.clear(); convoSeqs.clear(); activeOther=null;
         }); }
 
         private void searchForUser(){
@@ -444,7 +483,7 @@ public class MarketplaceGUI2 {
         void openConversation(String other, boolean forceAdd){
             if(other==null) return;
             activeOther=other;
-            convoM.clear(); convoLines.clear();
+            convoM.clear(); convoSeqs.clear();
             if(forceAdd && !usersM.contains(other)) usersM.addElement(other);
             conn.send("viewconversation "+other);
         }
@@ -453,27 +492,54 @@ public class MarketplaceGUI2 {
             if(s.startsWith("$")) return;
 
             if("No messaging history.".equals(s))
-                SwingUtilities.invokeLater(()->{ usersM.clear(); convoM.clear(); });
+                SwingUtilities.invokeLater(()->{ usersM.clear(); convoM.clear(); convoSeqs.clear(); });
 
             else if(!s.contains(" ") && !s.equals(currentUser))
                 SwingUtilities.invokeLater(()->{ if(!usersM.contains(s)) usersM.addElement(s); });
 
-            else if(activeOther!=null &&
-                    (s.startsWith(currentUser+" ")||s.startsWith(activeOther+" "))){
-                String[] p=s.split(" ",3);
-                String pretty="["+p[0]+"] → ["+p[1]+"]: "+p[2];
-                if(convoLines.add(pretty))
-                    SwingUtilities.invokeLater(()->convoM.addElement(pretty));
+            else{
+                // a "seq sender receiver text" line of the open thread
+                String[] p=s.split(" ",4);
+                long seq=p.length<4 ? -1 : sequence(p[0]);
+                if(seq<0) return;
+                String pretty="["+p[1]+"] → ["+p[2]+"]: "+p[3];
+                SwingUtilities.invokeLater(()->showMessage(seq,p[1],p[2],pretty));
             }
         }
 
+        /** Appends a pushed "seq sender receiver text" message without re-fetching the thread. */
+        void acceptPush(String s){
+            String[] p=s.split(" ",4);
+            long seq=p.length<4 ? -1 : sequence(p[0]);
+            if(seq<0) return;
+            String other=p[1].equals(currentUser)?p[2]:p[1];
+            String pretty="["+p[1]+"] → ["+p[2]+"]: "+p[3];
+            SwingUtilities.invokeLater(()->{
+                if(!usersM.contains(other)) usersM.addElement(other);
+                showMessage(seq,p[1],p[2],pretty);
+            });
+        }
+
+        /** Adds a message to the open thread once, however often it is fetched or pushed; EDT only. */
+        private void showMessage(long seq, String sender, String receiver, String pretty){
+            boolean inThread=activeOther!=null &&
+                    ((sender.equals(currentUser) && receiver.equals(activeOther))
+                    || (sender.equals(activeOther) && receiver.equals(currentUser)));
+            if(inThread && convoSeqs.add(seq)) convoM.addElement(pretty);
+        }
+
+        /** @return the sequence number a message line starts with, or -1 if it is not a message */
+        private long sequence(String token){
+            try{ return Long.parseLong(token); }catch(NumberFormatException e){ return -1; }
+        }
+
         @Override public void actionPerformed(ActionEvent e){
             String other=users.getSelectedValue();
             if(other==null){ JOptionPane.showMessageDialog(this,"Select a user."); return; }
             String msg=msgField.getText().trim(); if(msg.isEmpty()) return;
             conn.send("sendmessage "+other+" "+msg);
             msgField.setText("");
-            conn.send("viewconversation "+other);
+            // no re-fetch: the server pushes the message back to this window
         }
     }
 
@@ -7,16 +7,26 @@
  * @version April 6, 2025
  */
 public class Message implements MessageInterface {
+    private long sequence;
     private String sender;
     private String receiver;
     private String message;
 
     public Message(String sender, String receiver, String message) {
+        this(0, sender, receiver, message);
+    }
+
+    public Message(long sequence, String sender, String receiver, String message) {
+        this.sequence = sequence;
         this.sender = sender;
         this.receiver = receiver;
         this.message = message;
     }
 
+    public long getSequence() {
+        return sequence;
+    }
+
     public String getSender() {
         return sender;
     }
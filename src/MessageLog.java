@@ -0,0 +1,85 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * An append-only list of messages, used for one conversation or for the whole
+ * history of one user. Readers never lock: they read the published size first
+ * and then the backing array, which always holds at least that many entries.
+ * Appends must be serialized by the caller. Database1 does this by holding the
+ * stripes of both participants.
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class MessageLog {
+    /** Backing array; replaced with a larger copy when full. */
+    private volatile Message[] entries = new Message[4];
+    /** Number of published entries. Written last so readers see complete entries. */
+    private volatile int size;
+
+    /**
+     * Appends a message to the end of the log.
+     * @param message the message to append
+     */
+    public void append(Message message) {
+        Message[] current = entries;
+        int n = size;
+        if (n == current.length) {
+            current = Arrays.copyOf(current, n * 2);
+            current[n] = message;
+            entries = current;
+        } else {
+            current[n] = message;
+        }
+        size = n + 1;
+    }
+
+    /**
+     * Removes every message matching the filter. Like {@link #append(Message)},
+     * callers must serialize this with other writers.
+     * @param filter which messages to drop
+     */
+    public void removeIf(Predicate<Message> filter) {
+        int n = size;
+        Message[] current = entries;
+        Message[] kept = new Message[Math.max(4, current.length)];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (!filter.test(current[i])) {
+                kept[k++] = current[i];
+            }
+        }
+        // Publish a fresh array so readers never see entries shift under them
+        entries = kept;
+        size = k;
+    }
+
+    /**
+     * @return the number of messages in the log
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copies the log in order; costs time proportional to its length only.
+     * @return the messages, oldest first
+     */
+    public ArrayList<Message> snapshot() {
+        int n = size;
+        Message[] current = entries;
+        ArrayList<Message> copy = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            // A concurrent removeIf may publish a filtered, null-padded array
+            if (current[i] != null) {
+                copy.add(current[i]);
+            }
+        }
+        return copy;
+    }
+}
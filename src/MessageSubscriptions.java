@@ -0,0 +1,76 @@
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Connections that asked to have new messages pushed to them, keyed by the
+ * user they are logged in as. One user may be subscribed from several windows
+ * at once. Delivery happens after {@link Database1#sendMessage} has returned,
+ * so no database lock is held while subscribers are notified. Each subscriber
+ * formats and queues the line and writes it to its socket on its own thread.
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class MessageSubscriptions {
+    /**
+     * A connection that accepts pushed messages.
+     */
+    public interface Subscriber {
+        /**
+         * Queues one line for the client, starting with {@link #PUSH_PREFIX}.
+         * Must not block on the network.
+         * @param message the message to push
+         */
+        void deliver(Message message);
+    }
+
+    /** Prefix of every pushed line, so clients can tell pushes from responses. */
+    public static final String PUSH_PREFIX = "PUSH ";
+
+    private final ConcurrentHashMap<String, Set<Subscriber>> byUser = new ConcurrentHashMap<>();
+
+    /**
+     * @param username user whose messages to deliver
+     * @param subscriber the connection to deliver them to
+     */
+    public void subscribe(String username, Subscriber subscriber) {
+        byUser.computeIfAbsent(username, k -> ConcurrentHashMap.newKeySet()).add(subscriber);
+    }
+
+    /**
+     * @param username user the subscriber was registered for
+     * @param subscriber the connection to stop delivering to
+     */
+    public void unsubscribe(String username, Subscriber subscriber) {
+        // Drop the set once empty, atomically with respect to new subscriptions
+        byUser.computeIfPresent(username, (k, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * Pushes a newly sent message to everyone subscribed as its sender or receiver.
+     * @param message the message that was just stored
+     */
+    public void publish(Message message) {
+        deliverTo(message.getReceiver(), message);
+        if (!message.getSender().equals(message.getReceiver())) {
+            // The sender's other windows see their own message too
+            deliverTo(message.getSender(), message);
+        }
+    }
+
+    private void deliverTo(String username, Message message) {
+        Set<Subscriber> subscribers = byUser.get(username);
+        if (subscribers != null) {
+            for (Subscriber s : subscribers) {
+                s.deliver(message);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Conversions for money, which is stored everywhere as a {@code long} number
+ * of cents so that sums and transfers are exact. Dollar amounts only appear at
+ * the edges: parsed client input and the {@code double} accessors kept for
+ * compatibility.
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public final class Money {
+    /**
+     * Largest amount, in cents, that input may name: a trillion dollars. It
+     * leaves so much room below {@code Long.MAX_VALUE} that adding up
+     * balances cannot overflow.
+     */
+    public static final long MAX_CENTS = 100_000_000_000_000L;
+
+    private Money() {
+    }
+
+    /**
+     * Rounds a dollar amount to whole cents, half up.
+     * @param dollars amount in dollars
+     * @return the amount in cents
+     * @throws NumberFormatException if the amount is not a number or is
+     *                               larger than {@link #MAX_CENTS} either way
+     */
+    public static long toCents(double dollars) {
+        // Written so NaN fails too
+        if (!(Math.abs(dollars) <= MAX_CENTS / 100)) {
+            throw new NumberFormatException("Amount out of range: " + dollars);
+        }
+        double scaled = dollars * 100;
+        long rounded = Math.round(scaled);
+        // Amounts typed with at most two decimals land within a hair of a whole cent
+        if (Math.abs(scaled - rounded) < 1e-6) {
+            return rounded;
+        }
+        return BigDecimal.valueOf(dollars).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Converts a balance or price, which may not be negative.
+     * @param dollars amount in dollars
+     * @return the amount in cents
+     * @throws NumberFormatException if the amount is negative or out of range
+     */
+    public static long toAmountCents(double dollars) {
+        long cents = toCents(dollars);
+        if (cents < 0) {
+            throw new NumberFormatException("Negative amount: " + dollars);
+        }
+        return cents;
+    }
+
+    /**
+     * @param cents amount in cents
+     * @return the same amount in dollars
+     */
+    public static double toDollars(long cents) {
+        return cents / 100.0;
+    }
+
+    /**
+     * Formats cents the way {@code String.format("%.2f", dollars)} did, e.g. "12.50".
+     * @param cents amount in cents
+     * @return dollars with exactly two decimals
+     */
+    public static String format(long cents) {
+        long abs = Math.abs(cents);
+        long fraction = abs % 100;
+        return (cents < 0 ? "-" : "") + abs / 100 + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+}
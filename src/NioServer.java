@@ -0,0 +1,407 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Non-blocking server core that can serve thousands of clients with a handful of
+ * threads. A small pool of selector threads reads raw bytes from every socket.
+ * They cut the bytes into lines and write responses back. Commands run on a
+ * separate worker pool through the same {@link ClientHandler} logic as the
+ * blocking {@link Server}. The wire protocol is unchanged, so {@code Client},
+ * {@code Client2} and {@code MarketplaceGUI} work with either server.
+ *
+ * <p>A connection never runs two commands at once, so replies keep the order of
+ * the requests. A client that stops reading, or that pipelines more requests
+ * than the workers keep up with, has its reads paused until it catches up.</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class NioServer implements Runnable, ServerInterface {
+    /** Longest accepted request line; longer lines close the connection. */
+    private static final int MAX_LINE = 64 * 1024;
+    /** Pending output above which a connection stops being read. */
+    private static final int MAX_BACKLOG = 1024 * 1024;
+    /** Queued request lines above which a connection stops being read. */
+    private static final int MAX_INBOX = 256;
+
+    private final int port;
+    private final SelectorLoop[] loops;
+    private final ExecutorService workers;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private volatile boolean running = false;
+    private ServerSocketChannel serverChannel;
+
+    /**
+     * Creates a server with one selector per two cores and one worker per core.
+     * @param port TCP port to listen on
+     */
+    public NioServer(int port) {
+        this(port, Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param port TCP port to listen on
+     * @param selectorThreads number of selector threads doing socket I/O
+     * @param workerThreads number of threads running commands
+     */
+    public NioServer(int port, int selectorThreads, int workerThreads) {
+        this.port = port;
+        this.loops = new SelectorLoop[selectorThreads];
+        AtomicInteger workerId = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerThreads,
+                r -> new Thread(r, "NioWorker-" + workerId.incrementAndGet()));
+    }
+
+    /** Accept loop: hands each new connection to a selector thread, round robin. */
+    @Override
+    public void run() {
+        running = true;
+        try {
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new SelectorLoop(Selector.open());
+                new Thread(loops[i], "NioSelector-" + i).start();
+            }
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            System.out.println("NIO server started on port " + port);
+
+            while (running) {
+                SocketChannel client = serverChannel.accept();
+                client.configureBlocking(false);
+                loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)].register(client);
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Server error: " + e.getMessage());
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    /** Closes the listening socket, all selectors and the worker pool. */
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException ignored) {
+            // intentionally blank
+        }
+        for (SelectorLoop loop : loops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+        workers.shutdown();
+        System.out.println("Server stopped.");
+    }
+
+    /**
+     * One selector thread. Other threads hand it work through a task queue and
+     * a wakeup, so only this thread ever touches its keys.
+     */
+    private class SelectorLoop implements Runnable {
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        SelectorLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    Connection conn = new Connection(this, channel);
+                    conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+                    conn.greet();
+                } catch (ClosedChannelException e) {
+                    // client hung up before registration
+                }
+            });
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void shutdown() {
+            execute(() -> {
+                for (SelectionKey key : selector.keys()) {
+                    ((Connection) key.attachment()).closeNow();
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                    // intentionally blank
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (selector.isOpen()) {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    if (!selector.isOpen()) {
+                        break;
+                    }
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Connection conn = (Connection) key.attachment();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isReadable()) {
+                            conn.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            conn.onWritable();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Selector error: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * State of one client: line framing on the way in, a command queue that
+     * runs serially on the worker pool, and queued response bytes on the way out.
+     */
+    private class Connection implements Closeable {
+        private final SelectorLoop loop;
+        private final SocketChannel channel;
+        private SelectionKey key;
+
+        // Selector thread only
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(8 * 1024);
+        private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+        private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+        private int backlog;
+        private boolean closing;
+        private boolean closed;
+
+        // Shared with the worker pool
+        private final ConcurrentLinkedQueue<String> inbox = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger inboxDepth = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closeAfterFlush;
+
+        // Written by the handler, which serializes its writers; each flush ships one response
+        private final Writer responseWriter = new OutputStreamWriter(new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                if (size() > 0) {
+                    byte[] bytes = toByteArray();
+                    reset();
+                    loop.execute(() -> enqueue(bytes));
+                }
+            }
+        }, StandardCharsets.UTF_8);
+        private final ClientHandler handler;
+
+        Connection(SelectorLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+            this.handler = new ClientHandler(responseWriter, this, isLoopback(channel));
+        }
+
+        private static boolean isLoopback(SocketChannel channel) {
+            try {
+                return channel.getRemoteAddress() instanceof InetSocketAddress a
+                        && a.getAddress().isLoopbackAddress();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        void greet() {
+            enqueue((ClientHandler.WELCOME + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        }
+
+        /** Reads what is available and splits it into complete lines. */
+        void onReadable() {
+            int n;
+            try {
+                n = channel.read(readBuffer);
+            } catch (IOException e) {
+                closeNow();
+                return;
+            }
+            if (n < 0) {
+                closeNow();
+                return;
+            }
+            readBuffer.flip();
+            boolean queued = false;
+            while (readBuffer.hasRemaining()) {
+                byte b = readBuffer.get();
+                if (b == '\n') {
+                    byte[] line = partialLine.toByteArray();
+                    int len = line.length;
+                    if (len > 0 && line[len - 1] == '\r') {
+                        len--;
+                    }
+                    inbox.add(new String(line, 0, len, StandardCharsets.UTF_8));
+                    inboxDepth.incrementAndGet();
+                    partialLine.reset();
+                    queued = true;
+                } else if (partialLine.size() >= MAX_LINE) {
+                    closeNow();
+                    return;
+                } else {
+                    partialLine.write(b);
+                }
+            }
+            readBuffer.clear();
+            if (queued) {
+                if (inboxDepth.get() >= MAX_INBOX) {
+                    updateInterest();
+                }
+                schedule();
+            }
+        }
+
+        /** Makes sure exactly one worker is draining this connection's inbox. */
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                workers.execute(this::drain);
+            }
+        }
+
+        /** Worker: runs queued commands in order; the handler ships each response. */
+        private void drain() {
+            String line;
+            while (!closeAfterFlush && (line = inbox.poll()) != null) {
+                if (inboxDepth.getAndDecrement() == MAX_INBOX) {
+                    // Just fell below the limit; let the selector resume reading
+                    loop.execute(this::updateInterest);
+                }
+                try {
+                    handler.process(line);
+                } catch (IOException e) {
+                    // Writing to memory does not fail; treat it as a broken connection
+                    closeAfterFlush = true;
+                }
+            }
+            if (closeAfterFlush) {
+                // Queued behind the goodbye, so the socket closes once it is written
+                loop.execute(() -> {
+                    closing = true;
+                    onWritable();
+                });
+                return;
+            }
+            scheduled.set(false);
+            // A line may have arrived after the last poll but before the flag cleared
+            if (!inbox.isEmpty()) {
+                schedule();
+            }
+        }
+
+        /** Selector thread: queues bytes and asks for write readiness. */
+        private void enqueue(byte[] bytes) {
+            if (!channel.isOpen()) {
+                return;
+            }
+            outbound.add(ByteBuffer.wrap(bytes));
+            backlog += bytes.length;
+            onWritable();
+        }
+
+        /** Writes as much queued output as the socket takes. */
+        void onWritable() {
+            try {
+                while (!outbound.isEmpty()) {
+                    ByteBuffer head = outbound.peek();
+                    int written = channel.write(head);
+                    backlog -= written;
+                    if (head.hasRemaining()) {
+                        break;
+                    }
+                    outbound.poll();
+                }
+            } catch (IOException e) {
+                closeNow();
+                return;
+            }
+            if (outbound.isEmpty() && closing) {
+                closeNow();
+                return;
+            }
+            updateInterest();
+        }
+
+        /** Selector thread: asks for writes while output is queued and reads while neither side is backed up. */
+        private void updateInterest() {
+            if (key != null && key.isValid()) {
+                int ops = outbound.isEmpty() ? 0 : SelectionKey.OP_WRITE;
+                // Stop reading from clients that do not read their replies or outpace the workers
+                if (backlog < MAX_BACKLOG && inboxDepth.get() < MAX_INBOX) {
+                    ops |= SelectionKey.OP_READ;
+                }
+                key.interestOps(ops);
+            }
+        }
+
+        /** Called by the exit command: close once the goodbye has been sent. */
+        @Override
+        public void close() {
+            closeAfterFlush = true;
+        }
+
+        void closeNow() {
+            // Both a failed write and shutdown may get here; report the disconnect once
+            if (closed) {
+                return;
+            }
+            closed = true;
+            handler.disconnected();
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // intentionally blank
+            }
+        }
+    }
+}
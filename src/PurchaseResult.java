@@ -0,0 +1,25 @@
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Outcome of {@link DatabaseInterface#buy(String, String)}. Only
+ * {@link #BOUGHT} moves money or ownership.
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public enum PurchaseResult {
+    /** The item now belongs to the buyer and the seller has been paid. */
+    BOUGHT,
+    /** No listing has that name. */
+    NOT_FOUND,
+    /** Every listing with that name was claimed by another buyer first. */
+    SOLD_OUT,
+    /** The only listings with that name belong to the buyer. */
+    OWN_ITEM,
+    /** The buyer's balance is less than the price; the item stays listed. */
+    INSUFFICIENT_FUNDS,
+    /** The buyer is not a registered user. */
+    UNKNOWN_BUYER
+}
@@ -0,0 +1,275 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Follower side of replication: keeps a {@link Database1} in step with a
+ * primary's {@link ReplicationSource}. Records are applied in lsn order on
+ * one thread and, if the follower has a data directory, logged there under
+ * the primary's lsns, so a restarted follower resumes where it stopped. A
+ * lost connection is retried until {@link #promote()} is called.
+ *
+ * <p>A snapshot from the primary is loaded into a new database, which then
+ * replaces the old one; see {@link #onDatabaseReplaced}.</p>
+ *
+ * <p>Staleness is measured from heartbeats: each carries the primary's
+ * written lsn, and once everything up to that lsn has been applied, this
+ * follower is known to be current as of the moment the heartbeat arrived.
+ * {@link #stalenessMillis()} is the time since then.</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class ReplicationFollower {
+    /** Longest wait between attempts to reach the primary. */
+    private static final long MAX_RETRY_MILLIS = 2000;
+
+    private volatile Database1 db;
+    /** Told about each database that replaces {@link #db}. */
+    private volatile Consumer<Database1> replaced = d -> { };
+    private final String host;
+    private final int port;
+    private final Thread thread;
+    private volatile boolean stopped;
+    private volatile Socket socket;
+    private volatile boolean connected;
+    /** Last lsn applied; only the replication thread writes it. */
+    private volatile long appliedLsn;
+    /** Newest written lsn the primary reported. */
+    private volatile long primaryLsn;
+    /** When this follower last had everything the primary had written as of some heartbeat. */
+    private volatile long currentAsOfNanos;
+    private volatile boolean everCurrent;
+    private volatile long reconnects;
+    private volatile long snapshotsInstalled;
+    /** Heartbeats whose lsn is not applied yet: {lsn, arrival nanos}. */
+    private final ArrayDeque<long[]> heartbeats = new ArrayDeque<>();
+
+    /**
+     * Starts following a primary. The database stops logging changes of its
+     * own until the follower is promoted.
+     * @param db the follower's database; if it has a journal, replication
+     *           resumes after the journal's last record
+     * @param host the primary's host
+     * @param port the primary's replication port
+     */
+    public ReplicationFollower(Database1 db, String host, int port) {
+        this.db = db;
+        this.host = host;
+        this.port = port;
+        Journal journal = db.getJournal();
+        this.appliedLsn = journal == null ? 0 : journal.getWrittenLsn();
+        db.setFollowing(true);
+        this.thread = new Thread(this::run, "ReplicationFollower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        long retry = 50;
+        while (!stopped) {
+            try (Socket s = new Socket(host, port)) {
+                socket = s;
+                if (stopped) {
+                    break;
+                }
+                s.setTcpNoDelay(true);
+                connected = true;
+                retry = 50;
+                stream(s);
+            } catch (IOException e) {
+                if (!stopped && connected) {
+                    System.err.println("Replication from " + host + ":" + port + " lost: "
+                            + (e instanceof EOFException ? "primary closed the connection" : e.getMessage()));
+                }
+            } finally {
+                connected = false;
+                heartbeats.clear();
+            }
+            if (!stopped) {
+                reconnects++;
+                try {
+                    Thread.sleep(retry);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                retry = Math.min(retry * 2, MAX_RETRY_MILLIS);
+            }
+        }
+    }
+
+    /** Applies the primary's stream until the connection ends. */
+    private void stream(Socket s) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 64 * 1024));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+        out.writeUTF(ReplicationSource.HELLO);
+        out.writeLong(appliedLsn);
+        out.flush();
+        while (!stopped) {
+            byte type = in.readByte();
+            if (type == ReplicationSource.BATCH) {
+                byte[] frames = new byte[in.readInt()];
+                in.readFully(frames);
+                applyBatch(frames);
+            } else if (type == ReplicationSource.HEARTBEAT) {
+                long lsn = in.readLong();
+                primaryLsn = Math.max(primaryLsn, lsn);
+                heartbeats.add(new long[] {lsn, System.nanoTime()});
+                markCurrent();
+                out.writeByte(ReplicationSource.ACK);
+                out.writeLong(appliedLsn);
+                out.flush();
+            } else if (type == ReplicationSource.SNAPSHOT) {
+                long lsn = in.readLong();
+                installSnapshot(in, lsn, in.readLong());
+            } else {
+                throw new IOException("Unknown replication message " + type);
+            }
+        }
+    }
+
+    private void applyBatch(byte[] frames) throws IOException {
+        for (JournalRecord record : Journal.decode(frames)) {
+            long lsn = record.getLsn();
+            // Batches queued while catching up repeat records already read from disk
+            if (lsn <= appliedLsn) {
+                continue;
+            }
+            if (lsn != appliedLsn + 1) {
+                throw new IOException("Missing records " + (appliedLsn + 1) + " to " + (lsn - 1));
+            }
+            db.replicate(record);
+            appliedLsn = lsn;
+        }
+        markCurrent();
+    }
+
+    /** Moves the current-as-of time forward past every heartbeat now applied. */
+    private void markCurrent() {
+        long[] h;
+        while ((h = heartbeats.peek()) != null && h[0] <= appliedLsn) {
+            heartbeats.poll();
+            currentAsOfNanos = h[1];
+            everCurrent = true;
+        }
+    }
+
+    /**
+     * Replaces the database with a snapshot from the primary. With a data
+     * directory the snapshot is kept there, so recovery starts from it.
+     */
+    private void installSnapshot(DataInputStream in, long lsn, long length) throws IOException {
+        Journal journal = db.getJournal();
+        Path file = journal == null ? Files.createTempFile("replica", ".snap")
+                : Snapshot.fileFor(journal.getDirectory(), lsn);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream copy = Files.newOutputStream(tmp)) {
+            byte[] buffer = new byte[64 * 1024];
+            for (long left = length; left > 0; ) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+                if (n < 0) {
+                    throw new IOException("Snapshot cut short");
+                }
+                copy.write(buffer, 0, n);
+                left -= n;
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        db = db.loadReplacement(file);
+        replaced.accept(db);
+        if (journal == null) {
+            Files.delete(file);
+        }
+        appliedLsn = lsn;
+        snapshotsInstalled++;
+        System.out.println("Replication: installed snapshot at lsn " + lsn);
+    }
+
+    /** @return the database this follower keeps current */
+    public Database1 getDatabase() {
+        return db;
+    }
+
+    /**
+     * @param listener called with the new database each time an installed
+     *                 snapshot replaces the old one, so whoever serves
+     *                 clients can switch to it
+     */
+    public void onDatabaseReplaced(Consumer<Database1> listener) {
+        replaced = listener;
+    }
+
+    /** @return the last lsn applied */
+    public long getAppliedLsn() {
+        return appliedLsn;
+    }
+
+    /** @return records the primary had written, as of its last heartbeat, that are not applied yet */
+    public long lagRecords() {
+        return Math.max(0, primaryLsn - appliedLsn);
+    }
+
+    /**
+     * @return milliseconds since this follower was last known to hold
+     *         everything the primary had written, or {@code Long.MAX_VALUE}
+     *         if it has never caught up
+     */
+    public long stalenessMillis() {
+        return everCurrent ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - currentAsOfNanos) : Long.MAX_VALUE;
+    }
+
+    /** @return whether the stream from the primary is open */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Stops following: disconnects from the primary, waits for the record
+     * being applied, and lets the database take changes of its own. Call it
+     * only once the old primary is down or cut off, or both will take writes.
+     * @return the last lsn applied; the new primary's records follow it
+     */
+    public long promote() {
+        stopped = true;
+        Socket s = socket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException ignored) {
+                // intentionally blank
+            }
+        }
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        db.setFollowing(false);
+        return appliedLsn;
+    }
+
+    /** @return lag, staleness and connection state, for the {@code stats} command */
+    public String report() {
+        long staleness = stalenessMillis();
+        return String.format("Replica of %s:%d: %s, applied lsn %d, %d records behind, current as of %s, "
+                        + "%d reconnects, %d snapshots installed%n", host, port,
+                connected ? "connected" : "disconnected", appliedLsn, lagRecords(),
+                staleness == Long.MAX_VALUE ? "never" : staleness + " ms ago", reconnects, snapshotsInstalled);
+    }
+}
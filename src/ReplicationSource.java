@@ -0,0 +1,282 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Primary side of replication: streams the {@link Journal} to every
+ * {@link ReplicationFollower} connected to the replication port.
+ *
+ * <p>A follower connects and says which lsn it has applied. If the journal
+ * segments after that lsn are gone, it is first sent the newest snapshot.
+ * It then gets the records it is missing, read back from the segments, and
+ * after that every batch the journal writer writes, as the same frames that
+ * went to disk. A follower that falls too far behind the live stream is
+ * disconnected and catches up from disk when it reconnects, so a slow
+ * follower never holds up the journal.</p>
+ *
+ * <p>Every {@link #HEARTBEAT_MILLIS} the primary sends its written lsn, and
+ * the follower answers with the lsn it has applied; {@link #report()} shows
+ * each follower's lag from those answers.</p>
+ *
+ * <p>Messages on the stream are a type byte and its fields: {@code 'S'} lsn,
+ * length and snapshot bytes; {@code 'B'} length and journal frames;
+ * {@code 'H'} the primary's written lsn. Followers send {@code 'A'} and their
+ * applied lsn.</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class ReplicationSource implements Closeable {
+    /** Greeting a follower opens with, followed by its applied lsn. */
+    static final String HELLO = "FOLLOW";
+    static final byte SNAPSHOT = 'S';
+    static final byte BATCH = 'B';
+    static final byte HEARTBEAT = 'H';
+    static final byte ACK = 'A';
+    /** Time between heartbeats on an idle stream. */
+    static final long HEARTBEAT_MILLIS = 100;
+    /** Live batches a follower may have queued before it is cut off. */
+    private static final int QUEUE_BATCHES = 4096;
+    /** Records read back from disk per batch while a follower catches up. */
+    private static final int CATCH_UP_BYTES = 64 * 1024;
+
+    /** One connected follower. */
+    private static final class Follower {
+        final Socket socket;
+        final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        final Consumer<byte[]> listener;
+        volatile boolean overflowed;
+        volatile long ackedLsn = -1;
+        volatile long ackedAtNanos = System.nanoTime();
+
+        Follower(Socket socket) {
+            this.socket = socket;
+            this.listener = batch -> {
+                if (!queue.offer(batch)) {
+                    overflowed = true;
+                }
+            };
+        }
+    }
+
+    private final Journal journal;
+    private final ServerSocket serverSocket;
+    private final CopyOnWriteArrayList<Follower> followers = new CopyOnWriteArrayList<>();
+    private volatile boolean running = true;
+
+    /**
+     * Starts accepting followers.
+     * @param journal the primary's journal
+     * @param port replication port, or 0 for any free one
+     * @throws IOException if the port cannot be opened
+     */
+    public ReplicationSource(Journal journal, int port) throws IOException {
+        this.journal = journal;
+        // Followers run on this machine; the stream is not authenticated
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "ReplicationSource");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** @return the port followers connect to */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread.ofVirtual().name("ReplicationStream").start(() -> stream(socket));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Replication accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Serves one follower until it disconnects, falls behind, or the source closes. */
+    private void stream(Socket socket) {
+        Follower f = new Follower(socket);
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(),
+                    CATCH_UP_BYTES));
+            if (!HELLO.equals(in.readUTF())) {
+                return;
+            }
+            long sent = in.readLong();
+            // Listen before reading the disk, so every batch is either on disk or queued
+            journal.addListener(f.listener);
+            followers.add(f);
+            Thread.ofVirtual().name("ReplicationAcks").start(() -> readAcks(f, in));
+            sent = catchUp(out, sent);
+            out.writeByte(HEARTBEAT);
+            out.writeLong(sent);
+            out.flush();
+            long lastHeartbeat = System.nanoTime();
+            while (running && !f.overflowed) {
+                byte[] batch = f.queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                while (batch != null) {
+                    out.writeByte(BATCH);
+                    out.writeInt(batch.length);
+                    out.write(batch);
+                    batch = f.queue.poll();
+                }
+                if (System.nanoTime() - lastHeartbeat >= TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MILLIS)) {
+                    out.writeByte(HEARTBEAT);
+                    out.writeLong(journal.getWrittenLsn());
+                    lastHeartbeat = System.nanoTime();
+                }
+                out.flush();
+            }
+            if (f.overflowed) {
+                System.err.println("Replication: follower " + socket.getRemoteSocketAddress()
+                        + " fell behind; it will catch up from disk");
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Replication to " + socket.getRemoteSocketAddress() + " ended: "
+                        + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            journal.removeListener(f.listener);
+            followers.remove(f);
+        }
+    }
+
+    /**
+     * Sends what a follower that has applied {@code sent} is missing up to
+     * the written lsn: the newest snapshot if the segments no longer reach
+     * back that far, then the records after it.
+     * @return the last lsn sent
+     */
+    private long catchUp(DataOutputStream out, long sent) throws IOException {
+        // Nothing after sent may be deleted until it is sent, even if a snapshot covers it
+        journal.pin(sent);
+        try {
+            return sendMissing(out, sent);
+        } finally {
+            journal.unpin(sent);
+        }
+    }
+
+    private long sendMissing(DataOutputStream out, long sent) throws IOException {
+        Path dir = journal.getDirectory();
+        long through = journal.getWrittenLsn();
+        long oldest = Journal.oldestLsn(dir);
+        if (sent < through && (oldest < 0 || oldest > sent + 1)) {
+            long lsn = Snapshot.latestLsn(dir);
+            Path file = Snapshot.fileFor(dir, lsn);
+            // A snapshot replaced meanwhile is unlinked, but stays readable while open
+            try (InputStream snapshot = Files.newInputStream(file)) {
+                out.writeByte(SNAPSHOT);
+                out.writeLong(lsn);
+                out.writeLong(Files.size(file));
+                snapshot.transferTo(out);
+            }
+            sent = lsn;
+        }
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(CATCH_UP_BYTES);
+        IOException[] failed = new IOException[1];
+        long last = Journal.replay(dir, sent, through, record -> {
+            Journal.encode(batch, record);
+            if (batch.size() >= CATCH_UP_BYTES && failed[0] == null) {
+                failed[0] = sendBatch(out, batch);
+            }
+        }, false);
+        if (failed[0] == null) {
+            failed[0] = sendBatch(out, batch);
+        }
+        if (failed[0] != null) {
+            throw failed[0];
+        }
+        return Math.max(sent, last);
+    }
+
+    private static IOException sendBatch(DataOutputStream out, ByteArrayOutputStream batch) {
+        if (batch.size() == 0) {
+            return null;
+        }
+        try {
+            out.writeByte(BATCH);
+            out.writeInt(batch.size());
+            batch.writeTo(out);
+            batch.reset();
+            return null;
+        } catch (IOException e) {
+            return e;
+        }
+    }
+
+    /** Records the follower's acknowledgements until the connection ends. */
+    private void readAcks(Follower f, DataInputStream in) {
+        try {
+            while (true) {
+                if (in.readByte() != ACK) {
+                    throw new IOException("Unexpected message from follower");
+                }
+                f.ackedLsn = in.readLong();
+                f.ackedAtNanos = System.nanoTime();
+            }
+        } catch (IOException e) {
+            // Closing the socket ends the stream thread too
+            try {
+                f.socket.close();
+            } catch (IOException ignored) {
+                // intentionally blank
+            }
+        }
+    }
+
+    /**
+     * @return one line per follower with its applied lsn and how far it is
+     *         behind, for the {@code stats} command
+     */
+    public String report() {
+        long written = journal.getWrittenLsn();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Replication: primary at lsn %d, %d followers%n", written, followers.size()));
+        for (Follower f : followers) {
+            long acked = Math.max(0, f.ackedLsn);
+            sb.append(String.format("  %s applied lsn %d, %d records behind, last ack %d ms ago%n",
+                    f.socket.getRemoteSocketAddress(), acked, Math.max(0, written - acked),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - f.ackedAtNanos)));
+        }
+        return sb.toString();
+    }
+
+    /** Stops accepting followers and disconnects the ones connected. */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        for (Follower f : followers) {
+            f.socket.close();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Path;
 
 /**
  * Phase 2 of CS180 Group Project
@@ -12,32 +13,172 @@ import java.net.Socket;
  */
 public class Server implements Runnable, ServerInterface {
     public static final int PORT = 12345;
+    private final int port;
+    // Starts the thread that serves each accepted client
+    private final Thread.Builder handlerThreads;
     private volatile boolean running = false;
     private ServerSocket serverSocket;
 
-    /** Entry point: spins up a thread running this Server instance. */
+    /** Creates a server on {@link #PORT} with one platform thread per client. */
+    public Server() {
+        this(PORT, false);
+    }
+
+    /**
+     * @param port TCP port to listen on
+     * @param virtualThreads run each client on a virtual thread instead of a
+     *                       platform thread, so idle clients cost a few KB of
+     *                       heap rather than a whole thread stack
+     */
+    public Server(int port, boolean virtualThreads) {
+        this.port = port;
+        this.handlerThreads = virtualThreads
+                ? Thread.ofVirtual().name("ClientHandler")
+                : Thread.ofPlatform().name("ClientHandler");
+    }
+
+    /**
+     * Entry point: spins up a thread running this Server instance.
+     * Pass {@code --data <dir>} to keep all state in a durable journal, and
+     * {@code --sync every_write|interval|os} with {@code --sync-interval <ms>}
+     * to choose when it is synced to disk. {@code --snapshot-interval <seconds>}
+     * sets how often a snapshot is taken (0 turns snapshots off).
+     * {@code --io nio} serves clients from a few selector threads with
+     * {@link NioServer} instead of one thread per client, and {@code --io virtual}
+     * gives each client a virtual thread. {@code --stats-interval <seconds>}
+     * prints the {@code stats} report that often (0, the default, never), and
+     * {@code --stats off} stops timing commands altogether. The {@code stats}
+     * command is refused unless the server was started with
+     * {@code --allow-stats on}, and then accepted only from clients on the
+     * same machine. {@code --shards <n>}
+     * splits the marketplace across n {@link ShardedDatabase} shards; it keeps
+     * state in memory only, so it cannot be combined with {@code --data}.
+     *
+     * <p>Replication: {@code --replicate-port <port>} ships the journal of a
+     * server started with {@code --data} to followers. {@code --follow
+     * <host:port>} starts a read-only follower of the primary with that
+     * replication port, durable if it also has {@code --data}; it refuses
+     * queries while more than {@code --max-staleness <ms>} (5000) behind, and
+     * the {@code promote} command makes it a primary. Promotion is refused
+     * unless the follower was started with {@code --allow-promote on}, and
+     * then accepted only from clients on the same machine.
+     * {@code --port <port>} moves the client port so several servers can run
+     * on one machine.</p>
+     */
     public static void main(String[] args) {
-        Server server = new Server();
+        String dataDir = null;
+        Journal.SyncPolicy policy = Journal.SyncPolicy.EVERY_WRITE;
+        long syncInterval = 10;
+        long snapshotSeconds = 300;
+        String io = "threads";
+        long statsSeconds = 0;
+        int shards = 0;
+        int port = PORT;
+        int replicatePort = 0;
+        String follow = null;
+        long maxStaleness = 5000;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--data" -> dataDir = args[i + 1];
+                case "--sync" -> policy = Journal.SyncPolicy.valueOf(args[i + 1].toUpperCase());
+                case "--sync-interval" -> syncInterval = Long.parseLong(args[i + 1]);
+                case "--snapshot-interval" -> snapshotSeconds = Long.parseLong(args[i + 1]);
+                case "--io" -> io = args[i + 1].toLowerCase();
+                case "--stats" -> ClientHandler.STATS.setEnabled(!args[i + 1].equalsIgnoreCase("off"));
+                case "--stats-interval" -> statsSeconds = Long.parseLong(args[i + 1]);
+                case "--shards" -> shards = Integer.parseInt(args[i + 1]);
+                case "--port" -> port = Integer.parseInt(args[i + 1]);
+                case "--replicate-port" -> replicatePort = Integer.parseInt(args[i + 1]);
+                case "--follow" -> follow = args[i + 1];
+                case "--max-staleness" -> maxStaleness = Long.parseLong(args[i + 1]);
+                case "--allow-promote" -> ClientHandler.setPromoteAllowed(args[i + 1].equalsIgnoreCase("on"));
+                case "--allow-stats" -> ClientHandler.setStatsAllowed(args[i + 1].equalsIgnoreCase("on"));
+                default -> System.err.println("Ignoring unknown option " + args[i]);
+            }
+        }
+        if (shards > 0 && (dataDir != null || follow != null || replicatePort > 0)) {
+            System.err.println("--shards keeps state in memory and cannot be used with --data or replication");
+            return;
+        }
+        if (replicatePort > 0 && dataDir == null) {
+            System.err.println("--replicate-port ships the journal, so it needs --data");
+            return;
+        }
+        if (shards > 0) {
+            ClientHandler.setDatabase(new ShardedDatabase(shards));
+            System.out.println("Marketplace split across " + shards + " shards (memory only)");
+        }
+        if (dataDir != null) {
+            try {
+                Database1 db = Database1.open(Path.of(dataDir), policy, syncInterval);
+                if (snapshotSeconds > 0) {
+                    db.startSnapshots(Path.of(dataDir), snapshotSeconds * 1000);
+                }
+                ClientHandler.setDatabase(db);
+                if (replicatePort > 0) {
+                    ReplicationSource source = new ReplicationSource(db.getJournal(), replicatePort);
+                    ClientHandler.setReplicationSource(source);
+                    System.out.println("Shipping the journal to followers on port " + replicatePort);
+                }
+                ReplicationFollower follower = follow == null ? null : startFollowing(db, follow, maxStaleness);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        // An installed snapshot moves the journal to a new database
+                        (follower == null ? db : follower.getDatabase()).close();
+                    } catch (IOException e) {
+                        System.err.println("Journal close failed: " + e.getMessage());
+                    }
+                }, "JournalShutdown"));
+                System.out.println("Recovered state from " + dataDir + " (sync " + policy + ")");
+            } catch (IOException e) {
+                System.err.println("Could not open data directory: " + e.getMessage());
+                return;
+            }
+        } else if (follow != null) {
+            Database1 db = new Database1();
+            ClientHandler.setDatabase(db);
+            startFollowing(db, follow, maxStaleness);
+        }
+        if (statsSeconds > 0) {
+            ClientHandler.startStatsDump(statsSeconds * 1000);
+        }
+        Runnable server = switch (io) {
+            case "nio" -> new NioServer(port);
+            case "virtual" -> new Server(port, true);
+            default -> new Server(port, false);
+        };
         Thread srvThread = new Thread(server, "MarketplaceServer");
         srvThread.start();
     }
 
+    /** Makes this server a read-only follower of the primary at {@code hostPort}. */
+    private static ReplicationFollower startFollowing(Database1 db, String hostPort, long maxStaleness) {
+        int colon = hostPort.lastIndexOf(':');
+        ReplicationFollower follower = new ReplicationFollower(db, hostPort.substring(0, colon),
+                Integer.parseInt(hostPort.substring(colon + 1)));
+        ClientHandler.setReplica(follower, maxStaleness);
+        System.out.println("Following " + hostPort + " from lsn " + follower.getAppliedLsn());
+        return follower;
+    }
+
     /** The Runnable.run that does the accept‐loop. */
     @Override
     public void run() {
         running = true;
         try {
-            serverSocket = new ServerSocket(PORT);
-            System.out.println("Server started on port " + PORT);
+            serverSocket = new ServerSocket(port);
+            System.out.println("Server started on port " + port);
 
             while (running) {
                 Socket clientSocket = serverSocket.accept();
                 System.out.println("Client connected.");
                 // each client in its own thread
-                new Thread(new ClientHandler(clientSocket), "ClientHandler").start();
+                handlerThreads.start(new ClientHandler(clientSocket));
             }
         } catch (IOException e) {
-            System.err.println("Server error: " + e.getMessage());
+            if (running) {
+                System.err.println("Server error: " + e.getMessage());
+            }
         } finally {
             stop();
         }
@@ -0,0 +1,178 @@
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Counters the server keeps about itself: how many times each command ran,
+ * a {@link LatencyHistogram} of its run time, and the number of open and total
+ * connections. {@link #report} formats them, together with the database's
+ * lock waits, for the {@code stats} command and the periodic dump.
+ *
+ * <p>Every command is counted, but only a random one in {@link #SAMPLE_EVERY}
+ * is timed. Reading the clock twice costs about as much as the rest of a
+ * cheap command's bookkeeping put together, and a random sample keeps the
+ * percentiles unbiased; only the maximum may miss a rare outlier. When stats
+ * are disabled nothing is counted at all.</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class ServerStats {
+    /** One command in this many is timed; a power of two. */
+    static final int SAMPLE_EVERY = 64;
+
+    /** Counters for one command. */
+    private static final class Counters {
+        final LongAdder calls = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    private final long startedAt = System.nanoTime();
+    private final ConcurrentHashMap<String, Counters> commands = new ConcurrentHashMap<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final LongAdder totalConnections = new LongAdder();
+    private volatile boolean enabled = true;
+    private ScheduledExecutorService dumper;
+
+    /** @param on whether commands are timed from now on */
+    public void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /** @return whether commands are being timed */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Call just before running a command.
+     * @return the value to pass to {@link #finish}: the clock if this command
+     *         is timed, 0 if it is only counted, -1 if stats are disabled
+     */
+    public long start() {
+        if (!enabled) {
+            return -1;
+        }
+        return (ThreadLocalRandom.current().nextInt() & (SAMPLE_EVERY - 1)) == 0 ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Counts a command and, if it was sampled, records its run time.
+     * @param command the command's name
+     * @param started what {@link #start} returned before it ran
+     */
+    public void finish(String command, long started) {
+        if (started == -1) {
+            return;
+        }
+        Counters counters = commands.get(command);
+        if (counters == null) {
+            counters = commands.computeIfAbsent(command, name -> new Counters());
+        }
+        counters.calls.increment();
+        if (started != 0) {
+            counters.latency.record(System.nanoTime() - started);
+        }
+    }
+
+    /** Counts a client that just connected. */
+    public void connectionOpened() {
+        openConnections.incrementAndGet();
+        totalConnections.increment();
+    }
+
+    /** Counts a client that just went away. */
+    public void connectionClosed() {
+        openConnections.decrementAndGet();
+    }
+
+    /** @return commands run since the server started, timed or not */
+    public long commandCount() {
+        long n = 0;
+        for (Counters counters : commands.values()) {
+            n += counters.calls.sum();
+        }
+        return n;
+    }
+
+    /**
+     * Formats every counter: a summary line, one line per command that has
+     * run, and the database's lock waits. Times are in microseconds; command
+     * times are from the sampled runs.
+     * @param db database whose lock waits to include, or null
+     * @return the report, one line per row
+     */
+    public String report(DatabaseInterface db) {
+        double seconds = Math.max(1e-9, (System.nanoTime() - startedAt) / 1e9);
+        long total = commandCount();
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        out.printf("Uptime %.1f s, %d commands (%.1f/s), connections %d open, %d total%n", seconds, total,
+                total / seconds, openConnections.get(), totalConnections.sum());
+        out.printf("%-16s %10s %10s %10s %10s %10s %10s%n", "command", "count", "per sec", "p50 us", "p99 us",
+                "p999 us", "max us");
+        for (Map.Entry<String, Counters> e : new TreeMap<>(commands).entrySet()) {
+            long calls = e.getValue().calls.sum();
+            out.printf("%-16s %10d %10.1f %s%n", e.getKey(), calls, calls / seconds,
+                    percentiles(e.getValue().latency));
+        }
+        if (db != null) {
+            LatencyHistogram waits = db.getLockWaits();
+            out.printf("%-16s %10d %10s %s%n", "lock waits", waits.count(), "of " + db.getLockAcquisitions(),
+                    percentiles(waits));
+        }
+        out.flush();
+        return text.toString();
+    }
+
+    private static String percentiles(LatencyHistogram h) {
+        return String.format("%10.1f %10.1f %10.1f %10.1f", h.percentile(0.5) / 1e3, h.percentile(0.99) / 1e3,
+                h.percentile(0.999) / 1e3, h.max() / 1e3);
+    }
+
+    /**
+     * Prints a report to standard output every period, headed by the number
+     * of commands run since the previous one. Replaces any earlier dump.
+     * @param periodMillis time between reports
+     * @param report produces the report text, e.g. {@code () -> report(db)}
+     */
+    public synchronized void startDump(long periodMillis, Supplier<String> report) {
+        stopDump();
+        long[] last = {commandCount(), System.nanoTime()};
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "StatsDump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> {
+            long count = commandCount();
+            long now = System.nanoTime();
+            double seconds = Math.max(1e-9, (now - last[1]) / 1e9);
+            System.out.printf("Stats: %d commands in the last %.0f s (%.1f/s)%n%s", count - last[0], seconds,
+                    (count - last[0]) / seconds, report.get());
+            last[0] = count;
+            last[1] = now;
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Stops the periodic dump, if one is running. */
+    public synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+}
@@ -0,0 +1,417 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * A marketplace split across several {@link Database1} shards. Each user
+ * lives in the shard their name hashes to, together with their inventory,
+ * their listings and their side of every conversation, so operations on
+ * users in different shards share no locks or indexes at all.
+ *
+ * <p>Purchases and messages between users in two shards lock one stripe in
+ * each, always the lower-numbered shard first. Every operation within one
+ * shard locks stripes of that shard only, so the shards' locks are always
+ * taken in one global order and can never deadlock. A message between shards
+ * is stored in both; an item bought across shards moves to the buyer's
+ * shard.</p>
+ *
+ * <p>Listing queries ask every shard at once and merge the answers; each
+ * shard returns at most a page, so the merge is never larger than shards
+ * times page size. Item ids, message sequence numbers and the catalog log are
+ * shared, so they stay unique and ordered across shards.</p>
+ *
+ * <p>Sharded databases are memory-only: a purchase across shards would have
+ * to be journaled in two places atomically.</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class ShardedDatabase implements DatabaseInterface {
+    private final Database1[] shards;
+    private final AtomicLong nextMessageSequence = new AtomicLong(1);
+    /** Runs the queries to every shard but the first, which the caller's thread answers itself. */
+    private final ExecutorService scatter;
+
+    /**
+     * Creates an empty sharded database.
+     * @param count number of shards, at least 1
+     */
+    public ShardedDatabase(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Need at least one shard");
+        }
+        AtomicLong itemIds = new AtomicLong(1);
+        CatalogLog catalog = new CatalogLog();
+        shards = new Database1[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Database1(Database1.LockMode.STRIPED, itemIds, nextMessageSequence, catalog);
+        }
+        scatter = Executors.newFixedThreadPool(Math.max(1, Math.min(count - 1,
+                Runtime.getRuntime().availableProcessors())), r -> {
+                    Thread t = new Thread(r, "shard-query");
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /** @return the number of shards */
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @param username a user's name
+     * @return the index of the shard that holds them
+     */
+    int shardIndex(String username) {
+        // Taken from the top bits of a second hash, so a shard's users still
+        // spread over all of its lock stripes
+        int h = username.hashCode() * 0x9E3779B9;
+        return (h >>> 16) % shards.length;
+    }
+
+    private Database1 shardFor(String username) {
+        return shards[shardIndex(username)];
+    }
+
+    /**
+     * Asks every shard the same question in parallel.
+     * @return each shard's answer, in shard order
+     */
+    private <T> List<T> gather(Function<Database1, T> query) {
+        List<CompletableFuture<T>> pending = new ArrayList<>(shards.length);
+        for (int i = 1; i < shards.length; i++) {
+            Database1 shard = shards[i];
+            pending.add(CompletableFuture.supplyAsync(() -> query.apply(shard), scatter));
+        }
+        List<T> answers = new ArrayList<>(shards.length);
+        answers.add(query.apply(shards[0]));
+        try {
+            for (CompletableFuture<T> f : pending) {
+                answers.add(f.join());
+            }
+        } catch (CompletionException e) {
+            // A bad cursor is rejected by every shard alike; report it as the caller expects
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return answers;
+    }
+
+    @Override
+    public boolean addUser(String username, String password, double balance, ArrayList<String> messageUser) {
+        return shardFor(username).addUser(username, password, balance, messageUser);
+    }
+
+    @Override
+    public boolean login(String username, String password) {
+        return shardFor(username).login(username, password);
+    }
+
+    @Override
+    public User getUser(String username) {
+        return shardFor(username).getUser(username);
+    }
+
+    /**
+     * Deletes a user, then removes their conversations from the shards of
+     * partners who live elsewhere.
+     */
+    @Override
+    public boolean deleteUser(String username, String password) {
+        Database1 home = shardFor(username);
+        HashSet<String> partners = new HashSet<>();
+        for (Message m : home.getSingleUserMessage(username)) {
+            partners.add(m.getSender().equals(username) ? m.getReceiver() : m.getSender());
+        }
+        if (!home.deleteUser(username, password)) {
+            return false;
+        }
+        for (String partner : partners) {
+            Database1 other = shardFor(partner);
+            if (other != home) {
+                other.forgetConversation(username, partner);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean addItem(String name, double cost, String sellerUsername) {
+        return shardFor(sellerUsername).addItem(name, cost, sellerUsername);
+    }
+
+    @Override
+    public boolean sellItem(String username, String itemName) {
+        return shardFor(username).sellItem(username, itemName);
+    }
+
+    @Override
+    public boolean unsellItem(String username, String itemName) {
+        return shardFor(username).unsellItem(username, itemName);
+    }
+
+    /** @return every listing, in the order they were created */
+    @Override
+    public ArrayList<Item> getItems() {
+        ArrayList<Item> all = new ArrayList<>();
+        for (ArrayList<Item> part : gather(Database1::getItems)) {
+            all.addAll(part);
+        }
+        all.sort(Comparator.comparingLong(Item::getId));
+        return all;
+    }
+
+    /**
+     * Reprices an item in its owner's shard. That shard checks, under the
+     * owner's stripe, that the item is still theirs; a purchase across shards
+     * holds the same stripe while it moves the item, so an item that moved
+     * away is refused rather than edited in a shard that no longer holds it.
+     */
+    @Override
+    public boolean changeItemPrice(String owner, Item item, double newPrice) {
+        return shardFor(owner).changeItemPrice(owner, item, newPrice);
+    }
+
+    @Override
+    public boolean deleteItem(String name) {
+        for (Database1 shard : shards) {
+            if (shard.deleteItem(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Owned items anywhere come before listings, as in {@link Database1#searchOwnedItem}. */
+    @Override
+    public Item searchOwnedItem(String name) {
+        for (Database1 shard : shards) {
+            Item owned = shard.firstOwned(name);
+            if (owned != null) {
+                return owned;
+            }
+        }
+        return searchSoldItem(name);
+    }
+
+    @Override
+    public Item searchSoldItem(String name) {
+        for (Database1 shard : shards) {
+            Item listed = shard.searchSoldItem(name);
+            if (listed != null) {
+                return listed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sends a message. Between shards, both users' stripes are locked, lower
+     * shard first, and the message is stored in each.
+     * @return the stored message, with its sequence number
+     * @throws IllegalArgumentException if the message is too long to log, whichever shards the users are in
+     */
+    @Override
+    public Message sendMessage(String sender, String receiver, String message) {
+        JournalRecord.checkLength(message);
+        int a = shardIndex(sender);
+        int b = shardIndex(receiver);
+        if (a == b) {
+            return shards[a].sendMessage(sender, receiver, message);
+        }
+        String first = a < b ? sender : receiver;
+        String second = a < b ? receiver : sender;
+        Message m;
+        shards[Math.min(a, b)].lockUser(first);
+        shards[Math.max(a, b)].lockUser(second);
+        try {
+            User s = shards[a].getUser(sender);
+            User r = shards[b].getUser(receiver);
+            if (s != null && r != null) {
+                // Track each other in contact lists
+                if (!s.getMessageUsernameList().contains(receiver)) s.addMessageUsername(receiver);
+                if (!r.getMessageUsernameList().contains(sender)) r.addMessageUsername(sender);
+            }
+            m = new Message(nextMessageSequence.getAndIncrement(), sender, receiver, message);
+            shards[a].storeMessage(m, sender);
+            shards[b].storeMessage(m, receiver);
+        } finally {
+            shards[Math.max(a, b)].unlockUser(second);
+            shards[Math.min(a, b)].unlockUser(first);
+        }
+        return m;
+    }
+
+    /** @return every message once, grouped by conversation */
+    @Override
+    public ArrayList<Message> getMessages() {
+        // Conversations between shards are stored twice
+        LinkedHashMap<Long, Message> unique = new LinkedHashMap<>();
+        for (Database1 shard : shards) {
+            for (Message m : shard.getMessages()) {
+                unique.putIfAbsent(m.getSequence(), m);
+            }
+        }
+        return new ArrayList<>(unique.values());
+    }
+
+    @Override
+    public ArrayList<Message> getSingleUserMessage(String username) {
+        return shardFor(username).getSingleUserMessage(username);
+    }
+
+    @Override
+    public ArrayList<String> getMessageUserList(String username) {
+        return shardFor(username).getMessageUserList(username);
+    }
+
+    @Override
+    public ArrayList<Item> getOwnedItems(String username) {
+        return shardFor(username).getOwnedItems(username);
+    }
+
+    @Override
+    public ArrayList<Message> getSenderToReceiverMessage(String sender, String receiver) {
+        return shardFor(sender).getSenderToReceiverMessage(sender, receiver);
+    }
+
+    /** Same as {@link Database1#processTransaction}, for users in any shards. */
+    @Override
+    public void processTransaction(User buyer, User seller, Item boughtItem) {
+        if (!boughtItem.compareAndSetState(Item.State.LISTED, Item.State.SOLD)) {
+            System.out.println("Transaction invalid. Item is no longer for sale.");
+            return;
+        }
+        PurchaseResult result = completePurchase(buyer, seller, boughtItem);
+        if (result == PurchaseResult.NOT_FOUND) {
+            System.out.println("Transaction invalid. Item is no longer for sale.");
+        } else if (result == PurchaseResult.INSUFFICIENT_FUNDS) {
+            System.out.println("Transaction invalid. Buyer balance is less than item cost.");
+        }
+    }
+
+    /**
+     * Buys the first listing named {@code itemName}, in any shard, that the
+     * buyer does not own. Listings are claimed with the same compare-and-set
+     * as in {@link Database1#buy}.
+     */
+    @Override
+    public PurchaseResult buy(String buyerName, String itemName) {
+        User buyer = getUser(buyerName);
+        if (buyer == null) {
+            return PurchaseResult.UNKNOWN_BUYER;
+        }
+        boolean sawOwn = false;
+        boolean sawClaimed = false;
+        for (Database1 shard : shards) {
+            for (Item candidate : shard.listingsNamed(itemName)) {
+                if (buyerName.equals(candidate.getSeller())) {
+                    sawOwn = true;
+                    continue;
+                }
+                if (!candidate.compareAndSetState(Item.State.LISTED, Item.State.SOLD)) {
+                    sawClaimed |= candidate.getState() == Item.State.SOLD;
+                    continue;
+                }
+                User seller = shard.getUser(candidate.getSeller());
+                PurchaseResult result = seller == null ? PurchaseResult.NOT_FOUND
+                        : completePurchase(buyer, seller, candidate);
+                if (result != PurchaseResult.NOT_FOUND) {
+                    return result;
+                }
+            }
+        }
+        if (sawClaimed) {
+            return PurchaseResult.SOLD_OUT;
+        }
+        return sawOwn ? PurchaseResult.OWN_ITEM : PurchaseResult.NOT_FOUND;
+    }
+
+    /**
+     * Settles a claimed item. Within one shard this is that shard's own
+     * purchase; across two, the buyer's and seller's stripes are locked, lower
+     * shard first, and the item moves to the buyer's shard.
+     */
+    private PurchaseResult completePurchase(User buyer, User seller, Item boughtItem) {
+        int from = shardIndex(seller.getUsername());
+        int to = shardIndex(buyer.getUsername());
+        if (from == to) {
+            return shards[from].completePurchase(buyer, seller, boughtItem);
+        }
+        String first = from < to ? seller.getUsername() : buyer.getUsername();
+        String second = from < to ? buyer.getUsername() : seller.getUsername();
+        shards[Math.min(from, to)].lockUser(first);
+        shards[Math.max(from, to)].lockUser(second);
+        try {
+            return Database1.settle(buyer, seller, boughtItem, shards[from], shards[to]);
+        } finally {
+            shards[Math.max(from, to)].unlockUser(second);
+            shards[Math.min(from, to)].unlockUser(first);
+            shards[from].flushSearch();
+        }
+    }
+
+    @Override
+    public ListingIndex.Page getItemsPage(ListingIndex.Sort sort, String cursor, int limit) {
+        return ListingIndex.merge(sort, gather(shard -> shard.getItemsPage(sort, cursor, limit)), limit);
+    }
+
+    /** A seller's listings are all in their own shard; other range queries ask every shard. */
+    @Override
+    public ListingIndex.Page findItems(long minCents, long maxCents, String seller, String cursor, int limit) {
+        if (seller != null) {
+            return shardFor(seller).findItems(minCents, maxCents, seller, cursor, limit);
+        }
+        return ListingIndex.merge(ListingIndex.Sort.PRICE,
+                gather(shard -> shard.findItems(minCents, maxCents, null, cursor, limit)), limit);
+    }
+
+    @Override
+    public ArrayList<ItemSearchIndex.Hit> searchItems(String query, int limit) {
+        return ItemSearchIndex.merge(query, gather(shard -> shard.searchItems(query, limit)), limit);
+    }
+
+    /** The shards share one catalog log, so any of them answers for all. */
+    @Override
+    public long getCatalogVersion() {
+        return shards[0].getCatalogVersion();
+    }
+
+    @Override
+    public CatalogLog.Delta getCatalogChangesSince(long version) {
+        return shards[0].getCatalogChangesSince(version);
+    }
+
+    @Override
+    public long getLockAcquisitions() {
+        long total = 0;
+        for (Database1 shard : shards) {
+            total += shard.getLockAcquisitions();
+        }
+        return total;
+    }
+
+    @Override
+    public LatencyHistogram getLockWaits() {
+        LatencyHistogram all = new LatencyHistogram();
+        for (Database1 shard : shards) {
+            all.addAll(shard.getLockWaits());
+        }
+        return all;
+    }
+}
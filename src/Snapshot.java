@@ -0,0 +1,319 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Compact binary point-in-time image of a {@link Database1}. A snapshot holds
+ * every user, item and message as of one journal lsn. Recovery loads the
+ * newest snapshot and replays only the journal records after that lsn.
+ *
+ * <p>The file starts with a header, followed by sections of at most
+ * {@link #SECTION_BYTES} bytes. Each section holds records of one kind.
+ * Loading memory-maps one section at a time and decodes straight from the
+ * mapping, so no read buffers are copied. Sections stay far below the 2 GB
+ * limit of a single mapping.</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class Snapshot {
+    /** "MKTSNAP1" in ASCII. */
+    private static final long MAGIC = 0x4D4B54534E415031L;
+    /** Layout of the file; money is long cents. Bump when the layout changes. */
+    private static final int VERSION = 1;
+    /** Soft size limit of a section; a section is closed once it grows past this. */
+    private static final int SECTION_BYTES = 64 * 1024 * 1024;
+    private static final byte USERS = 0;
+    private static final byte ITEMS = 1;
+    private static final byte MESSAGES = 2;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+
+    private Snapshot() {
+    }
+
+    /**
+     * Writes a snapshot of a database that nobody else is modifying. The file
+     * is written under a temporary name, synced and then renamed, so a crash
+     * never leaves a partial snapshot behind.
+     * @param dir data directory
+     * @param db the database to capture
+     * @param lsn journal lsn the database reflects
+     * @return the snapshot file
+     * @throws IOException if writing fails
+     */
+    public static Path write(Path dir, Database1 db, long lsn) throws IOException {
+        Path target = fileFor(dir, lsn);
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(8 + 4 + 8 + 8 + 8);
+            header.putLong(MAGIC).putInt(VERSION).putLong(lsn)
+                    .putLong(db.peekNextItemId()).putLong(db.peekNextMessageSequence()).flip();
+            writeFully(out, header);
+
+            SectionWriter users = new SectionWriter(out, USERS);
+            for (User u : db.userRecords()) {
+                DataOutputStream d = users.record();
+                writeString(d, u.getUsername());
+                writeString(d, u.getPassword());
+                d.writeLong(u.getBalanceCents());
+                ArrayList<String> contacts = u.getMessageUsernameList();
+                d.writeInt(contacts.size());
+                for (String c : contacts) {
+                    writeString(d, c);
+                }
+            }
+            users.finish();
+
+            SectionWriter items = new SectionWriter(out, ITEMS);
+            for (Item i : db.itemRecords()) {
+                DataOutputStream d = items.record();
+                d.writeLong(i.getId());
+                writeString(d, i.getName());
+                d.writeLong(i.getCostCents());
+                writeString(d, i.getSeller());
+                d.writeBoolean(i.isSellable());
+            }
+            items.finish();
+
+            SectionWriter messages = new SectionWriter(out, MESSAGES);
+            for (Message m : db.messagesInOrder()) {
+                DataOutputStream d = messages.record();
+                d.writeLong(m.getSequence());
+                writeString(d, m.getSender());
+                writeString(d, m.getReceiver());
+                writeString(d, m.getMessage());
+            }
+            messages.finish();
+            out.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return target;
+    }
+
+    /**
+     * Loads the newest snapshot in a directory into an empty database.
+     * @param dir data directory
+     * @param db empty database to fill
+     * @return lsn of the loaded snapshot, or 0 if there is none
+     * @throws IOException if the snapshot cannot be read
+     */
+    public static long loadLatest(Path dir, Database1 db) throws IOException {
+        List<Path> snapshots = list(dir);
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+        return load(snapshots.get(snapshots.size() - 1), db);
+    }
+
+    /**
+     * @param dir data directory
+     * @return lsn of the newest snapshot, or 0 if there is none
+     * @throws IOException if the directory cannot be listed
+     */
+    public static long latestLsn(Path dir) throws IOException {
+        List<Path> snapshots = list(dir);
+        return snapshots.isEmpty() ? 0 : lsnOf(snapshots.get(snapshots.size() - 1));
+    }
+
+    /**
+     * @param dir data directory
+     * @param lsn journal lsn a snapshot reflects
+     * @return the name the snapshot at that lsn has in the directory
+     */
+    public static Path fileFor(Path dir, long lsn) {
+        return dir.resolve(String.format("%s%020d%s", PREFIX, lsn, SUFFIX));
+    }
+
+    /**
+     * Deletes every snapshot older than the given lsn.
+     * @param dir data directory
+     * @param lsn lsn of the snapshot to keep
+     * @throws IOException if a file cannot be deleted
+     */
+    public static void deleteOlderThan(Path dir, long lsn) throws IOException {
+        for (Path p : list(dir)) {
+            if (lsnOf(p) < lsn) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    /**
+     * Loads one snapshot file into an empty database.
+     * @param file the snapshot
+     * @param db empty database to fill
+     * @return lsn of the snapshot
+     * @throws IOException if the file is unreadable or not a snapshot
+     */
+    public static long load(Path file, Database1 db) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            MappedByteBuffer header = in.map(FileChannel.MapMode.READ_ONLY, 0, 36);
+            if (header.getLong() != MAGIC) {
+                throw new IOException("Not a snapshot: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            long lsn = header.getLong();
+            long nextItemId = header.getLong();
+            long nextMessageSequence = header.getLong();
+
+            long position = 36;
+            while (position < size) {
+                MappedByteBuffer sectionHeader = in.map(FileChannel.MapMode.READ_ONLY, position, 9);
+                byte kind = sectionHeader.get();
+                int count = sectionHeader.getInt();
+                int length = sectionHeader.getInt();
+                MappedByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, position + 9, length);
+                for (int r = 0; r < count; r++) {
+                    switch (kind) {
+                        case USERS -> {
+                            String username = readString(data);
+                            String password = readString(data);
+                            long balance = data.getLong();
+                            int contacts = data.getInt();
+                            ArrayList<String> list = new ArrayList<>(contacts);
+                            for (int c = 0; c < contacts; c++) {
+                                list.add(readString(data));
+                            }
+                            User user = new User(username, password, 0, list);
+                            user.setBalanceCents(balance);
+                            db.restoreUser(user);
+                        }
+                        case ITEMS -> {
+                            long id = data.getLong();
+                            String name = readString(data);
+                            long cost = data.getLong();
+                            String seller = canonical(db, readString(data));
+                            boolean listed = data.get() != 0;
+                            Item item = new Item(id, name, 0, seller);
+                            item.setCostCents(cost);
+                            db.restoreItem(item, listed);
+                        }
+                        case MESSAGES -> {
+                            long sequence = data.getLong();
+                            String sender = canonical(db, readString(data));
+                            String receiver = canonical(db, readString(data));
+                            db.restoreMessage(new Message(sequence, sender, receiver, readString(data)));
+                        }
+                        default -> throw new IOException("Unknown snapshot section " + kind);
+                    }
+                }
+                position += 9 + length;
+            }
+            db.restoreCounters(nextItemId, nextMessageSequence);
+            return lsn;
+        }
+    }
+
+    /**
+     * Returns the username string already held by the user record, so millions
+     * of loaded messages and items share one copy per user.
+     */
+    private static String canonical(Database1 db, String username) {
+        User u = db.getUser(username);
+        return u == null ? username : u.getUsername();
+    }
+
+    private static List<Path> list(Path dir) throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return snapshots;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path p : stream) {
+                snapshots.add(p);
+            }
+        }
+        // Names are zero-padded, so lexical order is lsn order
+        Collections.sort(snapshots);
+        return snapshots;
+    }
+
+    private static long lsnOf(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Buffers records of one kind and writes them out as sections of bounded size.
+     */
+    private static class SectionWriter {
+        private final FileChannel out;
+        private final byte kind;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+        private final DataOutputStream data = new DataOutputStream(bytes);
+        private int count;
+
+        SectionWriter(FileChannel out, byte kind) {
+            this.out = out;
+            this.kind = kind;
+        }
+
+        /**
+         * Starts a new record, first flushing the section if it is full.
+         * @return stream to write the record to
+         */
+        DataOutputStream record() throws IOException {
+            if (bytes.size() >= SECTION_BYTES) {
+                flush();
+            }
+            count++;
+            return data;
+        }
+
+        void finish() throws IOException {
+            if (count > 0) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            data.flush();
+            ByteBuffer header = ByteBuffer.allocate(9);
+            header.put(kind).putInt(count).putInt(bytes.size()).flip();
+            writeFully(out, header);
+            writeFully(out, ByteBuffer.wrap(bytes.toByteArray()));
+            bytes.reset();
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * Takes periodic {@link Snapshot}s of a durable database without ever touching
+ * its live state, so client traffic never stops for a snapshot. Each round:
+ * <ol>
+ *     <li>rolls the journal so everything logged so far sits in closed segments,</li>
+ *     <li>rebuilds a private copy of the database from the previous snapshot and
+ *         those segments,</li>
+ *     <li>writes the copy out as a new snapshot, and</li>
+ *     <li>deletes the older snapshot and the segments it made redundant.</li>
+ * </ol>
+ * The copy only lives for one round. It costs one extra image of the data in
+ * memory while it is being built.
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class Snapshotter {
+    private final Path dir;
+    private final Journal journal;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Creates a snapshotter that takes snapshots only when asked, until {@link #start} is called.
+     * @param dir data directory shared with the journal
+     * @param journal the live journal to roll
+     */
+    public Snapshotter(Path dir, Journal journal) {
+        this.dir = dir;
+        this.journal = journal;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Snapshotter"));
+    }
+
+    /**
+     * Starts taking snapshots on a background thread.
+     * @param periodMillis time between snapshots
+     */
+    public void start(long periodMillis) {
+        scheduler.scheduleWithFixedDelay(this::runQuietly, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes one snapshot now, unless nothing was logged since the last one.
+     * @return lsn covered by the newest snapshot
+     * @throws IOException if reading the journal or writing the snapshot fails
+     */
+    public long snapshotNow() throws IOException {
+        long through = journal.roll();
+        long base = Snapshot.latestLsn(dir);
+        if (through <= base) {
+            return base;
+        }
+        Database1 copy = new Database1();
+        Snapshot.loadLatest(dir, copy);
+        Journal.replay(dir, base, through, copy::apply, false);
+        Snapshot.write(dir, copy, through);
+        Snapshot.deleteOlderThan(dir, through);
+        journal.deleteSegmentsThrough(through);
+        return through;
+    }
+
+    /** Stops the background thread, letting a running snapshot finish. */
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runQuietly() {
+        try {
+            long start = System.nanoTime();
+            long before = Snapshot.latestLsn(dir);
+            long lsn = snapshotNow();
+            if (lsn != before) {
+                System.out.printf("Snapshot at lsn %d took %d ms%n", lsn, (System.nanoTime() - start) / 1_000_000);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Snapshot failed: " + e.getMessage());
+        }
+    }
+}
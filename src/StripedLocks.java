@@ -0,0 +1,129 @@
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Phase 2 of CS180 Group Project
+ *
+ * <p>Purdue University -- CS18000 -- Spring 2025</p>
+ *
+ * A fixed array of locks that usernames hash onto. Operations on unrelated users
+ * usually land on different stripes and can run in parallel. Operations that touch
+ * two users always take the lower stripe first, so they cannot deadlock. With a
+ * single stripe this behaves like one global lock.
+ *
+ * <p>Each lock is first tried without waiting. Only when that fails is the
+ * wait timed, into {@link #waits()}, so the uncontended path costs one
+ * counter increment more than a plain lock.</p>
+ *
+ * @author alexyan06, shivensaxena28, KayshavBhardwaj
+ * @version April 6, 2025
+ */
+public class StripedLocks {
+    /** One lock per stripe; length is always a power of two. */
+    private final ReentrantLock[] stripes;
+    /** Every stripe acquisition, contended or not. */
+    private final LongAdder acquisitions = new LongAdder();
+    /** How long contended acquisitions waited. */
+    private final LatencyHistogram waits = new LatencyHistogram();
+
+    /**
+     * Creates a lock table with at least the requested number of stripes.
+     * @param stripeCount minimum number of stripes, rounded up to a power of two
+     */
+    public StripedLocks(int stripeCount) {
+        int size = 1;
+        while (size < stripeCount) {
+            size <<= 1;
+        }
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @return the number of stripes in this table
+     */
+    public int size() {
+        return stripes.length;
+    }
+
+    /** @return how many times a stripe has been locked */
+    public long acquisitions() {
+        return acquisitions.sum();
+    }
+
+    /** @return wait times of the acquisitions that found their stripe held */
+    public LatencyHistogram waits() {
+        return waits;
+    }
+
+    /**
+     * Maps a key onto its stripe index.
+     * @param key the username (or other key) to hash
+     * @return index of the stripe guarding the key
+     */
+    public int stripeFor(String key) {
+        int h = key == null ? 0 : key.hashCode();
+        // Spread high bits down, as HashMap does, before masking
+        return (h ^ (h >>> 16)) & (stripes.length - 1);
+    }
+
+    /**
+     * Locks the stripe guarding a single key.
+     * @param key the key to lock
+     */
+    public void lock(String key) {
+        acquire(stripes[stripeFor(key)]);
+    }
+
+    /**
+     * Unlocks the stripe guarding a single key.
+     * @param key the key to unlock
+     */
+    public void unlock(String key) {
+        stripes[stripeFor(key)].unlock();
+    }
+
+    /**
+     * Locks the stripes for two keys in ascending stripe order, so two threads
+     * locking the same pair in opposite argument order cannot deadlock.
+     * @param first one key
+     * @param second the other key
+     */
+    public void lock(String first, String second) {
+        int a = stripeFor(first);
+        int b = stripeFor(second);
+        if (a == b) {
+            acquire(stripes[a]);
+        } else {
+            acquire(stripes[Math.min(a, b)]);
+            acquire(stripes[Math.max(a, b)]);
+        }
+    }
+
+    private void acquire(ReentrantLock stripe) {
+        acquisitions.increment();
+        if (!stripe.tryLock()) {
+            long start = System.nanoTime();
+            stripe.lock();
+            waits.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Releases the stripes taken by {@link #lock(String, String)}.
+     * @param first one key
+     * @param second the other key
+     */
+    public void unlock(String first, String second) {
+        int a = stripeFor(first);
+        int b = stripeFor(second);
+        if (a == b) {
+            stripes[a].unlock();
+        } else {
+            stripes[Math.max(a, b)].unlock();
+            stripes[Math.min(a, b)].unlock();
+        }
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Phase 2 of CS180 Group Project
@@ -11,14 +12,15 @@ import java.util.ArrayList;
 public class User implements UserInterface {
     private String username;
     private String password;
-    private double balance;
+    // Balance in cents; debits and credits are lock-free atomic updates
+    private final AtomicLong balanceCents;
     private ArrayList<String> messageUsernameList;
     private ArrayList<Item> ownedItems;
 
     public User(String username, String password, double balance, ArrayList<String> messageUsernameList) {
         this.username = username;
         this.password = password;
-        this.balance = balance;
+        this.balanceCents = new AtomicLong(Money.toCents(balance));
         this.messageUsernameList = messageUsernameList;
         this.ownedItems = new ArrayList<>();
     }
@@ -44,11 +46,59 @@ public class User implements UserInterface {
     }
 
     public double getBalance() {
-        return balance;
+        return Money.toDollars(balanceCents.get());
     }
 
     public void setBalance(double balance) {
-        this.balance = balance;
+        balanceCents.set(Money.toCents(balance));
+    }
+
+    public long getBalanceCents() {
+        return balanceCents.get();
+    }
+
+    public void setBalanceCents(long cents) {
+        balanceCents.set(cents);
+    }
+
+    /**
+     * Takes money out of this account unless that would make it negative.
+     * @param cents amount to take
+     * @return true if the balance covered the amount and was reduced
+     */
+    public boolean tryDebit(long cents) {
+        long current;
+        do {
+            current = balanceCents.get();
+            if (current < cents) {
+                return false;
+            }
+        } while (!balanceCents.compareAndSet(current, current - cents));
+        return true;
+    }
+
+    /**
+     * @param cents amount to add to this account
+     */
+    public void credit(long cents) {
+        balanceCents.addAndGet(cents);
+    }
+
+    /**
+     * Moves money between two accounts without locking either. The debit
+     * happens first and only succeeds if it is covered, so no balance ever
+     * goes negative and no money is created or lost.
+     * @param from account to debit
+     * @param to account to credit
+     * @param cents amount to move
+     * @return false if {@code from} could not cover the amount
+     */
+    public static boolean transfer(User from, User to, long cents) {
+        if (!from.tryDebit(cents)) {
+            return false;
+        }
+        to.credit(cents);
+        return true;
     }
 
     public void setUsername(String username) {